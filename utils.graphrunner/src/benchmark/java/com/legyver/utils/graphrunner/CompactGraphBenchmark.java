@@ -0,0 +1,42 @@
+package com.legyver.utils.graphrunner;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * The heap used per node by a tree graph and a compact graph
+ */
+public class CompactGraphBenchmark {
+
+	@Test
+	public void compactUsesLessMemoryPerNode() throws Exception {
+		int size = 200_000;
+		CompactGraphTest.Node[] nodes = CompactGraphTest.nodes(size);
+		//keep the graphs reachable until they have been measured
+		Object[] keep = new Object[1];
+		long before = usedMemory();
+		keep[0] = CompactGraphTest.build(new Graph.Builder<>(), nodes);
+		long treeBytesPerNode = (usedMemory() - before) / size;
+		keep[0] = null;
+
+		before = usedMemory();
+		keep[0] = CompactGraphTest.build(new Graph.Builder<CompactGraphTest.Node>().compact(), nodes);
+		long compactBytesPerNode = (usedMemory() - before) / size;
+		System.out.println(String.format("Graph bytes/node: tree=%d, compact=%d", treeBytesPerNode, compactBytesPerNode));
+
+		assertThat(keep[0] != null, is(true));
+		assertThat(compactBytesPerNode, is(lessThan(treeBytesPerNode / 2)));
+	}
+
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
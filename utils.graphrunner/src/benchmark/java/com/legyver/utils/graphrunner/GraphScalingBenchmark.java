@@ -0,0 +1,88 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Building a graph should be linear in the number of nodes plus edges, and a property graph is built faster in parallel on
+ * more than one core.
+ */
+public class GraphScalingBenchmark {
+	private static final Pattern VARIABLE = Pattern.compile(PropertyGraphFactoryTest.JEXL_VARIABLE);
+
+	@Test
+	public void buildScalesLinearly() {
+		//warm up so the JIT does not penalize the smallest graph
+		build(1_000);
+		long nanosPerNode1k = build(1_000) / 1_000;
+		long nanosPerNode10k = build(10_000) / 10_000;
+		long nanosPerNode100k = build(100_000) / 100_000;
+		System.out.println(String.format("Graph build ns/node: 1k=%d, 10k=%d, 100k=%d", nanosPerNode1k, nanosPerNode10k, nanosPerNode100k));
+
+		//a quadratic build would be ~10x slower per node for every 10x more nodes
+		assertThat(nanosPerNode100k, is(lessThan(Math.max(nanosPerNode10k, 1) * 5)));
+	}
+
+	@Test
+	public void parallelMake() {
+		int size = 200_000;
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put(key(0), "root");
+		for (int i = 1; i < size; i++) {
+			//as in real property files, most values are plain text and some reference several other properties
+			propertyMap.put(key(i), i % 4 == 0
+					? "${" + key((i - 1) / 2) + "} and ${" + key(i / 3) + "} on ${" + key(i / 5) + "}"
+					: "a plain value of some length that references nothing at all, number " + i);
+		}
+		long sequentialMillis = bestOf(5, new PropertyGraphFactory(VARIABLE, 1), propertyMap);
+		long prefixedMillis = bestOf(5, new PropertyGraphFactory(new VariableExtractionOptions(VARIABLE, 1, "${")), propertyMap);
+		long parallelMillis = bestOf(5, new PropertyGraphFactory(new VariableExtractionOptions(VARIABLE, 1, "${")).parallel(), propertyMap);
+		System.out.println(String.format("Property graph of %d on %d cores: sequential=%dms, prefix skip=%dms, parallel with prefix skip=%dms",
+				size, Runtime.getRuntime().availableProcessors(), sequentialMillis, prefixedMillis, parallelMillis));
+	}
+
+	private static long bestOf(int runs, PropertyGraphFactory factory, PropertyMap propertyMap) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			factory.make(propertyMap, (s, o) -> new SharedMapCtx(s, propertyMap));
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1_000_000;
+	}
+
+	/**
+	 * Build a property graph where every property references the property at half its index, so the graph fans out like a binary tree
+	 * @param size the number of properties
+	 * @return nanos taken to build the graph
+	 */
+	private static long build(int size) {
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put(key(0), "root");
+		for (int i = 1; i < size; i++) {
+			propertyMap.put(key(i), "${" + key((i - 1) / 2) + "}");
+		}
+		PropertyGraphFactory factory = new PropertyGraphFactory(VARIABLE, 1);
+
+		long start = System.nanoTime();
+		factory.make(propertyMap, (s, o) -> new SharedMapCtx(s, propertyMap));
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Property keys may only contain lowercase letters, dots and dashes
+	 */
+	static String key(int i) {
+		StringBuilder sb = new StringBuilder("key.");
+		for (char c : Integer.toString(i).toCharArray()) {
+			sb.append((char) ('a' + (c - '0')));
+		}
+		return sb.toString();
+	}
+}
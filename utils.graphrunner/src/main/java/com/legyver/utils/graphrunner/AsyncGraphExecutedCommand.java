@@ -0,0 +1,40 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Command attached to a graph that evaluates a node asynchronously.  See {@link AsyncRunStrategy}.
+ * A node counts as evaluated when the returned stage completes, and a stage that completes exceptionally fails the run.
+ * @param <T> Current value associated with the graph node.
+ */
+@FunctionalInterface
+public interface AsyncGraphExecutedCommand<T> {
+	/**
+	 * Command to execute on nodes in a graph
+	 * @param nodeName the name of the current node
+	 * @param object the value associated with the current node
+	 * @return a stage that completes when the node has been evaluated
+	 */
+	CompletionStage<?> execute(String nodeName, T object);
+
+	/**
+	 * Adapt a blocking {@link GraphExecutedCommand} to run on an executor.
+	 * A CoreException thrown by the command completes the stage exceptionally with that CoreException as the cause.
+	 * @param command the blocking command
+	 * @param executor the executor to run the command on.  See {@link AsyncRunStrategy#newVirtualThreadPerTaskExecutor()} for blocking I/O
+	 * @param <T> Current value associated with the graph node.
+	 * @return the asynchronous command
+	 */
+	static <T> AsyncGraphExecutedCommand<T> onExecutor(GraphExecutedCommand<T> command, Executor executor) {
+		return (nodeName, object) -> CompletableFuture.runAsync(() -> {
+			try {
+				command.execute(nodeName, object);
+			} catch (Exception e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+}
@@ -0,0 +1,176 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Run all nodes in the graph asynchronously, chaining the future of each node onto the futures of its prerequisites.
+ * Nodes that wait on I/O do not hold up the rest of the graph, so the wall time of a run approaches the latency of the
+ * slowest path through the graph rather than the sum of the latencies of all nodes.
+ * Guarantees that all nodes are only evaluated once, and that a node is only evaluated after all of its prerequisites.
+ * If any node fails, nodes that have not yet started are not started, and the first failure is reported.
+ */
+public class AsyncRunStrategy implements RunStrategy {
+	/**
+	 * The executor blocking {@link GraphExecutedCommand}s are run on
+	 */
+	private final Executor executor;
+
+	/**
+	 * Construct an AsyncRunStrategy
+	 * @param executor the executor to run blocking {@link GraphExecutedCommand}s on.
+	 *                 Not used by {@link #executeAsync(Graph, AsyncGraphExecutedCommand)}, where the command chooses where it runs.
+	 */
+	public AsyncRunStrategy(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Run the blocking command on each node on the {@link #executor}, and wait for the whole graph to be evaluated
+	 * @param graph the directed graph containing all nodes and the directed edges in between
+	 * @param command the command to be executed
+	 * @param <T> The type the parameter that the command expects
+	 * @throws CoreException if the command throws a CoreException
+	 */
+	@Override
+	public <T> void execute(Graph<T> graph, GraphExecutedCommand<T> command) throws CoreException {
+		//the graph has already wrapped the command to notify any listener when it starts and finishes
+		CompletableFuture<Void> future = run(graph, AsyncGraphExecutedCommand.onExecutor(command, executor), null);
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new CoreException("Interrupted while waiting for graph to finish", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CoreException) {
+				throw (CoreException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new CoreException(cause);
+		}
+	}
+
+	/**
+	 * Start evaluating the graph with an asynchronous command.
+	 * @param graph the directed graph containing all nodes and the directed edges in between
+	 * @param command the command to be executed
+	 * @param <T> The type the parameter that the command expects
+	 * @return a future that completes when all nodes are evaluated, or completes exceptionally with the first failure
+	 */
+	public <T> CompletableFuture<Void> executeAsync(Graph<T> graph, AsyncGraphExecutedCommand<T> command) {
+		return run(graph, command, graph.getListener());
+	}
+
+	/**
+	 * Chain the future of each node onto the futures of its prerequisites
+	 * @param graph the directed graph containing all nodes and the directed edges in between
+	 * @param command the command to be executed
+	 * @param commandListener the listener to notify when the command starts and finishes on each node, or null if the command does its own notifying
+	 * @param <T> The type the parameter that the command expects
+	 * @return a future that completes when all nodes are evaluated, or completes exceptionally with the first failure
+	 */
+	private <T> CompletableFuture<Void> run(Graph<T> graph, AsyncGraphExecutedCommand<T> command, GraphRunListener commandListener) {
+		ExecutionPlan<T> plan = graph.plan();
+		GraphRunListener listener = graph.getListener();
+		int[] prerequisiteOffsets = plan.prerequisiteOffsets();
+		int[] prerequisites = plan.prerequisites();
+		AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[plan.size()];
+		//ids are in topological order, so the futures of all prerequisites already exist
+		for (int i = 0; i < futures.length; i++) {
+			CompletableFuture<?> ready;
+			int prerequisiteCount = prerequisiteOffsets[i + 1] - prerequisiteOffsets[i];
+			if (prerequisiteCount == 0) {
+				ready = CompletableFuture.completedFuture(null);
+			} else if (prerequisiteCount == 1) {
+				ready = futures[prerequisites[prerequisiteOffsets[i]]];
+			} else {
+				CompletableFuture<?>[] waitFor = new CompletableFuture<?>[prerequisiteCount];
+				for (int e = 0; e < prerequisiteCount; e++) {
+					waitFor[e] = futures[prerequisites[prerequisiteOffsets[i] + e]];
+				}
+				ready = CompletableFuture.allOf(waitFor);
+			}
+			int id = i;
+			String nodeName = plan.getName(i);
+			T payload = plan.getPayload(i);
+			futures[i] = ready.thenCompose(ignore -> {
+				if (firstFailure.get() != null) {
+					throw new CancellationException("Graph run failed on another node");
+				}
+				if (graph.isEvaluated(id)) {
+					return CompletableFuture.completedFuture(null);
+				}
+				if (listener != null) {
+					listener.nodeQueued(nodeName, System.nanoTime());
+				}
+				if (commandListener == null) {
+					return command.execute(nodeName, payload)
+							.thenRun(() -> graph.markEvaluated(id));
+				}
+				commandListener.nodeStarted(nodeName, System.nanoTime());
+				return command.execute(nodeName, payload)
+						.whenComplete((result, t) -> {
+							if (t == null) {
+								commandListener.nodeFinished(nodeName, System.nanoTime());
+							} else {
+								commandListener.nodeFailed(nodeName, System.nanoTime(), unwrap(t));
+							}
+						})
+						.thenRun(() -> graph.markEvaluated(id));
+			}).whenComplete((ignore, t) -> {
+				if (t != null) {
+					firstFailure.compareAndSet(null, unwrap(t));
+				}
+			});
+		}
+		return CompletableFuture.allOf(futures)
+				.handle((ignore, t) -> {
+					Throwable failure = firstFailure.get();
+					if (failure != null) {
+						throw new CompletionException(failure);
+					}
+					return null;
+				});
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		while (t instanceof CompletionException && t.getCause() != null) {
+			t = t.getCause();
+		}
+		return t;
+	}
+
+	/**
+	 * Create an executor that starts a new virtual thread for each task, for commands that block on I/O.
+	 * Virtual threads require Java 21; on older runtimes this falls back to an unbounded pool of daemon platform threads.
+	 * The caller is responsible for shutting the executor down.
+	 * @return the executor
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A graph held in primitive arrays rather than a tree of {@link Graph.GraphNode}s, for graphs with millions of nodes.
+ * Node names are interned to int ids as they are added, and the edges are two parallel int arrays.
+ * Each node costs its name's entry in the id map and a few array slots, against a {@link Graph.GraphNode} with its own map of
+ * children and an entry in the node index.
+ *
+ * Create one with {@link Graph.Builder#compact()}.  It runs with every {@link RunStrategy}, but since there are no GraphNodes
+ * behind it, connecting the same nodes twice adds the edge twice, which is harmless.
+ * @param <T> type of the graph payload
+ */
+final class CompactGraph<T> extends Graph<T> {
+	private static final int INITIAL_CAPACITY = 16;
+	private final Map<String, Integer> ids = new HashMap<>();
+	private String[] names = new String[INITIAL_CAPACITY];
+	private Object[] payloads = new Object[INITIAL_CAPACITY];
+	private int nodeCount;
+	private int[] from = new int[INITIAL_CAPACITY];
+	private int[] to = new int[INITIAL_CAPACITY];
+	private int edgeCount;
+
+	CompactGraph() {
+		super(null, Collections.emptyMap(), Collections.emptyMap());
+	}
+
+	@Override
+	void putNode(String nodeName, T payload) {
+		modified();
+		int id = intern(nodeName);
+		payloads[id] = payload;
+	}
+
+	@Override
+	void accept(String dependent, String predecessor) {
+		modified();
+		int predecessorId = intern(predecessor);
+		int dependentId = intern(dependent);
+		if (predecessorId != dependentId) {
+			if (edgeCount == from.length) {
+				from = Arrays.copyOf(from, edgeCount * 2);
+				to = Arrays.copyOf(to, edgeCount * 2);
+			}
+			from[edgeCount] = predecessorId;
+			to[edgeCount++] = dependentId;
+		}
+	}
+
+	private int intern(String nodeName) {
+		Integer id = ids.get(nodeName);
+		if (id == null) {
+			if (nodeCount == names.length) {
+				names = Arrays.copyOf(names, nodeCount * 2);
+				payloads = Arrays.copyOf(payloads, nodeCount * 2);
+			}
+			id = nodeCount++;
+			names[id] = nodeName;
+			ids.put(nodeName, id);
+		}
+		return id;
+	}
+
+	/**
+	 * The number of nodes in the graph
+	 */
+	int size() {
+		return nodeCount;
+	}
+
+	@Override
+	public ExecutionPlan<T> compile() {
+		return ExecutionPlan.compile(Arrays.copyOf(names, nodeCount), Arrays.copyOf(payloads, nodeCount), ids, from, to, edgeCount);
+	}
+
+	/**
+	 * Create a new compact graph of the specified node and everything it transitively depends on, with the same payloads as this graph
+	 * @param nodeToRun the node to use as the basis of the new graph
+	 * @return the filtered Graph
+	 */
+	@Override
+	public Graph<T> filter(String nodeToRun) {
+		CompactGraph<T> filtered = new CompactGraph<>();
+		ExecutionPlan<T> current = plan();
+		int id = current.indexOf(nodeToRun);
+		if (id < 0) {
+			return filtered;
+		}
+		int[] closure = reachability().upstream(id);
+		int[] prerequisiteOffsets = current.prerequisiteOffsets();
+		int[] prerequisites = current.prerequisites();
+		for (int i : closure) {
+			String nodeName = current.getName(i);
+			filtered.putNode(nodeName, current.getPayload(i));
+			for (int e = prerequisiteOffsets[i]; e < prerequisiteOffsets[i + 1]; e++) {
+				filtered.accept(nodeName, current.getName(prerequisites[e]));
+			}
+		}
+		return filtered;
+	}
+}
@@ -0,0 +1,86 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Run the weakly connected components of a graph concurrently, each as an independent unit of work.
+ * Components share no nodes or connections, so no synchronization is needed between them, and the nodes of each component are
+ * run in order by its own strategy.  See {@link Graph#components()}.
+ *
+ * The components are run largest first, so that the largest component is not left to run alone at the end.  A failure in one
+ * component does not stop the others.
+ * @param <T> type of the graph payload
+ */
+public class ComponentRunner<T> {
+	private final List<Graph<T>> components;
+	private final Executor executor;
+
+	/**
+	 * Construct a ComponentRunner for the components of a graph, as they are now
+	 * @param graph the graph to split into components
+	 * @param executor the executor to run the components on
+	 */
+	public ComponentRunner(Graph<T> graph, Executor executor) {
+		this.components = graph.components();
+		this.executor = executor;
+	}
+
+	/**
+	 * The components of the graph, largest first.  The strategy of each may be set before it is run
+	 * @return the components
+	 */
+	public List<Graph<T>> getComponents() {
+		return Collections.unmodifiableList(components);
+	}
+
+	/**
+	 * Run the command on every node of every component, running the components concurrently and waiting for all of them to finish
+	 * @param command the command to run
+	 * @throws CoreException if a component failed, with the failures of any other components suppressed, or if interrupted while waiting
+	 */
+	public void execute(GraphExecutedCommand<T> command) throws CoreException {
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch remaining = new CountDownLatch(components.size());
+		for (Graph<T> component : components) {
+			try {
+				executor.execute(() -> {
+					try {
+						component.executeStrategy(command);
+					} catch (Throwable e) {
+						//an Error too, or the component would count as run and execute would return normally
+						failures.add(e);
+					} finally {
+						remaining.countDown();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				failures.add(e);
+				remaining.countDown();
+			}
+		}
+		try {
+			remaining.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CoreException("Interrupted while waiting for components to run", e);
+		}
+		throwFailures(failures, components.size());
+	}
+
+	static void throwFailures(List<? extends Throwable> failures, int componentCount) throws CoreException {
+		if (!failures.isEmpty()) {
+			CoreException exception = new CoreException(failures.size() + " of " + componentCount + " components failed", failures.get(0));
+			for (int i = 1; i < failures.size(); i++) {
+				exception.addSuppressed(failures.get(i));
+			}
+			throw exception;
+		}
+	}
+}
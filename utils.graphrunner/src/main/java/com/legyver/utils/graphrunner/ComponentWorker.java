@@ -0,0 +1,145 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * The main class of a worker process started by {@link WorkerPool}.
+ * The worker reads components from stdin and writes the values of each back to stdout once it has run, until stdin is closed.
+ * Each component and each response is a serialized object on its own, preceded by its length, so one that cannot be read or
+ * written fails only that component.
+ * Anything the command prints to System.out goes to stderr instead, so it cannot corrupt the responses.
+ *
+ * Usage: java -cp &lt;classpath&gt; com.legyver.utils.graphrunner.ComponentWorker &lt;WorkerCommandFactory class name&gt;
+ */
+public final class ComponentWorker {
+
+	private ComponentWorker() {
+	}
+
+	/**
+	 * Run components read from stdin until stdin is closed
+	 * @param args the class name of the {@link WorkerCommandFactory}
+	 * @throws Exception if the factory cannot be created or the streams fail
+	 */
+	public static void main(String[] args) throws Exception {
+		WorkerCommandFactory commandFactory = (WorkerCommandFactory) Class.forName(args[0]).getDeclaredConstructor().newInstance();
+		PrintStream stdout = System.out;
+		System.setOut(System.err);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stdout));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+		while (true) {
+			byte[] request;
+			try {
+				request = new byte[in.readInt()];
+			} catch (EOFException e) {
+				return;
+			}
+			in.readFully(request);
+			writeMessage(out, respond(request, commandFactory));
+			out.flush();
+		}
+	}
+
+	private static byte[] respond(byte[] request, WorkerCommandFactory commandFactory) throws IOException {
+		Response response;
+		try {
+			response = run((Request) readMessage(request), commandFactory);
+		} catch (ClassNotFoundException e) {
+			response = failure("Unable to read component: " + e);
+		}
+		try {
+			return toMessage(response);
+		} catch (IOException e) {
+			//ex: the command put a value that is not Serializable
+			return toMessage(failure("Unable to send values back: " + e));
+		}
+	}
+
+	private static Response failure(String failure) {
+		Response response = new Response();
+		response.values = new HashMap<>();
+		response.failure = failure;
+		return response;
+	}
+
+	/**
+	 * Serialize an object on its own, so an object that cannot be serialized fails before anything is written to the stream
+	 * @param message the object
+	 * @return the serialized object
+	 * @throws IOException if the object cannot be serialized, ex: NotSerializableException
+	 */
+	static byte[] toMessage(Serializable message) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(message);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Write a serialized object as its length then its bytes
+	 */
+	static void writeMessage(DataOutputStream out, byte[] message) throws IOException {
+		out.writeInt(message.length);
+		out.write(message);
+	}
+
+	static Object readMessage(byte[] message) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(message))) {
+			return in.readObject();
+		}
+	}
+
+	private static Response run(Request request, WorkerCommandFactory commandFactory) {
+		Response response = new Response();
+		response.values = request.values;
+		CompactGraph<SharedMapCtx> graph = new CompactGraph<>();
+		for (int i = 0; i < request.names.length; i++) {
+			graph.putNode(request.names[i], request.hasPayload[i] ? new SharedMapCtx(request.names[i], request.values) : null);
+		}
+		for (int e = 0; e < request.from.length; e++) {
+			graph.accept(request.names[request.to[e]], request.names[request.from[e]]);
+		}
+		try {
+			graph.executeStrategy(commandFactory.newCommand(request.values));
+		} catch (Exception e) {
+			response.failure = e.toString();
+		}
+		return response;
+	}
+
+	/**
+	 * A component to run: its nodes, whether each has a payload, its edges by node index, and the values of its nodes
+	 */
+	static class Request implements Serializable {
+		private static final long serialVersionUID = 1L;
+		String[] names;
+		boolean[] hasPayload;
+		int[] from;
+		int[] to;
+		HashMap<String, Object> values;
+	}
+
+	/**
+	 * The values of a component after it has run, and the failure of the run if it failed
+	 */
+	static class Response implements Serializable {
+		private static final long serialVersionUID = 1L;
+		HashMap<String, Object> values;
+		String failure;
+	}
+}
@@ -1,6 +1,8 @@
 package com.legyver.utils.graphrunner;
 
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiConsumer;
 
 /**
@@ -31,15 +33,21 @@ public class DepthFirstSearch<T extends Graph> implements TreeSearch {
 			T graphNode = graph.get(s);
 			//not combining these methods because we only want to add the root nodes
 			//additionally we want to exhaustively search all the root nodes, but return on first positive for all child branches
-			if (s.equals(searchString)  || branchContains(searchString, graphNode.getChildMap())) {
+			if (s.equals(searchString)  || branchContains(searchString, ((Graph<?>) graphNode).getChildMap())) {
 				matchHandler.accept(s, graphNode);
 			}
 		}
 	}
 
-	private boolean branchContains(String searchString, Map branch) {
-		for (Object key : branch.keySet()) {
-			if (searchString.equals(key)  /*|| branchContains(searchString, (Map<String, T>) graphNode.getChildMap())*/) {
+	private boolean branchContains(String searchString, Map<String, ? extends Graph<?>> branch) {
+		return branchContains(searchString, branch, new HashSet<>());
+	}
+
+	private boolean branchContains(String searchString, Map<String, ? extends Graph<?>> branch, Set<String> visited) {
+		for (Map.Entry<String, ? extends Graph<?>> entry : branch.entrySet()) {
+			//nodes reachable by more than one path only need to be searched once
+			if (visited.add(entry.getKey())
+					&& (searchString.equals(entry.getKey()) || branchContains(searchString, entry.getValue().getChildMap(), visited))) {
 				return true;//return on first positive
 			}
 		}
@@ -0,0 +1,90 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Re-run only the nodes marked dirty and everything that transitively depends on them, in topological order.
+ * Nodes are re-run whether they have been evaluated before or not, so there is no need to reset the graph.
+ * Ex: after the value of 'build.date.year' changes
+ *   strategy.markDirty("build.date.year");
+ *   graph.executeStrategy(command);
+ * re-runs 'build.date.year', 'build.date.format', 'build.date' and anything that uses them.
+ *
+ * Optionally, propagation stops at any node reached through its prerequisites whose value is the same after it is re-run as it
+ * was before.
+ */
+public class DirtyPropagationStrategy implements RunStrategy {
+	private final Set<String> dirtyNodeNames = Collections.synchronizedSet(new LinkedHashSet<>());
+	/**
+	 * If set, used to compare the value of a node before and after it is re-run
+	 */
+	private NodeValueReader<?> unchangedValueReader;
+
+	/**
+	 * Mark nodes whose values have changed.  The nodes remain dirty until the next successful execution of this strategy.
+	 * @param nodeNames the names of the nodes
+	 * @return this strategy to allow marking more nodes
+	 */
+	public DirtyPropagationStrategy markDirty(String... nodeNames) {
+		if (nodeNames != null) {
+			Collections.addAll(dirtyNodeNames, nodeNames);
+		}
+		return this;
+	}
+
+	/**
+	 * Do not re-run the dependents of a node if the node's value is unchanged by re-running it.
+	 * The dependents of the nodes marked dirty are always re-run, as their values have usually been changed already.
+	 * Note that a dependent can still be re-run because of a different prerequisite that did change.
+	 * @param valueReader reads the value of a node to compare before and after it is re-run
+	 * @return this strategy
+	 */
+	public DirtyPropagationStrategy stopWhenUnchanged(NodeValueReader<?> valueReader) {
+		this.unchangedValueReader = valueReader;
+		return this;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> void execute(Graph<T> graph, GraphExecutedCommand<T> command) throws CoreException {
+		ExecutionPlan<T> plan = graph.plan();
+		NodeValueReader<T> valueReader = (NodeValueReader<T>) unchangedValueReader;
+		BitSet toRun = new BitSet(plan.size());
+		String[] dirty;
+		synchronized (dirtyNodeNames) {
+			dirty = dirtyNodeNames.toArray(new String[0]);
+		}
+		//the nodes marked dirty always propagate, as their values are usually changed before they are marked
+		BitSet marked = new BitSet(plan.size());
+		for (String nodeName : dirty) {
+			int id = plan.indexOf(nodeName);
+			if (id >= 0) {
+				marked.set(id);
+			}
+		}
+		toRun.or(marked);
+
+		int[] dependentOffsets = plan.dependentOffsets();
+		int[] dependents = plan.dependents();
+		//dependents always have higher ids than their prerequisites, so they are picked up further along the same pass
+		for (int i = toRun.nextSetBit(0); i >= 0; i = toRun.nextSetBit(i + 1)) {
+			String nodeName = plan.getName(i);
+			Object before = valueReader == null ? null : valueReader.read(nodeName, plan.getPayload(i));
+			graph.reevaluate(i, command);
+			if (valueReader == null || marked.get(i) || !Objects.equals(before, valueReader.read(nodeName, plan.getPayload(i)))) {
+				for (int e = dependentOffsets[i]; e < dependentOffsets[i + 1]; e++) {
+					toRun.set(dependents[e]);
+				}
+			}
+		}
+		for (String nodeName : dirty) {
+			dirtyNodeNames.remove(nodeName);
+		}
+	}
+}
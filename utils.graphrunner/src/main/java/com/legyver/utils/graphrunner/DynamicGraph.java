@@ -0,0 +1,618 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A graph that nodes and connections can be added to and removed from while it is in use.
+ * The graph keeps a topological order of its nodes at all times, and repairs it on each new connection by reordering only the
+ * nodes between the two ends of the connection (Pearce and Kelly, "A dynamic topological sort algorithm for directed acyclic graphs").
+ * A connection that would close a cycle is rejected, leaving the graph as it was.
+ * Removing a connection or a node never invalidates the order, so costs nothing beyond updating the adjacency of the nodes involved.
+ *
+ * Running the graph with the default {@link RunAllStrategy} walks the maintained order directly.  Other strategies run an
+ * {@link ExecutionPlan} kept up to date from the maintained order: the first time they run after a change, only the nodes the
+ * change reordered or reconnected are written into the plan again, and the rest are copied from the previous plan.  Removing a
+ * node renumbers every node after it, so the plan is compiled again from the maintained order.
+ * Changes to the graph are synchronized, but commands are run outside the lock, so a command may itself change the graph.
+ * Executions created with {@link #newExecution()} run against the plan compiled when they started, so a long lived graph can be
+ * changed while executions of it are running.
+ * @param <T> type of the graph payload
+ */
+public class DynamicGraph<T extends Graph.Payload> extends Graph<T> {
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int[] NO_EDGES = new int[0];
+	/**
+	 * The slot of each node.  The slots of removed nodes are reused.  Shared with the compiled plans, which read it without the lock
+	 */
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private String[] names = new String[INITIAL_CAPACITY];
+	private Object[] payloads = new Object[INITIAL_CAPACITY];
+	private int[][] dependents = new int[INITIAL_CAPACITY][];
+	private int[] dependentCount = new int[INITIAL_CAPACITY];
+	private int[][] prerequisites = new int[INITIAL_CAPACITY][];
+	private int[] prerequisiteCount = new int[INITIAL_CAPACITY];
+	private int slotCount;
+	private int[] freeSlots = new int[INITIAL_CAPACITY];
+	private int freeCount;
+	/**
+	 * The position of each slot in the topological order, and the slot at each position, or -1 where a node has been removed
+	 */
+	private int[] position = new int[INITIAL_CAPACITY];
+	private int[] slotAt = new int[INITIAL_CAPACITY];
+	private int positionCount;
+	/**
+	 * Marks the slots visited by the current search, see {@link #reorder(int, int)}
+	 */
+	private int[] visited = new int[INITIAL_CAPACITY];
+	private int search;
+	/**
+	 * The evaluated state of the graph itself, by slot, see {@link ExecutionState}
+	 */
+	private int[] evaluatedEpoch = new int[INITIAL_CAPACITY];
+	private int epoch = 1;
+	/**
+	 * The plan the strategy currently running was given, to map its ids to slots
+	 */
+	private ExecutionPlan<T> statePlan;
+	/**
+	 * The plan last compiled.  Once compiled, the position of each node is its id in the plan until the nodes are reordered
+	 */
+	private ExecutionPlan<T> compiled;
+	/**
+	 * Set once a node is removed, as the nodes after it are renumbered
+	 */
+	private boolean recompile;
+	/**
+	 * The positions reordered since the plan was compiled, see {@link #reorder(int, int)}
+	 */
+	private int reorderedFrom = Integer.MAX_VALUE;
+	private int reorderedTo = -1;
+	/**
+	 * The slots whose connections or payload changed since the plan was compiled, marked with the compilation they changed in
+	 */
+	private int[] changed = new int[INITIAL_CAPACITY];
+	private int changedCount;
+	private int[] changedIn = new int[INITIAL_CAPACITY];
+	private int compilation = 1;
+
+	/**
+	 * Construct an empty DynamicGraph
+	 */
+	public DynamicGraph() {
+		super(null, Collections.emptyMap(), Collections.emptyMap());
+	}
+
+	/**
+	 * Add nodes to the graph, or replace the payload of nodes already in the graph
+	 * @param payloads the values to be associated with each node
+	 * @return this graph
+	 */
+	@SafeVarargs
+	public final synchronized DynamicGraph<T> addNodes(T... payloads) {
+		for (T payload : payloads) {
+			putNode(payload.getNodeName(), payload);
+		}
+		return this;
+	}
+
+	/**
+	 * Remove a node and all its connections from the graph
+	 * @param nodeName the name of the node
+	 * @return true if the node was in the graph
+	 */
+	public synchronized boolean removeNode(String nodeName) {
+		Integer slot = ids.remove(nodeName);
+		if (slot == null) {
+			return false;
+		}
+		modified();
+		recompile = true;
+		for (int i = 0; i < dependentCount[slot]; i++) {
+			int dependent = dependents[slot][i];
+			prerequisiteCount[dependent] = remove(prerequisites[dependent], prerequisiteCount[dependent], slot);
+		}
+		for (int i = 0; i < prerequisiteCount[slot]; i++) {
+			int prerequisite = prerequisites[slot][i];
+			dependentCount[prerequisite] = remove(dependents[prerequisite], dependentCount[prerequisite], slot);
+		}
+		dependents[slot] = NO_EDGES;
+		dependentCount[slot] = 0;
+		prerequisites[slot] = NO_EDGES;
+		prerequisiteCount[slot] = 0;
+		names[slot] = null;
+		payloads[slot] = null;
+		slotAt[position[slot]] = -1;
+		position[slot] = -1;
+		if (freeCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+		}
+		freeSlots[freeCount++] = slot;
+		if (positionCount > INITIAL_CAPACITY && ids.size() < positionCount / 2) {
+			compactPositions();
+		}
+		return true;
+	}
+
+	/**
+	 * Connect two nodes, adding either node that is not in the graph yet without a payload
+	 * @param connection the connection to add
+	 * @return this graph
+	 * @throws CoreException if the connection would make a cycle, in which case the graph is left unchanged
+	 */
+	public synchronized DynamicGraph<T> connect(Connection connection) throws CoreException {
+		String from = connection.getFrom();
+		String to = connection.getTo();
+		if (from.equals(to)) {
+			throw new CoreException("Connecting " + from + " to itself would make a cycle");
+		}
+		Integer existingFrom = ids.get(from);
+		Integer existingTo = ids.get(to);
+		if (existingFrom != null && existingTo != null && contains(dependents[existingFrom], dependentCount[existingFrom], existingTo)) {
+			return this;
+		}
+		//new nodes are placed at the end of the order.  A new node has no connections yet, so cannot be part of a cycle
+		int predecessor = slotFor(from);
+		int dependent = slotFor(to);
+		if (position[predecessor] > position[dependent] && !reorder(predecessor, dependent)) {
+			throw new CoreException("Connecting " + from + " to " + to + " would make a cycle");
+		}
+		modified();
+		changed(predecessor);
+		changed(dependent);
+		dependents[predecessor] = add(dependents[predecessor], dependentCount[predecessor]++, dependent);
+		prerequisites[dependent] = add(prerequisites[dependent], prerequisiteCount[dependent]++, predecessor);
+		return this;
+	}
+
+	/**
+	 * Remove the connection between two nodes.  The nodes stay in the graph
+	 * @param connection the connection to remove
+	 * @return true if the nodes were connected
+	 */
+	public synchronized boolean disconnect(Connection connection) {
+		Integer predecessor = ids.get(connection.getFrom());
+		Integer dependent = ids.get(connection.getTo());
+		if (predecessor == null || dependent == null || !contains(dependents[predecessor], dependentCount[predecessor], dependent)) {
+			return false;
+		}
+		modified();
+		changed(predecessor);
+		changed(dependent);
+		dependentCount[predecessor] = remove(dependents[predecessor], dependentCount[predecessor], dependent);
+		prerequisiteCount[dependent] = remove(prerequisites[dependent], prerequisiteCount[dependent], predecessor);
+		return true;
+	}
+
+	/**
+	 * Test if a node is in the graph
+	 * @param nodeName the name of the node
+	 * @return true if the node is in the graph
+	 */
+	public synchronized boolean contains(String nodeName) {
+		return ids.containsKey(nodeName);
+	}
+
+	/**
+	 * The number of nodes in the graph
+	 * @return the node count
+	 */
+	public synchronized int size() {
+		return ids.size();
+	}
+
+	@Override
+	synchronized void putNode(String nodeName, T payload) {
+		modified();
+		int slot = slotFor(nodeName);
+		payloads[slot] = payload;
+		changed(slot);
+	}
+
+	@Override
+	void accept(String dependent, String predecessor) {
+		try {
+			connect(new Connection().from(predecessor).to(dependent));
+		} catch (CoreException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Record that the connections or payload of a node changed, to be written into the plan when it is next compiled
+	 */
+	private void changed(int slot) {
+		if (changedIn[slot] != compilation) {
+			changedIn[slot] = compilation;
+			if (changedCount == changed.length) {
+				changed = Arrays.copyOf(changed, changedCount * 2);
+			}
+			changed[changedCount++] = slot;
+		}
+	}
+
+	private int slotFor(String nodeName) {
+		Integer existing = ids.get(nodeName);
+		if (existing != null) {
+			return existing;
+		}
+		int slot;
+		if (freeCount > 0) {
+			slot = freeSlots[--freeCount];
+		} else {
+			if (slotCount == names.length) {
+				growSlots(slotCount * 2);
+			}
+			slot = slotCount++;
+		}
+		names[slot] = nodeName;
+		dependents[slot] = NO_EDGES;
+		prerequisites[slot] = NO_EDGES;
+		evaluatedEpoch[slot] = 0;
+		if (positionCount == slotAt.length) {
+			slotAt = Arrays.copyOf(slotAt, positionCount * 2);
+		}
+		position[slot] = positionCount;
+		slotAt[positionCount++] = slot;
+		ids.put(nodeName, slot);
+		return slot;
+	}
+
+	private void growSlots(int capacity) {
+		names = Arrays.copyOf(names, capacity);
+		payloads = Arrays.copyOf(payloads, capacity);
+		dependents = Arrays.copyOf(dependents, capacity);
+		dependentCount = Arrays.copyOf(dependentCount, capacity);
+		prerequisites = Arrays.copyOf(prerequisites, capacity);
+		prerequisiteCount = Arrays.copyOf(prerequisiteCount, capacity);
+		position = Arrays.copyOf(position, capacity);
+		visited = Arrays.copyOf(visited, capacity);
+		evaluatedEpoch = Arrays.copyOf(evaluatedEpoch, capacity);
+		changedIn = Arrays.copyOf(changedIn, capacity);
+	}
+
+	/**
+	 * Renumber the positions once more than half of them are left by removed nodes
+	 */
+	private void compactPositions() {
+		int next = 0;
+		for (int p = 0; p < positionCount; p++) {
+			int slot = slotAt[p];
+			if (slot >= 0) {
+				position[slot] = next;
+				slotAt[next++] = slot;
+			}
+		}
+		Arrays.fill(slotAt, next, positionCount, -1);
+		positionCount = next;
+	}
+
+	/**
+	 * Restore the topological order before adding the edge from predecessor to dependent, where the predecessor currently comes after
+	 * the dependent.  Only the nodes positioned between the two are searched: those reachable from the dependent, which must move
+	 * after the predecessor, and those that reach the predecessor, which must move before the dependent.
+	 * @return false if the predecessor is reachable from the dependent, so the edge would make a cycle
+	 */
+	private boolean reorder(int predecessor, int dependent) {
+		int lowerBound = position[dependent];
+		int upperBound = position[predecessor];
+		int[] forward = search(dependent, dependents, dependentCount, lowerBound, upperBound, predecessor);
+		if (forward == null) {
+			return false;
+		}
+		int[] backward = search(predecessor, prerequisites, prerequisiteCount, lowerBound, upperBound, -1);
+		sortByPosition(forward);
+		sortByPosition(backward);
+		int[] positions = new int[forward.length + backward.length];
+		int i = 0;
+		for (int slot : backward) {
+			positions[i++] = position[slot];
+		}
+		for (int slot : forward) {
+			positions[i++] = position[slot];
+		}
+		Arrays.sort(positions);
+		reorderedFrom = Math.min(reorderedFrom, lowerBound);
+		reorderedTo = Math.max(reorderedTo, upperBound);
+		//what reaches the predecessor takes the lowest positions, then what the dependent reaches, each keeping its relative order
+		i = 0;
+		for (int slot : backward) {
+			position[slot] = positions[i];
+			slotAt[positions[i++]] = slot;
+		}
+		for (int slot : forward) {
+			position[slot] = positions[i];
+			slotAt[positions[i++]] = slot;
+		}
+		return true;
+	}
+
+	/**
+	 * Depth first search over the edges from a node, staying within positions lowerBound to upperBound
+	 * @return the slots found, or null if the target was found
+	 */
+	private int[] search(int from, int[][] edges, int[] edgeCount, int lowerBound, int upperBound, int target) {
+		search++;
+		int[] found = new int[16];
+		int foundCount = 0;
+		int[] stack = new int[16];
+		int top = 0;
+		visited[from] = search;
+		stack[top++] = from;
+		while (top > 0) {
+			int slot = stack[--top];
+			if (foundCount == found.length) {
+				found = Arrays.copyOf(found, foundCount * 2);
+			}
+			found[foundCount++] = slot;
+			for (int e = 0; e < edgeCount[slot]; e++) {
+				int next = edges[slot][e];
+				if (next == target) {
+					return null;
+				}
+				int p = position[next];
+				if (visited[next] != search && p >= lowerBound && p <= upperBound) {
+					visited[next] = search;
+					if (top == stack.length) {
+						stack = Arrays.copyOf(stack, top * 2);
+					}
+					stack[top++] = next;
+				}
+			}
+		}
+		return Arrays.copyOf(found, foundCount);
+	}
+
+	private void sortByPosition(int[] slots) {
+		long[] keyed = new long[slots.length];
+		for (int i = 0; i < slots.length; i++) {
+			keyed[i] = ((long) position[slots[i]] << 32) | slots[i];
+		}
+		Arrays.sort(keyed);
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = (int) keyed[i];
+		}
+	}
+
+	private static boolean contains(int[] edges, int count, int slot) {
+		for (int i = 0; i < count; i++) {
+			if (edges[i] == slot) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int[] add(int[] edges, int count, int slot) {
+		if (count == edges.length) {
+			edges = Arrays.copyOf(edges, Math.max(4, count * 2));
+		}
+		edges[count] = slot;
+		return edges;
+	}
+
+	/**
+	 * Remove by swapping in the last edge; the order of the edges of a node does not matter
+	 * @return the new count
+	 */
+	private static int remove(int[] edges, int count, int slot) {
+		for (int i = 0; i < count; i++) {
+			if (edges[i] == slot) {
+				edges[i] = edges[count - 1];
+				return count - 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Compile the graph in its maintained order, without sorting it again.  Unless a node has been removed, the previous plan
+	 * is patched: only the nodes added, reordered or reconnected since, and the nodes connected to those that were reordered,
+	 * are written again
+	 * @return the compiled plan
+	 */
+	@Override
+	public synchronized ExecutionPlan<T> compile() {
+		if (compiled == null || recompile) {
+			compiled = compileAll();
+		} else if (changedCount > 0 || reorderedTo >= 0 || positionCount > compiled.size()) {
+			compiled = patch(compiled);
+		}
+		recompile = false;
+		reorderedFrom = Integer.MAX_VALUE;
+		reorderedTo = -1;
+		changedCount = 0;
+		if (++compilation == Integer.MAX_VALUE) {
+			Arrays.fill(changedIn, 0);
+			compilation = 1;
+		}
+		return compiled;
+	}
+
+	private ExecutionPlan<T> compileAll() {
+		//closing the gaps left by removed nodes makes the position of each node its id in the plan
+		compactPositions();
+		int[] order = Arrays.copyOf(slotAt, positionCount);
+		int edgeCount = 0;
+		for (int slot : order) {
+			edgeCount += dependentCount[slot];
+		}
+		int[] from = new int[edgeCount];
+		int[] to = new int[edgeCount];
+		int edge = 0;
+		for (int slot : order) {
+			for (int e = 0; e < dependentCount[slot]; e++) {
+				from[edge] = slot;
+				to[edge++] = dependents[slot][e];
+			}
+		}
+		return ExecutionPlan.ordered(Arrays.copyOf(names, slotCount), Arrays.copyOf(payloads, slotCount), ids, order, from, to, edgeCount);
+	}
+
+	/**
+	 * With no node removed since the previous plan, the positions are still the ids of the previous plan, reordered only between
+	 * the ends of each new connection, followed by the positions of the nodes added since
+	 */
+	private ExecutionPlan<T> patch(ExecutionPlan<T> previous) {
+		int previousSize = previous.size();
+		//the edges of a node refer to its neighbours by id, so the neighbours of a node that moved change with it.  A node may
+		//have moved after the nodes added since, beyond the previous plan
+		for (int p = reorderedFrom; p <= reorderedTo; p++) {
+			int slot = slotAt[p];
+			if (p >= previousSize || previous.provisionalId(p) != slot) {
+				changed(slot);
+				for (int e = 0; e < dependentCount[slot]; e++) {
+					changed(dependents[slot][e]);
+				}
+				for (int e = 0; e < prerequisiteCount[slot]; e++) {
+					changed(prerequisites[slot][e]);
+				}
+			}
+		}
+		for (int p = previousSize; p < positionCount; p++) {
+			changed(slotAt[p]);
+		}
+		int[] changedIds = new int[changedCount];
+		for (int c = 0; c < changedCount; c++) {
+			changedIds[c] = position[changed[c]];
+		}
+		Arrays.sort(changedIds);
+		int[] changedOrder = new int[changedCount];
+		int[][] dependentRows = new int[changedCount][];
+		int[][] prerequisiteRows = new int[changedCount][];
+		for (int c = 0; c < changedCount; c++) {
+			int slot = slotAt[changedIds[c]];
+			changedOrder[c] = slot;
+			dependentRows[c] = positions(dependents[slot], dependentCount[slot]);
+			prerequisiteRows[c] = positions(prerequisites[slot], prerequisiteCount[slot]);
+		}
+		return ExecutionPlan.patch(previous, positionCount, names, payloads, ids, changedIds, changedOrder, changedCount, dependentRows, prerequisiteRows);
+	}
+
+	private int[] positions(int[] slots, int count) {
+		int[] positions = new int[count];
+		for (int i = 0; i < count; i++) {
+			positions[i] = position[slots[i]];
+		}
+		return positions;
+	}
+
+	/**
+	 * The evaluated state of the graph is kept by slot, so survives changes to the graph without being moved to each new plan
+	 * @return the current plan
+	 */
+	@Override
+	synchronized ExecutionPlan<T> plan() {
+		ExecutionPlan<T> current = topology();
+		statePlan = current;
+		return current;
+	}
+
+	/**
+	 * Run the command on each node not yet evaluated, walking the maintained order.
+	 * The nodes to run are copied under the lock, and the commands run outside it.  Nodes added while the graph runs are left
+	 * for the next run, and a node removed while the graph runs may still be run by it.
+	 * @param command the command to run
+	 * @throws CoreException if the command throws a CoreException
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	void run(GraphExecutedCommand<T> command) throws CoreException {
+		int[] slots;
+		String[] runNames;
+		Object[] runPayloads;
+		int count = 0;
+		int runEpoch;
+		synchronized (this) {
+			runEpoch = epoch;
+			slots = new int[ids.size()];
+			runNames = new String[slots.length];
+			runPayloads = new Object[slots.length];
+			for (int p = 0; p < positionCount; p++) {
+				int slot = slotAt[p];
+				if (slot >= 0 && evaluatedEpoch[slot] != epoch) {
+					slots[count] = slot;
+					runNames[count] = names[slot];
+					runPayloads[count++] = payloads[slot];
+				}
+			}
+		}
+		for (int i = 0; i < count; i++) {
+			command.execute(runNames[i], (T) runPayloads[i]);
+			markEvaluated(slots[i], runNames[i], runEpoch);
+		}
+	}
+
+	@Override
+	synchronized boolean isEvaluated(int id) {
+		return evaluatedEpoch[statePlan.provisionalId(id)] == epoch;
+	}
+
+	@Override
+	synchronized void markEvaluated(int id) {
+		markEvaluated(statePlan.provisionalId(id), statePlan.getName(id), epoch);
+	}
+
+	/**
+	 * Mark a node evaluated, unless the graph has been reset since it was run, or it has been removed and its slot reused
+	 */
+	private synchronized void markEvaluated(int slot, String nodeName, int runEpoch) {
+		if (runEpoch == epoch && nodeName.equals(names[slot])) {
+			evaluatedEpoch[slot] = epoch;
+		}
+	}
+
+	@Override
+	void evaluate(int id, GraphExecutedCommand<T> command) throws CoreException {
+		if (!isEvaluated(id)) {
+			reevaluate(id, command);
+		}
+	}
+
+	@Override
+	void reevaluate(int id, GraphExecutedCommand<T> command) throws CoreException {
+		command.execute(statePlan.getName(id), statePlan.getPayload(id));
+		markEvaluated(id);
+	}
+
+	@Override
+	public synchronized void reset(ResetOptions options) {
+		if (options.resetsEvaluatedFlag()) {
+			if (epoch == Integer.MAX_VALUE) {
+				Arrays.fill(evaluatedEpoch, 0);
+				epoch = 0;
+			}
+			epoch++;
+		}
+	}
+
+	/**
+	 * Create a new dynamic graph of the specified node and everything it transitively depends on, with the same payloads as this graph
+	 * @param nodeToRun the node to use as the basis of the new graph
+	 * @return the filtered Graph
+	 */
+	@Override
+	public Graph<T> filter(String nodeToRun) {
+		DynamicGraph<T> filtered = new DynamicGraph<>();
+		ExecutionPlan<T> current = topology();
+		int id = current.indexOf(nodeToRun);
+		if (id < 0) {
+			return filtered;
+		}
+		int[] closure = reachability().upstream(id);
+		int[] prerequisiteOffsets = current.prerequisiteOffsets();
+		int[] planPrerequisites = current.prerequisites();
+		for (int i : closure) {
+			String nodeName = current.getName(i);
+			filtered.putNode(nodeName, current.getPayload(i));
+			for (int e = prerequisiteOffsets[i]; e < prerequisiteOffsets[i + 1]; e++) {
+				filtered.accept(nodeName, current.getName(planPrerequisites[e]));
+			}
+		}
+		return filtered;
+	}
+}
@@ -0,0 +1,298 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of the nodes a run has completed, so that a run that dies partway through can be resumed.
+ * Commands wrapped with {@link #journaled(GraphExecutedCommand, NodeResultAccessor)} record each node once it completes, with its
+ * result.  A node whose result cannot be serialized is not recorded, so it is run again on resume.  When the journal is opened on the file of an earlier run, the wrapped command skips
+ * the nodes that run completed, restoring their results instead, and only runs what remains.
+ *
+ * Records are buffered and written and forced to disk together at the sync interval, so journaling does not dominate short nodes.
+ * A crash loses at most the records of the last interval, whose nodes are simply run again.  A record torn by a crash is discarded
+ * when the journal is opened.
+ *
+ * Each record is its length, a CRC32 of its contents, then the node name and the serialized result, if any.
+ */
+public class ExecutionJournal implements Closeable {
+	private static final int HEADER_BYTES = 8;
+	private static final byte NO_RESULT = 0;
+	private static final byte SERIALIZED_RESULT = 1;
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	/**
+	 * The completed nodes read from the file when it was opened, and the serialized result of each, or null if there is none
+	 */
+	private final Map<String, byte[]> completed;
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private final ScheduledExecutorService syncExecutor;
+	/**
+	 * A failure of a sync in the background, reported by the next call on the journal
+	 */
+	private IOException syncFailure;
+
+	/**
+	 * Open a journal, resuming from the file if it exists
+	 * @param file the journal file
+	 * @param syncInterval how often buffered records are written and forced to disk.  Zero writes and forces each record as it is made
+	 * @throws CoreException if the file cannot be read or opened
+	 */
+	public ExecutionJournal(Path file, Duration syncInterval) throws CoreException {
+		try {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new CoreException("Unable to open execution journal " + file, e);
+		}
+		try {
+			Map<String, byte[]> records = new HashMap<>();
+			long validLength = read(channel, records);
+			this.completed = Collections.unmodifiableMap(records);
+			//drop a torn record so new records follow the last complete one
+			channel.truncate(validLength);
+			channel.position(validLength);
+		} catch (IOException e) {
+			try {
+				channel.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw new CoreException("Unable to open execution journal " + file, e);
+		}
+		long intervalMillis = syncInterval.toMillis();
+		if (intervalMillis > 0) {
+			syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "execution-journal-sync");
+				thread.setDaemon(true);
+				return thread;
+			});
+			syncExecutor.scheduleWithFixedDelay(this::syncInBackground, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			syncExecutor = null;
+		}
+	}
+
+	/**
+	 * Read the complete, uncorrupted records at the start of the file, a buffer at a time, so only the records themselves are held
+	 * @return the length of the records read
+	 */
+	private static long read(FileChannel channel, Map<String, byte[]> records) throws IOException {
+		long size = channel.size();
+		//not closed, as that would close the channel
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), READ_BUFFER_SIZE));
+		long validLength = 0;
+		while (size - validLength >= HEADER_BYTES) {
+			int length = in.readInt();
+			int checksum = in.readInt();
+			if (length < 0 || length > size - validLength - HEADER_BYTES) {
+				break;
+			}
+			byte[] record = new byte[length];
+			in.readFully(record);
+			CRC32 crc = new CRC32();
+			crc.update(record, 0, length);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			try (DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record))) {
+				String nodeName = recordIn.readUTF();
+				byte[] result = null;
+				if (recordIn.readByte() == SERIALIZED_RESULT) {
+					result = new byte[recordIn.available()];
+					recordIn.readFully(result);
+				}
+				records.put(nodeName, result);
+			} catch (IOException e) {
+				break;
+			}
+			validLength += HEADER_BYTES + length;
+		}
+		return validLength;
+	}
+
+	/**
+	 * The nodes completed by earlier runs, as read when the journal was opened
+	 * @return the node names
+	 */
+	public Set<String> getCompletedNodes() {
+		return completed.keySet();
+	}
+
+	/**
+	 * Wrap a command so that nodes completed by an earlier run are skipped, and nodes completed by this run are recorded
+	 * @param command the command to run on nodes not yet completed
+	 * @param resultAccessor reads the result of a node to record it, and restores it when the node is skipped.
+	 *                       May be null to record node names only
+	 * @param <T> type of the graph payload
+	 * @return the journaled command
+	 */
+	public <T> GraphExecutedCommand<T> journaled(GraphExecutedCommand<T> command, NodeResultAccessor<T> resultAccessor) {
+		return (nodeName, payload) -> {
+			if (completed.containsKey(nodeName)) {
+				byte[] result = completed.get(nodeName);
+				if (result != null && resultAccessor != null) {
+					resultAccessor.restoreResult(nodeName, payload, deserialize(nodeName, result));
+				}
+			} else {
+				command.execute(nodeName, payload);
+				record(nodeName, resultAccessor == null ? null : resultAccessor.readResult(nodeName, payload));
+			}
+		};
+	}
+
+	/**
+	 * Record a node as completed, unless its result cannot be serialized.  Its result could not be restored, so the node must be
+	 * run again on resume for its dependents to see it
+	 * @param nodeName the name of the node
+	 * @param result the result of the node, or null if there is none to restore
+	 * @return true if the node was recorded, false if its result cannot be serialized
+	 * @throws CoreException if an earlier write failed
+	 */
+	public boolean record(String nodeName, Object result) throws CoreException {
+		try {
+			byte[] serialized = null;
+			if (result != null) {
+				serialized = serialize(result);
+				if (serialized == null) {
+					return false;
+				}
+			}
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(record)) {
+				out.writeUTF(nodeName);
+				if (serialized != null) {
+					out.writeByte(SERIALIZED_RESULT);
+					out.write(serialized);
+				} else {
+					out.writeByte(NO_RESULT);
+				}
+			}
+			byte[] bytes = record.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(bytes, 0, bytes.length);
+			synchronized (this) {
+				checkSyncFailure();
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(bytes.length).putInt((int) crc.getValue());
+				pending.write(header.array(), 0, HEADER_BYTES);
+				pending.write(bytes, 0, bytes.length);
+				if (syncExecutor == null) {
+					sync();
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			throw new CoreException("Unable to record " + nodeName + " in execution journal", e);
+		}
+	}
+
+	/**
+	 * Serialize the result of a node
+	 * @return the serialized result, or null if it is not {@link Serializable}, or holds an object that cannot be serialized
+	 */
+	private static byte[] serialize(Object result) {
+		if (!(result instanceof Serializable)) {
+			return null;
+		}
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+			out.writeObject(result);
+		} catch (IOException e) {
+			//a ByteArrayOutputStream cannot fail, so the result cannot be serialized, ex: NotSerializableException
+			return null;
+		}
+		return serialized.toByteArray();
+	}
+
+	private Object deserialize(String nodeName, byte[] result) throws CoreException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(result))) {
+			return in.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new CoreException("Unable to restore the result of " + nodeName + " from execution journal", e);
+		}
+	}
+
+	/**
+	 * Write the buffered records and force them to disk
+	 * @throws CoreException if the records cannot be written
+	 */
+	public synchronized void flush() throws CoreException {
+		try {
+			checkSyncFailure();
+			sync();
+		} catch (IOException e) {
+			throw new CoreException("Unable to write execution journal", e);
+		}
+	}
+
+	private void sync() throws IOException {
+		if (pending.size() > 0) {
+			ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+			pending.reset();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+	}
+
+	private synchronized void syncInBackground() {
+		try {
+			sync();
+		} catch (IOException e) {
+			if (syncFailure == null) {
+				syncFailure = e;
+			}
+		}
+	}
+
+	private void checkSyncFailure() throws IOException {
+		if (syncFailure != null) {
+			throw syncFailure;
+		}
+	}
+
+	/**
+	 * Write any buffered records and close the file.  The file is kept, so a run that did not finish can be resumed from it;
+	 * delete it once the run has completed.
+	 * @throws IOException if the records cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (syncExecutor != null) {
+			syncExecutor.shutdown();
+		}
+		synchronized (this) {
+			try {
+				checkSyncFailure();
+				sync();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
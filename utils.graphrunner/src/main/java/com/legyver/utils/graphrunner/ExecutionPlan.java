@@ -0,0 +1,362 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable, compiled form of a {@link Graph} for graphs that are run many times.
+ * Every node is given an int id, and the ids are assigned in topological order, so that running the plan is a single loop
+ * over the ids.  The edges are held in compressed sparse row form: the dependents of node i are
+ * dependents[dependentOffsets[i]] to dependents[dependentOffsets[i + 1] - 1], and likewise for the prerequisites.
+ *
+ * Nodes that are part of a cycle (or depend on one) can never become evaluable, so they are left out of the plan.
+ *
+ * The plan holds no per-run state, so it may be shared between threads.  Progress of a run is tracked in an {@link ExecutionState}.
+ * @param <T> type of the graph payload
+ */
+public final class ExecutionPlan<T> {
+	private final String[] names;
+	private final Object[] payloads;
+	/**
+	 * The provisional ids the plan was compiled from, and the plan id of each provisional id
+	 */
+	private final Map<String, Integer> provisionalIds;
+	private final int[] rank;
+	/**
+	 * The provisional id of each plan id
+	 */
+	private final int[] order;
+	private final int[] dependentOffsets;
+	private final int[] dependents;
+	private final int[] prerequisiteOffsets;
+	private final int[] prerequisites;
+
+	private ExecutionPlan(String[] names, Object[] payloads, Map<String, Integer> provisionalIds, int[] rank, int[] order,
+						  int[] dependentOffsets, int[] dependents, int[] prerequisiteOffsets, int[] prerequisites) {
+		this.names = names;
+		this.payloads = payloads;
+		this.provisionalIds = provisionalIds;
+		this.rank = rank;
+		this.order = order;
+		this.dependentOffsets = dependentOffsets;
+		this.dependents = dependents;
+		this.prerequisiteOffsets = prerequisiteOffsets;
+		this.prerequisites = prerequisites;
+	}
+
+	/**
+	 * Compile a plan from nodes and edges identified by provisional ids.
+	 * The edge from[i] to to[i] means to[i] depends on from[i].
+	 * The plan looks names up through the provisional ids rather than keeping a map of its own, so the map may go on to
+	 * receive new names, but the ids already in it must not change.
+	 * @param names the node names by provisional id
+	 * @param payloads the node payloads by provisional id
+	 * @param provisionalIds the provisional id of each name
+	 * @param from the predecessor of each edge
+	 * @param to the dependent of each edge
+	 * @param edgeCount the number of edges in the from and to arrays
+	 * @param <T> type of the graph payload
+	 * @return the plan with node ids reassigned in topological order
+	 */
+	static <T> ExecutionPlan<T> compile(String[] names, Object[] payloads, Map<String, Integer> provisionalIds, int[] from, int[] to, int edgeCount) {
+		int nodeCount = names.length;
+		int[] outOffsets = new int[nodeCount + 1];
+		int[] inDegree = new int[nodeCount];
+		for (int e = 0; e < edgeCount; e++) {
+			outOffsets[from[e] + 1]++;
+			inDegree[to[e]]++;
+		}
+		for (int i = 0; i < nodeCount; i++) {
+			outOffsets[i + 1] += outOffsets[i];
+		}
+		int[] outTargets = new int[edgeCount];
+		int[] fill = new int[nodeCount];
+		for (int e = 0; e < edgeCount; e++) {
+			outTargets[outOffsets[from[e]] + fill[from[e]]++] = to[e];
+		}
+
+		//Kahn's algorithm; the queue doubles as the topological order
+		int[] order = new int[nodeCount];
+		int tail = 0;
+		for (int i = 0; i < nodeCount; i++) {
+			if (inDegree[i] == 0) {
+				order[tail++] = i;
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			int node = order[head];
+			for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+				if (--inDegree[outTargets[e]] == 0) {
+					order[tail++] = outTargets[e];
+				}
+			}
+		}
+		return build(names, payloads, provisionalIds, order, tail, from, to, edgeCount);
+	}
+
+	/**
+	 * Build a plan from nodes and edges identified by provisional ids, where the topological order of the nodes is already known,
+	 * as with a {@link DynamicGraph}.
+	 * @param names the node names by provisional id.  Ids not in the order may be null
+	 * @param payloads the node payloads by provisional id
+	 * @param provisionalIds the provisional id of each name
+	 * @param order the provisional ids of the nodes to include, in topological order
+	 * @param from the predecessor of each edge
+	 * @param to the dependent of each edge
+	 * @param edgeCount the number of edges in the from and to arrays
+	 * @param <T> type of the graph payload
+	 * @return the plan with node ids assigned in the specified order
+	 */
+	static <T> ExecutionPlan<T> ordered(String[] names, Object[] payloads, Map<String, Integer> provisionalIds, int[] order, int[] from, int[] to, int edgeCount) {
+		return build(names, payloads, provisionalIds, order, order.length, from, to, edgeCount);
+	}
+
+	/**
+	 * Patch the plan of a {@link DynamicGraph} after changes that renumbered or reconnected only some of its nodes.
+	 * The nodes that did not change keep their ids, and their edges are copied from the previous plan rather than built again.
+	 * A node whose edges refer to a node that was renumbered must be given as changed too.
+	 * @param previous the plan before the changes
+	 * @param size the number of nodes in the new plan, at least as many as in the previous plan
+	 * @param names the node names by provisional id
+	 * @param payloads the node payloads by provisional id
+	 * @param provisionalIds the provisional id of each name
+	 * @param changed the ids of the changed nodes in increasing order, including every id beyond the previous plan
+	 * @param changedOrder the provisional id of each changed node
+	 * @param changedCount the number of changed nodes
+	 * @param dependentRows the ids of the dependents of each changed node
+	 * @param prerequisiteRows the ids of the prerequisites of each changed node
+	 * @param <T> type of the graph payload
+	 * @return the patched plan
+	 */
+	static <T> ExecutionPlan<T> patch(ExecutionPlan<T> previous, int size, String[] names, Object[] payloads, Map<String, Integer> provisionalIds,
+									  int[] changed, int[] changedOrder, int changedCount, int[][] dependentRows, int[][] prerequisiteRows) {
+		String[] planNames = Arrays.copyOf(previous.names, size);
+		Object[] planPayloads = Arrays.copyOf(previous.payloads, size);
+		int[] order = Arrays.copyOf(previous.order, size);
+		int[] rank = Arrays.copyOf(previous.rank, Math.max(previous.rank.length, names.length));
+		Arrays.fill(rank, previous.rank.length, rank.length, -1);
+		for (int c = 0; c < changedCount; c++) {
+			int id = changed[c];
+			int provisionalId = changedOrder[c];
+			planNames[id] = names[provisionalId];
+			planPayloads[id] = payloads[provisionalId];
+			order[id] = provisionalId;
+			rank[provisionalId] = id;
+		}
+		int[] dependentOffsets = new int[size + 1];
+		int[] dependents = patchRows(previous.dependentOffsets, previous.dependents, dependentOffsets, changed, changedCount, dependentRows);
+		int[] prerequisiteOffsets = new int[size + 1];
+		int[] prerequisites = patchRows(previous.prerequisiteOffsets, previous.prerequisites, prerequisiteOffsets, changed, changedCount, prerequisiteRows);
+		return new ExecutionPlan<>(planNames, planPayloads, provisionalIds, rank, order, dependentOffsets, dependents, prerequisiteOffsets, prerequisites);
+	}
+
+	/**
+	 * Copy the edges of each run of unchanged nodes in one go, shifting their offsets, and write the edges of the changed nodes between them
+	 * @return the patched edges
+	 */
+	private static int[] patchRows(int[] offsets, int[] targets, int[] patchedOffsets, int[] changed, int changedCount, int[][] rows) {
+		int size = patchedOffsets.length - 1;
+		int previousSize = offsets.length - 1;
+		int edgeCount = targets.length;
+		for (int c = 0; c < changedCount; c++) {
+			int id = changed[c];
+			if (id < previousSize) {
+				edgeCount -= offsets[id + 1] - offsets[id];
+			}
+			edgeCount += rows[c].length;
+		}
+		int[] patched = new int[edgeCount];
+		int written = 0;
+		int from = 0;
+		for (int c = 0; c <= changedCount; c++) {
+			//every id beyond the previous plan is changed, so the ids of each run were all in the previous plan
+			int until = c < changedCount ? changed[c] : size;
+			if (from < until) {
+				int shift = written - offsets[from];
+				for (int id = from; id < until; id++) {
+					patchedOffsets[id] = offsets[id] + shift;
+				}
+				int length = offsets[until] - offsets[from];
+				System.arraycopy(targets, offsets[from], patched, written, length);
+				written += length;
+			}
+			if (c < changedCount) {
+				patchedOffsets[until] = written;
+				System.arraycopy(rows[c], 0, patched, written, rows[c].length);
+				written += rows[c].length;
+				from = until + 1;
+			}
+		}
+		patchedOffsets[size] = written;
+		return patched;
+	}
+
+	private static <T> ExecutionPlan<T> build(String[] names, Object[] payloads, Map<String, Integer> provisionalIds, int[] order, int planSize,
+											  int[] from, int[] to, int edgeCount) {
+		int nodeCount = names.length;
+		int[] rank = new int[nodeCount];
+		Arrays.fill(rank, -1);
+		String[] planNames = new String[planSize];
+		Object[] planPayloads = new Object[planSize];
+		for (int i = 0; i < planSize; i++) {
+			rank[order[i]] = i;
+			planNames[i] = names[order[i]];
+			planPayloads[i] = payloads[order[i]];
+		}
+
+		int[] dependentOffsets = new int[planSize + 1];
+		int[] prerequisiteOffsets = new int[planSize + 1];
+		int planEdges = 0;
+		for (int e = 0; e < edgeCount; e++) {
+			int f = rank[from[e]];
+			int t = rank[to[e]];
+			if (f >= 0 && t >= 0) {
+				dependentOffsets[f + 1]++;
+				prerequisiteOffsets[t + 1]++;
+				planEdges++;
+			}
+		}
+		for (int i = 0; i < planSize; i++) {
+			dependentOffsets[i + 1] += dependentOffsets[i];
+			prerequisiteOffsets[i + 1] += prerequisiteOffsets[i];
+		}
+		int[] dependents = new int[planEdges];
+		int[] prerequisites = new int[planEdges];
+		int[] dependentFill = new int[planSize];
+		int[] prerequisiteFill = new int[planSize];
+		for (int e = 0; e < edgeCount; e++) {
+			int f = rank[from[e]];
+			int t = rank[to[e]];
+			if (f >= 0 && t >= 0) {
+				dependents[dependentOffsets[f] + dependentFill[f]++] = t;
+				prerequisites[prerequisiteOffsets[t] + prerequisiteFill[t]++] = f;
+			}
+		}
+		return new ExecutionPlan<>(planNames, planPayloads, provisionalIds, rank, Arrays.copyOf(order, planSize), dependentOffsets, dependents, prerequisiteOffsets, prerequisites);
+	}
+
+	/**
+	 * Create a new, independent, state to track the progress of runs of this plan
+	 * @return the new state with no nodes evaluated
+	 */
+	public ExecutionState newState() {
+		return new ExecutionState(names.length);
+	}
+
+	/**
+	 * Run the command on every node not yet evaluated in the state, in topological order.
+	 * If the command fails, the nodes evaluated so far remain marked as evaluated, so running again continues where the failed run stopped.
+	 * @param state the state of the run
+	 * @param command the command to run
+	 * @throws CoreException if the command throws a CoreException
+	 */
+	@SuppressWarnings("unchecked")
+	public void execute(ExecutionState state, GraphExecutedCommand<T> command) throws CoreException {
+		for (int i = 0; i < names.length; i++) {
+			if (!state.isEvaluated(i)) {
+				command.execute(names[i], (T) payloads[i]);
+				state.markEvaluated(i);
+			}
+		}
+	}
+
+	/**
+	 * The number of nodes in the plan
+	 * @return the node count
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Get the id of a node
+	 * @param name the name of the node
+	 * @return the id of the node, or -1 if the node is not in the plan
+	 */
+	public int indexOf(String name) {
+		Integer provisionalId = provisionalIds.get(name);
+		if (provisionalId == null || provisionalId >= rank.length) {
+			return -1;
+		}
+		int id = rank[provisionalId];
+		//the provisional id may since have been given to another node, see DynamicGraph
+		return id >= 0 && names[id].equals(name) ? id : -1;
+	}
+
+	/**
+	 * Get the name of a node
+	 * @param id the id of the node
+	 * @return the node name
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Get the payload of a node
+	 * @param id the id of the node
+	 * @return the payload associated with the node
+	 */
+	@SuppressWarnings("unchecked")
+	public T getPayload(int id) {
+		return (T) payloads[id];
+	}
+
+	/**
+	 * Group the nodes by dependency level: the nodes with no prerequisites are level 0, and every other node is one level above
+	 * its highest prerequisite.  The nodes of a level do not depend on each other, so may be run concurrently once the levels
+	 * below them have run.
+	 * @return the ids of the nodes of each level, lowest level first
+	 */
+	public int[][] levels() {
+		int[] levelOf = new int[names.length];
+		int[] levelSizes = new int[names.length + 1];
+		int levelCount = 0;
+		//ids are in topological order, so the level of every prerequisite of a node is known before the node is reached
+		for (int i = 0; i < names.length; i++) {
+			int level = 0;
+			for (int e = prerequisiteOffsets[i]; e < prerequisiteOffsets[i + 1]; e++) {
+				level = Math.max(level, levelOf[prerequisites[e]] + 1);
+			}
+			levelOf[i] = level;
+			levelSizes[level]++;
+			levelCount = Math.max(levelCount, level + 1);
+		}
+		int[][] levels = new int[levelCount][];
+		for (int level = 0; level < levelCount; level++) {
+			levels[level] = new int[levelSizes[level]];
+		}
+		int[] filled = new int[levelCount];
+		for (int i = 0; i < names.length; i++) {
+			levels[levelOf[i]][filled[levelOf[i]]++] = i;
+		}
+		return levels;
+	}
+
+	/**
+	 * The provisional id a node was compiled from
+	 * @param id the id of the node in the plan
+	 * @return the provisional id
+	 */
+	int provisionalId(int id) {
+		return order[id];
+	}
+
+	int[] dependentOffsets() {
+		return dependentOffsets;
+	}
+
+	int[] dependents() {
+		return dependents;
+	}
+
+	int[] prerequisiteOffsets() {
+		return prerequisiteOffsets;
+	}
+
+	int[] prerequisites() {
+		return prerequisites;
+	}
+}
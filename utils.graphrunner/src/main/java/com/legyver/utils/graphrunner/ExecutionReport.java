@@ -0,0 +1,223 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of a traced graph run: the slowest nodes, and the critical path, which is the chain of dependent nodes with the
+ * largest total duration.  No matter how many threads are available, a run cannot take less time than its critical path.
+ */
+public class ExecutionReport {
+	private final List<NodeTiming> slowestFirst;
+	private final List<String> criticalPath;
+	private final long criticalPathNanos;
+	private final long wallTimeNanos;
+	private final long totalNodeNanos;
+
+	ExecutionReport(ExecutionPlan<?> plan, Map<String, NodeTiming> timings) {
+		slowestFirst = new ArrayList<>(timings.values());
+		slowestFirst.sort(Comparator.comparingLong(NodeTiming::getDurationNanos).reversed());
+
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		long total = 0;
+		for (NodeTiming timing : slowestFirst) {
+			long begin = timing.getQueuedNanos() >= 0 ? timing.getQueuedNanos() : timing.getStartedNanos();
+			if (begin >= 0) {
+				first = Math.min(first, begin);
+			}
+			last = Math.max(last, timing.getFinishedNanos());
+			total += timing.getDurationNanos();
+		}
+		wallTimeNanos = first == Long.MAX_VALUE || last < first ? 0 : last - first;
+		totalNodeNanos = total;
+
+		//longest path by duration; ids are in topological order so every prerequisite is settled before its dependents
+		int size = plan.size();
+		long[] pathNanos = new long[size];
+		int[] previous = new int[size];
+		int[] prerequisiteOffsets = plan.prerequisiteOffsets();
+		int[] prerequisites = plan.prerequisites();
+		int end = -1;
+		for (int i = 0; i < size; i++) {
+			previous[i] = -1;
+			long longestPrerequisite = 0;
+			for (int e = prerequisiteOffsets[i]; e < prerequisiteOffsets[i + 1]; e++) {
+				int prerequisite = prerequisites[e];
+				if (pathNanos[prerequisite] > longestPrerequisite || previous[i] < 0) {
+					longestPrerequisite = pathNanos[prerequisite];
+					previous[i] = prerequisite;
+				}
+			}
+			NodeTiming timing = timings.get(plan.getName(i));
+			pathNanos[i] = longestPrerequisite + (timing == null ? 0 : timing.getDurationNanos());
+			if (timing != null && (end < 0 || pathNanos[i] > pathNanos[end])) {
+				end = i;
+			}
+		}
+		List<String> path = new ArrayList<>();
+		for (int i = end; i >= 0; i = previous[i]) {
+			path.add(plan.getName(i));
+		}
+		Collections.reverse(path);
+		criticalPath = Collections.unmodifiableList(path);
+		criticalPathNanos = end < 0 ? 0 : pathNanos[end];
+	}
+
+	/**
+	 * The nodes that took longest
+	 * @param limit the maximum number of nodes to return
+	 * @return the slowest nodes, slowest first
+	 */
+	public List<NodeTiming> getSlowestNodes(int limit) {
+		return Collections.unmodifiableList(slowestFirst.subList(0, Math.min(limit, slowestFirst.size())));
+	}
+
+	/**
+	 * The nodes on which the command failed
+	 * @return the failed nodes
+	 */
+	public List<NodeTiming> getFailedNodes() {
+		List<NodeTiming> failed = new ArrayList<>();
+		for (NodeTiming timing : slowestFirst) {
+			if (timing.getFailure() != null) {
+				failed.add(timing);
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * The chain of dependent nodes with the largest total duration
+	 * @return the node names on the critical path, in the order they ran
+	 */
+	public List<String> getCriticalPath() {
+		return criticalPath;
+	}
+
+	/**
+	 * The total duration of the nodes on the critical path
+	 * @return the critical path time
+	 */
+	public long getCriticalPathNanos() {
+		return criticalPathNanos;
+	}
+
+	/**
+	 * Time from the first node being queued or started until the last node finished
+	 * @return the wall time of the run
+	 */
+	public long getWallTimeNanos() {
+		return wallTimeNanos;
+	}
+
+	/**
+	 * The sum of the durations of all nodes, which is the time the run would take on a single thread
+	 * @return the total node time
+	 */
+	public long getTotalNodeNanos() {
+		return totalNodeNanos;
+	}
+
+	/**
+	 * Human-readable report
+	 * @param limit the maximum number of slowest nodes to list
+	 * @return the report text
+	 */
+	public String toText(int limit) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Wall time: ").append(millis(wallTimeNanos)).append(" ms\n");
+		sb.append("Total node time: ").append(millis(totalNodeNanos)).append(" ms\n");
+		sb.append("Critical path time: ").append(millis(criticalPathNanos)).append(" ms\n");
+		sb.append("Critical path: ").append(String.join(" -> ", criticalPath)).append('\n');
+		sb.append("Slowest nodes:\n");
+		for (NodeTiming timing : getSlowestNodes(limit)) {
+			sb.append("  ").append(timing.getNodeName())
+					.append(": ").append(millis(timing.getDurationNanos())).append(" ms");
+			if (timing.getQueueWaitNanos() > 0) {
+				sb.append(" (queued ").append(millis(timing.getQueueWaitNanos())).append(" ms)");
+			}
+			if (timing.getFailure() != null) {
+				sb.append(" FAILED: ").append(timing.getFailure());
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Machine-readable report of all nodes, slowest first
+	 * @return the report as a JSON object
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder("{");
+		sb.append("\"wallTimeNanos\":").append(wallTimeNanos);
+		sb.append(",\"totalNodeNanos\":").append(totalNodeNanos);
+		sb.append(",\"criticalPathNanos\":").append(criticalPathNanos);
+		sb.append(",\"criticalPath\":[");
+		for (int i = 0; i < criticalPath.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			appendJsonString(sb, criticalPath.get(i));
+		}
+		sb.append("],\"nodes\":[");
+		for (int i = 0; i < slowestFirst.size(); i++) {
+			NodeTiming timing = slowestFirst.get(i);
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"name\":");
+			appendJsonString(sb, timing.getNodeName());
+			sb.append(",\"durationNanos\":").append(timing.getDurationNanos());
+			sb.append(",\"queueWaitNanos\":").append(timing.getQueueWaitNanos());
+			if (timing.getFailure() != null) {
+				sb.append(",\"failure\":");
+				appendJsonString(sb, String.valueOf(timing.getFailure()));
+			}
+			sb.append('}');
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	private static void appendJsonString(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int) c));
+					} else {
+						sb.append(c);
+					}
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -0,0 +1,42 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.Arrays;
+
+/**
+ * Progress of a run of an {@link ExecutionPlan}.
+ * A node is evaluated if its stamp matches the current epoch, so resetting the state is a single increment rather than a walk over every node.
+ * A state must not be shared between concurrent runs.
+ */
+public final class ExecutionState {
+	private final int[] evaluatedEpoch;
+	private int epoch = 1;
+
+	ExecutionState(int size) {
+		this.evaluatedEpoch = new int[size];
+	}
+
+	/**
+	 * Test if a node has been evaluated since the last reset
+	 * @param id the id of the node in the plan
+	 * @return true if the node has been evaluated
+	 */
+	public boolean isEvaluated(int id) {
+		return evaluatedEpoch[id] == epoch;
+	}
+
+	void markEvaluated(int id) {
+		evaluatedEpoch[id] = epoch;
+	}
+
+	/**
+	 * Mark all nodes as not evaluated
+	 */
+	public void reset() {
+		if (epoch == Integer.MAX_VALUE) {
+			//only once every few billion resets
+			Arrays.fill(evaluatedEpoch, 0);
+			epoch = 0;
+		}
+		epoch++;
+	}
+}
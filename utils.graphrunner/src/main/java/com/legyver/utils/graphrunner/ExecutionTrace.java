@@ -0,0 +1,66 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link GraphRunListener} that records the timing of every node, and summarizes it in an {@link ExecutionReport}.
+ * Ex:
+ *   ExecutionTrace trace = new ExecutionTrace();
+ *   graph.setListener(trace);
+ *   graph.executeStrategy(command);
+ *   System.out.println(trace.report(graph).toText(10));
+ */
+public class ExecutionTrace implements GraphRunListener {
+	private final Map<String, NodeTiming> timings = new ConcurrentHashMap<>();
+
+	@Override
+	public void nodeQueued(String nodeName, long nanoTime) {
+		timing(nodeName).queued(nanoTime);
+	}
+
+	@Override
+	public void nodeStarted(String nodeName, long nanoTime) {
+		timing(nodeName).started(nanoTime);
+	}
+
+	@Override
+	public void nodeFinished(String nodeName, long nanoTime) {
+		timing(nodeName).finished(nanoTime);
+	}
+
+	@Override
+	public void nodeFailed(String nodeName, long nanoTime, Throwable failure) {
+		timing(nodeName).failed(nanoTime, failure);
+	}
+
+	private NodeTiming timing(String nodeName) {
+		return timings.computeIfAbsent(nodeName, NodeTiming::new);
+	}
+
+	/**
+	 * The timings recorded so far
+	 * @return the timing of each node that has been queued or run
+	 */
+	public Collection<NodeTiming> getTimings() {
+		return new ArrayList<>(timings.values());
+	}
+
+	/**
+	 * Discard all recorded timings, for instance between runs of the same graph
+	 */
+	public void clear() {
+		timings.clear();
+	}
+
+	/**
+	 * Summarize the recorded timings
+	 * @param graph the graph that was run, used to work out the critical path
+	 * @return the report
+	 */
+	public ExecutionReport report(Graph<?> graph) {
+		return new ExecutionReport(graph.plan(), timings);
+	}
+}
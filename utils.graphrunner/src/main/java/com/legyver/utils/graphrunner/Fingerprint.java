@@ -0,0 +1,43 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.Arrays;
+
+/**
+ * The inputs of a node: the node name, the node's own input value and the results of its prerequisites, in plan order.
+ * Two fingerprints are equal if all the values are equal, so the values must implement equals and hashCode, and must not be modified after
+ * the fingerprint is taken.
+ */
+public final class Fingerprint {
+	private final Object[] values;
+	private final int hash;
+
+	Fingerprint(Object[] values) {
+		this.values = values;
+		this.hash = Arrays.hashCode(values);
+	}
+
+	/**
+	 * The name of the node the fingerprint belongs to
+	 * @return the node name
+	 */
+	public String getNodeName() {
+		return (String) values[0];
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Fingerprint)) {
+			return false;
+		}
+		Fingerprint that = (Fingerprint) o;
+		return hash == that.hash && Arrays.equals(values, that.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
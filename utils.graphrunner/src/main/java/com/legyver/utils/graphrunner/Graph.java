@@ -2,12 +2,11 @@ package com.legyver.utils.graphrunner;
 
 import com.legyver.core.exception.CoreException;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.function.BiConsumer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 /**
@@ -19,13 +18,23 @@ import java.util.stream.Stream;
  *       /b depends-on a (not evaluable)
  *       /c depends-on a (evaluable)
  *            /a
+ *
+ * The nodes and connections are the topology of the graph, which is compiled into an immutable {@link ExecutionPlan}.
+ * Which nodes have been evaluated is kept apart from the topology in an {@link ExecutionState}: the graph has one of its own
+ * for {@link #executeStrategy(GraphExecutedCommand)}, and {@link #newExecution()} creates further executions with their own
+ * state, so the same graph can be run many times at once without copying or locking it.
  */
 public class Graph<T> {
 	/**
 	 * The graph/node names
 	 */
 	protected final String name;
-	private RunStrategy strategy = new RunAllStrategy();
+	/**
+	 * Used when no strategy has been set, so that the nodes, which are graphs themselves, do not each carry a strategy
+	 */
+	private static final RunStrategy DEFAULT_STRATEGY = new RunAllStrategy();
+	private RunStrategy strategy;
+	private GraphRunListener listener;
 	/**
 	 * The nodes of the graph
 	 */
@@ -34,10 +43,27 @@ public class Graph<T> {
 	 * A set of values shared by all nodes in the graph
 	 */
 	protected final Map<String, T> values;
+	/**
+	 * Every node in the graph by name, shared by all nodes in the graph so lookups do not have to walk the tree
+	 */
+	private final Map<String, Graph.GraphNode<T>> nodeIndex;
+	/**
+	 * Incremented whenever a node or connection is added, to invalidate the cached {@link #plan} and {@link #reachability}
+	 */
+	private int modCount;
+	private int planModCount;
+	private ExecutionPlan<T> plan;
+	private GraphReachability reachability;
+	/**
+	 * The plan the {@link #state} is indexed by
+	 */
+	private ExecutionPlan<T> statePlan;
+	private ExecutionState state;
 
-	private Graph(String name, Map<String, T> values) {
+	Graph(String name, Map<String, T> values, Map<String, Graph.GraphNode<T>> nodeIndex) {
 		this.name = name;
 		this.values = values;
+		this.nodeIndex = nodeIndex;
 	}
 
 	/**
@@ -45,7 +71,7 @@ public class Graph<T> {
 	 * @param name the name of the graph/node
 	 */
 	public Graph(String name) {
-		this(name, new HashMap<>());
+		this(name, new HashMap<>(), new HashMap<>());
 	}
 
 	/**
@@ -56,49 +82,117 @@ public class Graph<T> {
 		this.strategy = strategy;
 	}
 
-	Map<String, Graph.GraphNode<T>> getChildMap() {
-		return graph;
+	RunStrategy getStrategy() {
+		return strategy;
 	}
 
-	void addPrerequisite(Graph.GraphNode<T> graphNode) {
-		//noop.  Root nodes have no pre-requisites
+	Map<String, Graph.GraphNode<T>> getChildMap() {
+		return graph;
 	}
 
 	void addDependent(GraphNode<T> graphNode) {
 		graph.put(graphNode.name, graphNode);
 	}
 
+	/**
+	 * Record that a node or connection has been added
+	 */
+	void modified() {
+		modCount++;
+	}
+
+	/**
+	 * Add a node, or replace the payload of an existing node
+	 * @param nodeName the name of the node
+	 * @param payload the payload of the node
+	 */
+	void putNode(String nodeName, T payload) {
+		modCount++;
+		if (find(nodeName) == null) {
+			graph.put(nodeName, newNode(nodeName));//all nodes seeded with reference to same value map
+		}
+		values.put(nodeName, payload);
+	}
+
 	void accept(String dependent, String predecessor) {
+		modCount++;
 		GraphNode<T> graphNode = find(predecessor);
 		if (graphNode == null) {
-			graphNode = new GraphNode<>(predecessor, values);
+			graphNode = newNode(predecessor);
 			graph.put(predecessor, graphNode);
 		}
 
 		GraphNode<T> dependentNode = find(dependent);
 		if (dependentNode == null) {
-			dependentNode = new GraphNode<>(dependent, values);
+			dependentNode = newNode(dependent);
 		}
 
 		if (!dependent.equals(predecessor)) {
 			//remove dependent from root
 			graph.remove(dependent);
 			graphNode.addDependent(dependentNode);
-			dependentNode.addPrerequisite(graphNode);
 		}
 	}
 
-	GraphNode<T> find(String name) {
-		Iterator<String> topIt = graph.keySet().iterator();
-		if (graph.containsKey(name)) {
-			return graph.get(name);
+	/**
+	 * Construct an unnamed graph whose nodes and connections can be added from several threads at once, with
+	 * {@link #addNodeConcurrently(String, Object)} and {@link #acceptConcurrently(String, String)}.
+	 * Once built it is used like any other graph.
+	 * @param <T> type of the graph payload
+	 * @return the empty graph
+	 */
+	static <T> Graph<T> concurrent() {
+		Graph<T> graph = new Graph<>(null, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+		graph.graph = new ConcurrentHashMap<>();
+		return graph;
+	}
+
+	/**
+	 * Add a node, from any thread, to a graph made by {@link #concurrent()}, or find the node if another thread added it first.
+	 * A node added here starts at root, so every node must be added before any of them are connected.
+	 * @param nodeName the name of the node
+	 * @param payload the payload of the node, or null to leave the payload as it is
+	 */
+	void addNodeConcurrently(String nodeName, T payload) {
+		nodeIndex.computeIfAbsent(nodeName, key -> {
+			GraphNode<T> graphNode = new GraphNode<>(key, values, nodeIndex);
+			graph.put(key, graphNode);
+			return graphNode;
+		});
+		if (payload != null) {
+			values.put(nodeName, payload);
 		}
-		GraphNode<T> graphNode = graph.get(name);
-		while (topIt.hasNext() && graphNode == null) {
-			String next = topIt.next();
-			GraphNode<T> temp = graph.get(next);
-			graphNode = temp.find(name);
+	}
+
+	/**
+	 * Connect two nodes, from any thread, of a graph made by {@link #concurrent()}, as {@link #accept(String, String)}.
+	 * Both nodes must have been added already
+	 * @param dependent the node that depends on the predecessor
+	 * @param predecessor the node evaluated first
+	 */
+	void acceptConcurrently(String dependent, String predecessor) {
+		if (!dependent.equals(predecessor)) {
+			GraphNode<T> graphNode = find(predecessor);
+			graph.remove(dependent);
+			//the child maps of the nodes are not concurrent, as they are only written while the graph is built
+			synchronized (graphNode) {
+				graphNode.addDependent(find(dependent));
+			}
 		}
+	}
+
+	GraphNode<T> find(String name) {
+		return nodeIndex.get(name);
+	}
+
+	/**
+	 * Create a node sharing this graph's values and node index, and register it in the index
+	 * @param name the name of the node
+	 * @return the new node
+	 */
+	GraphNode<T> newNode(String name) {
+		GraphNode<T> graphNode = new GraphNode<>(name, values, nodeIndex);
+		nodeIndex.put(name, graphNode);
 		return graphNode;
 	}
 
@@ -108,43 +202,259 @@ public class Graph<T> {
 	 * @throws CoreException if the command throws a CoreException
 	 */
 	public void executeStrategy(GraphExecutedCommand<T> command) throws CoreException {
-		strategy.execute(this, command);
+		if (listener != null) {
+			command = new ListenedCommand<>(command, listener);
+		}
+		(strategy == null ? DEFAULT_STRATEGY : strategy).execute(this, command);
+	}
+
+	/**
+	 * Set a listener to be notified as nodes are run, for instance an {@link ExecutionTrace}.
+	 * When no listener is set, commands are run without any instrumentation.
+	 * @param listener the listener, or null to remove the listener
+	 */
+	public void setListener(GraphRunListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * The listener to be notified as nodes are run
+	 * @return the listener, or null if there is none
+	 */
+	GraphRunListener getListener() {
+		return listener;
 	}
 
 	void run(GraphExecutedCommand<T> command) throws CoreException {
-		for (String s: graph.keySet()) {
-			GraphNode<T> graphNode = graph.get(s);
-			if (graphNode != null) {
-				graphNode.run(command);
+		ExecutionPlan<T> current = plan();
+		current.execute(state, command);
+	}
+
+	/**
+	 * Create a new execution of this graph.
+	 * The execution shares the topology of this graph, but has its own evaluated state, so it can be run at the same time as
+	 * this graph and any other execution of it, on any thread.  It starts out with the strategy and listener of this graph,
+	 * either of which may be replaced on the execution alone; a stateful strategy such as {@link DirtyPropagationStrategy}
+	 * should not be shared by executions that run concurrently.
+	 * Nodes and connections must not be added to the graph while its executions are running.
+	 * @return the new execution, with no nodes evaluated
+	 */
+	public Graph<T> newExecution() {
+		return new GraphExecution<>(this);
+	}
+
+	/**
+	 * Compile the graph into an {@link ExecutionPlan} for graphs that are run repeatedly.
+	 * The plan is a snapshot: nodes or connections added to the graph afterwards are not reflected in it.
+	 * @return the compiled plan
+	 */
+	public ExecutionPlan<T> compile() {
+		int nodeCount = nodeIndex.size();
+		String[] names = new String[nodeCount];
+		Object[] payloads = new Object[nodeCount];
+		Map<String, Integer> provisionalIds = new HashMap<>(nodeCount * 4 / 3 + 1);
+		int edgeCount = 0;
+		int id = 0;
+		for (GraphNode<T> graphNode : nodeIndex.values()) {
+			names[id] = graphNode.name;
+			payloads[id] = values.get(graphNode.name);
+			provisionalIds.put(graphNode.name, id++);
+			edgeCount += graphNode.graph.size();
+		}
+		int[] from = new int[edgeCount];
+		int[] to = new int[edgeCount];
+		int edge = 0;
+		for (GraphNode<T> graphNode : nodeIndex.values()) {
+			int predecessor = provisionalIds.get(graphNode.name);
+			for (String dependent : graphNode.graph.keySet()) {
+				from[edge] = predecessor;
+				to[edge++] = provisionalIds.get(dependent);
+			}
+		}
+		return ExecutionPlan.compile(names, payloads, provisionalIds, from, to, edgeCount);
+	}
+
+	/**
+	 * The compiled plan of the graph, recompiled only if the graph has changed since it was last compiled.
+	 * Synchronized, as executions of the graph may ask for it from different threads.
+	 * @return the current plan
+	 */
+	synchronized ExecutionPlan<T> topology() {
+		if (plan == null || planModCount != modCount) {
+			plan = compile();
+			reachability = null;
+			planModCount = modCount;
+		}
+		return plan;
+	}
+
+	/**
+	 * The reachability of the current {@link #plan()}, with any closures already computed for it
+	 * @return the current reachability
+	 */
+	synchronized GraphReachability reachability() {
+		ExecutionPlan<T> current = topology();
+		if (reachability == null) {
+			reachability = new GraphReachability(current);
+		}
+		return reachability;
+	}
+
+	/**
+	 * The current plan of the graph, moving the evaluated state over to it if the graph has changed since the last plan.
+	 * Strategies call this once per run, and the node ids they then pass to {@link #evaluate(int, GraphExecutedCommand)} and the
+	 * like are ids in this plan.
+	 * @return the current plan
+	 */
+	ExecutionPlan<T> plan() {
+		ExecutionPlan<T> current = topology();
+		if (current != statePlan) {
+			ExecutionState next = current.newState();
+			if (state != null) {
+				for (int i = 0; i < statePlan.size(); i++) {
+					int id = current.indexOf(statePlan.getName(i));
+					if (id >= 0 && state.isEvaluated(i)) {
+						next.markEvaluated(id);
+					}
+				}
 			}
+			state = next;
+			statePlan = current;
 		}
+		return current;
 	}
 
 	/**
-	 * Create a new sub Graph from the existing graph based on a filter criteria
+	 * Test if a node has been evaluated
+	 * @param id the id of the node in the current {@link #plan()}
+	 * @return true if the node has been evaluated
+	 */
+	boolean isEvaluated(int id) {
+		return state.isEvaluated(id);
+	}
+
+	/**
+	 * Mark a node as evaluated
+	 * @param id the id of the node in the current {@link #plan()}
+	 */
+	void markEvaluated(int id) {
+		state.markEvaluated(id);
+	}
+
+	/**
+	 * Evaluate a node if it has not been evaluated yet, without walking on to its dependents.
+	 * The caller is responsible for only calling this once all prerequisites have been evaluated.
+	 * @param id the id of the node in the current {@link #plan()}
+	 * @param command the command to run
+	 * @throws CoreException if the command throws a CoreException
+	 */
+	void evaluate(int id, GraphExecutedCommand<T> command) throws CoreException {
+		if (!state.isEvaluated(id)) {
+			reevaluate(id, command);
+		}
+	}
+
+	/**
+	 * Evaluate a node again, whether or not it has already been evaluated, without walking on to its dependents.
+	 * @param id the id of the node in the current {@link #plan()}
+	 * @param command the command to run
+	 * @throws CoreException if the command throws a CoreException
+	 */
+	void reevaluate(int id, GraphExecutedCommand<T> command) throws CoreException {
+		command.execute(statePlan.getName(id), statePlan.getPayload(id));
+		state.markEvaluated(id);
+	}
+
+	/**
+	 * Create a new sub Graph from the existing graph based on a filter criteria.
+	 * The new graph contains new nodes for the specified node and everything it transitively depends on, and shares the values of this graph.
 	 * @param nodeToRun the node to use as the basis of the new graph
 	 * @return the filtered Graph
 	 */
 	public Graph<T> filter(String nodeToRun) {
-		Graph<T> filtered = new Graph<>(null, values);
-		new DepthFirstSearch<>(graph, new BiConsumer<String, GraphNode<T>>() {
-			@Override
-			public void accept(String s, GraphNode<T> graphNode) {
-				filtered.graph.put(s, graphNode);
+		Graph<T> filtered = new Graph<>(null, values, new HashMap<>());
+		ExecutionPlan<T> current = plan();
+		int id = current.indexOf(nodeToRun);
+		if (id < 0) {
+			return filtered;
+		}
+		int[] closure = reachability().upstream(id);
+		int[] prerequisiteOffsets = current.prerequisiteOffsets();
+		int[] prerequisites = current.prerequisites();
+		//ids are in topological order, so prerequisites are always added before their dependents
+		for (int i : closure) {
+			String nodeName = current.getName(i);
+			if (prerequisiteOffsets[i] == prerequisiteOffsets[i + 1]) {
+				filtered.graph.put(nodeName, filtered.newNode(nodeName));
 			}
-		}).search(nodeToRun);
+			for (int e = prerequisiteOffsets[i]; e < prerequisiteOffsets[i + 1]; e++) {
+				filtered.accept(nodeName, current.getName(prerequisites[e]));
+			}
+		}
 		return filtered;
 	}
 
-	private void resetNode(ResetOptions options, GraphNode<T> graphNode) {
-		if (options.resetEvaluatedFlag) {
-			graphNode.evaluated = false;
+	/**
+	 * Split the graph into its weakly connected components: groups of nodes with no connection, in either direction, to any node
+	 * outside the group.  Each component can be run as an independent unit of work, with no synchronization between components.
+	 * See {@link ComponentRunner} and {@link WorkerPool}.
+	 * Each component is a new compact graph with the same payloads as this graph and its own evaluated state.
+	 * Nodes that are part of a cycle (or depend on one) are left out, as they are never run.
+	 * @return the components, largest first
+	 */
+	public List<Graph<T>> components() {
+		ExecutionPlan<T> current = topology();
+		int size = current.size();
+		int[] parent = new int[size];
+		for (int i = 0; i < size; i++) {
+			parent[i] = i;
 		}
-		if (options.resetEvaluationProgress) {
-			graphNode.satisfiedNodeNames.clear();
+		int[] dependentOffsets = current.dependentOffsets();
+		int[] dependents = current.dependents();
+		for (int i = 0; i < size; i++) {
+			for (int e = dependentOffsets[i]; e < dependentOffsets[i + 1]; e++) {
+				int root = root(parent, i);
+				int dependentRoot = root(parent, dependents[e]);
+				if (root != dependentRoot) {
+					parent[Math.max(root, dependentRoot)] = Math.min(root, dependentRoot);
+				}
+			}
+		}
+		//ids are in topological order, so each component is filled in topological order
+		int[] componentOf = new int[size];
+		List<CompactGraph<T>> components = new ArrayList<>();
+		int[] prerequisiteOffsets = current.prerequisiteOffsets();
+		int[] prerequisites = current.prerequisites();
+		for (int i = 0; i < size; i++) {
+			int root = root(parent, i);
+			CompactGraph<T> component;
+			if (root == i) {
+				componentOf[i] = components.size();
+				component = new CompactGraph<>();
+				components.add(component);
+			} else {
+				componentOf[i] = componentOf[root];
+				component = components.get(componentOf[i]);
+			}
+			String nodeName = current.getName(i);
+			component.putNode(nodeName, current.getPayload(i));
+			for (int e = prerequisiteOffsets[i]; e < prerequisiteOffsets[i + 1]; e++) {
+				component.accept(nodeName, current.getName(prerequisites[e]));
+			}
+		}
+		components.sort((a, b) -> Integer.compare(b.size(), a.size()));
+		return new ArrayList<>(components);
+	}
+
+	/**
+	 * Find the root of a node in a union-find forest, halving the path on the way
+	 */
+	private static int root(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
 		}
-		graphNode.satisfiedNodeNames.clear();
-		graphNode.graph.values().forEach(node -> resetNode(options, node));
+		return i;
 	}
 
 	/**
@@ -152,13 +462,13 @@ public class Graph<T> {
 	 * @param options: what to reset
 	 */
 	public void reset(ResetOptions options) {
-		this.graph.values()
-				.forEach(node -> resetNode(options, node));
+		if (options.resetEvaluatedFlag && state != null) {
+			state.reset();
+		}
 	}
 
 	/**
-	 * Set all {@link GraphNode} evaluated flags to false
-	 * and clear all satisfied node names
+	 * Mark all nodes as not evaluated
 	 */
 	public void resetEvaluated() {
 		reset(new ResetOptions()
@@ -166,35 +476,12 @@ public class Graph<T> {
 				.evaluationProgress());
 	}
 
+	/**
+	 * A node of the graph, holding only its place in the topology: the nodes that depend on it
+	 */
 	static class GraphNode<T> extends Graph<T> {
-		private Set<String> requisiteNodeNames = new HashSet<>();
-		private Set<String> satisfiedNodeNames = new HashSet<>();
-		private boolean evaluated;
-
-		GraphNode(String name, Map<String, T> values) {
-			super(name, values);
-		}
-
-		@Override
-		public void addPrerequisite(GraphNode graphNode) {
-			requisiteNodeNames.add(graphNode.name);
-		}
-
-		@Override
-		void run(GraphExecutedCommand<T> command) throws CoreException {
-			if (satisfiedNodeNames.size() == requisiteNodeNames.size() && !evaluated) {
-				T target = values.get(name);
-				command.execute(name, target);
-				evaluated = true;
-
-				for (String s: graph.keySet()) {
-					GraphNode<T> graphNode = graph.get(s);
-					if (graphNode != null) {
-						graphNode.satisfiedNodeNames.add(name);
-						graphNode.run(command);
-					}
-				}
-			}
+		GraphNode(String name, Map<String, T> values, Map<String, GraphNode<T>> nodeIndex) {
+			super(name, values, nodeIndex);
 		}
 	}
 
@@ -206,6 +493,20 @@ public class Graph<T> {
 	public static class Builder<T extends Payload> {
 		private Graph<T> graph = new Graph<T>(null);
 
+		/**
+		 * Build a graph held in primitive arrays instead of a tree of nodes, for graphs with millions of nodes.
+		 * The graph is used exactly like any other graph.  See {@link CompactGraph}
+		 * @return the Builder to further allow construction of the Graph
+		 * @throws IllegalStateException if nodes or connections have already been added
+		 */
+		public Builder<T> compact() {
+			if (graph.modCount > 0) {
+				throw new IllegalStateException("compact() must be called before adding nodes or connections");
+			}
+			graph = new CompactGraph<>();
+			return this;
+		}
+
 		/**
 		 * Build the graph
 		 * @return the Graph
@@ -225,10 +526,7 @@ public class Graph<T> {
 		@SafeVarargs
 		public final Builder nodes(T... payloads) {
 			if (payloads != null) {
-				Stream.of(payloads).forEach(payload -> {
-					graph.graph.put(payload.getNodeName(), new GraphNode<>(payload.getNodeName(), graph.values));//all nodes seeded with reference to same value map
-					graph.values.put(payload.getNodeName(), payload);
-				});
+				Stream.of(payloads).forEach(payload -> graph.putNode(payload.getNodeName(), payload));
 			}
 
 			return this;
@@ -271,6 +569,14 @@ public class Graph<T> {
 			this.to = to;
 			return this;
 		}
+
+		String getFrom() {
+			return from;
+		}
+
+		String getTo() {
+			return to;
+		}
 	}
 
 	/**
@@ -292,7 +598,7 @@ public class Graph<T> {
 		private boolean resetEvaluationProgress;
 
 		/**
-		 * Set all {@link GraphNode} evaluated flags to false
+		 * Mark all nodes as not evaluated
 		 * @return builder to allow performing additional reset options
 		 */
 		public ResetOptions evaluatedFlag() {
@@ -301,7 +607,8 @@ public class Graph<T> {
 		}
 
 		/**
-		 * Clear all {@link GraphNode} satisfied node names
+		 * Clear the evaluation progress of all nodes.
+		 * Retained for compatibility: progress is no longer tracked apart from whether each node has been evaluated
 		 * @return builder to allow performing additional reset options
 		 */
 		public ResetOptions evaluationProgress() {
@@ -309,5 +616,9 @@ public class Graph<T> {
 			return this;
 		}
 
+		boolean resetsEvaluatedFlag() {
+			return resetEvaluatedFlag;
+		}
+
 	}
 }
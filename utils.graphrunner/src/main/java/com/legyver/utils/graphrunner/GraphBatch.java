@@ -0,0 +1,208 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Run one graph over many sets of values, for instance the same property structure for every tenant.
+ * The graph is compiled once when the batch is created, and each set of values is then run through the compiled plan in
+ * topological order, so the cost of building the topology is paid once per structure rather than once per set of values.
+ *
+ * The payloads the graph was built with are not used: the payload of each node is created from the set of values being run,
+ * or is the set of values itself.  A failure on one set of values stops that set, and is reported without affecting the others.
+ * An {@link Error}, ex: OutOfMemoryError, is not a failure of a set of values: it stops the batch and is thrown to the caller.
+ */
+public class GraphBatch {
+	private final ExecutionPlan<?> plan;
+	/**
+	 * The executor the sets of values are run on, or null to run them one after the other on the calling thread
+	 */
+	private final Executor executor;
+	/**
+	 * The most sets of values submitted to the executor at once, so a large stream is not read into memory ahead of the executor
+	 */
+	private final int maxInFlight;
+
+	/**
+	 * Construct a GraphBatch that runs each set of values in turn on the calling thread
+	 * @param graph the graph whose topology is run
+	 */
+	public GraphBatch(Graph<?> graph) {
+		this(graph, null);
+	}
+
+	/**
+	 * Construct a GraphBatch that runs sets of values concurrently on the specified executor.
+	 * The nodes of any one set of values are still run in order, one at a time.
+	 * @param graph the graph whose topology is run
+	 * @param executor the executor to use
+	 */
+	public GraphBatch(Graph<?> graph, Executor executor) {
+		this.plan = graph.compile();
+		this.executor = executor;
+		this.maxInFlight = Runtime.getRuntime().availableProcessors() * 4;
+	}
+
+	/**
+	 * Run the command on every node for each set of values, passing the set of values as the payload of every node
+	 * @param valueSets the sets of values
+	 * @param command the command to run
+	 * @param <V> the type of a set of values
+	 * @return the failures, in the order of the sets of values that failed.  Empty if all succeeded
+	 * @throws CoreException if interrupted while waiting for the executor
+	 * @throws Error if a set of values throws one, once the sets of values already running have finished
+	 */
+	public <V> List<Failure<V>> execute(Iterable<V> valueSets, GraphExecutedCommand<V> command) throws CoreException {
+		return execute(valueSets, (nodeName, values) -> values, command);
+	}
+
+	/**
+	 * Run the command on every node for each set of values
+	 * @param valueSets the sets of values
+	 * @param payloadFactory creates the payload of a node from the node name and the set of values being run, ex: SharedMapCtx::new
+	 * @param command the command to run
+	 * @param <V> the type of a set of values
+	 * @param <P> the type of the payload the command expects
+	 * @return the failures, in the order of the sets of values that failed.  Empty if all succeeded
+	 * @throws CoreException if interrupted while waiting for the executor
+	 * @throws Error if a set of values throws one, once the sets of values already running have finished
+	 */
+	public <V, P> List<Failure<V>> execute(Iterable<V> valueSets, BiFunction<String, V, P> payloadFactory, GraphExecutedCommand<P> command) throws CoreException {
+		return run(valueSets.iterator(), payloadFactory, command);
+	}
+
+	/**
+	 * Run the command on every node for each set of values in the stream.  The stream is read as the executor makes progress
+	 * @param valueSets the sets of values
+	 * @param payloadFactory creates the payload of a node from the node name and the set of values being run, ex: SharedMapCtx::new
+	 * @param command the command to run
+	 * @param <V> the type of a set of values
+	 * @param <P> the type of the payload the command expects
+	 * @return the failures, in the order of the sets of values that failed.  Empty if all succeeded
+	 * @throws CoreException if interrupted while waiting for the executor
+	 * @throws Error if a set of values throws one, once the sets of values already running have finished
+	 */
+	public <V, P> List<Failure<V>> execute(Stream<V> valueSets, BiFunction<String, V, P> payloadFactory, GraphExecutedCommand<P> command) throws CoreException {
+		return run(valueSets.iterator(), payloadFactory, command);
+	}
+
+	private <V, P> List<Failure<V>> run(Iterator<V> valueSets, BiFunction<String, V, P> payloadFactory, GraphExecutedCommand<P> command) throws CoreException {
+		List<Failure<V>> failures = Collections.synchronizedList(new ArrayList<>());
+		if (executor == null) {
+			for (int index = 0; valueSets.hasNext(); index++) {
+				runOne(index, valueSets.next(), payloadFactory, command, failures);
+			}
+			return failures;
+		}
+		Semaphore inFlight = new Semaphore(maxInFlight);
+		//an executor would swallow an Error, so it is handed back to the calling thread
+		AtomicReference<Error> error = new AtomicReference<>();
+		try {
+			for (int index = 0; valueSets.hasNext() && error.get() == null; index++) {
+				int i = index;
+				V values = valueSets.next();
+				inFlight.acquire();
+				try {
+					executor.execute(() -> {
+						try {
+							runOne(i, values, payloadFactory, command, failures);
+						} catch (Error e) {
+							if (!error.compareAndSet(null, e)) {
+								error.get().addSuppressed(e);
+							}
+						} finally {
+							inFlight.release();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					inFlight.release();
+					failures.add(new Failure<>(i, values, null, e));
+				}
+			}
+			//wait for the sets of values still running
+			inFlight.acquire(maxInFlight);
+			inFlight.release(maxInFlight);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CoreException("Interrupted while waiting for batch to finish", e);
+		}
+		if (error.get() != null) {
+			throw error.get();
+		}
+		failures.sort(Comparator.comparingInt(Failure::getIndex));
+		return failures;
+	}
+
+	private <V, P> void runOne(int index, V values, BiFunction<String, V, P> payloadFactory, GraphExecutedCommand<P> command, List<Failure<V>> failures) {
+		String nodeName = null;
+		try {
+			for (int id = 0; id < plan.size(); id++) {
+				nodeName = plan.getName(id);
+				command.execute(nodeName, payloadFactory.apply(nodeName, values));
+			}
+		} catch (CoreException | RuntimeException e) {
+			failures.add(new Failure<>(index, values, nodeName, e));
+		}
+	}
+
+	/**
+	 * A set of values that could not be run through the graph
+	 * @param <V> the type of a set of values
+	 */
+	public static final class Failure<V> {
+		private final int index;
+		private final V values;
+		private final String nodeName;
+		private final Throwable cause;
+
+		private Failure(int index, V values, String nodeName, Throwable cause) {
+			this.index = index;
+			this.values = values;
+			this.nodeName = nodeName;
+			this.cause = cause;
+		}
+
+		/**
+		 * The position of the set of values in the batch
+		 * @return the index, starting from 0
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * The set of values that failed
+		 * @return the values
+		 */
+		public V getValues() {
+			return values;
+		}
+
+		/**
+		 * The node the command failed on
+		 * @return the node name, or null if the set of values was never started
+		 */
+		public String getNodeName() {
+			return nodeName;
+		}
+
+		/**
+		 * What the command failed with
+		 * @return the exception, or error
+		 */
+		public Throwable getCause() {
+			return cause;
+		}
+	}
+}
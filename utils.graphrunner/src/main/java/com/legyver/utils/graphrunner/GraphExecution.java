@@ -0,0 +1,61 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An execution of a graph, created by {@link Graph#newExecution()}.
+ * Everything about the topology is read from the graph it was created from; all the execution holds is its own evaluated state,
+ * strategy and listener.
+ * @param <T> type of the graph payload
+ */
+final class GraphExecution<T> extends Graph<T> {
+	private final Graph<T> topology;
+
+	GraphExecution(Graph<T> topology) {
+		super(null, Collections.emptyMap(), Collections.emptyMap());
+		this.topology = topology;
+		setStrategy(topology.getStrategy());
+		setListener(topology.getListener());
+	}
+
+	@Override
+	ExecutionPlan<T> topology() {
+		return topology.topology();
+	}
+
+	@Override
+	GraphReachability reachability() {
+		return topology.reachability();
+	}
+
+	@Override
+	GraphNode<T> find(String name) {
+		return topology.find(name);
+	}
+
+	@Override
+	Map<String, GraphNode<T>> getChildMap() {
+		return topology.getChildMap();
+	}
+
+	@Override
+	void putNode(String nodeName, T payload) {
+		throw new UnsupportedOperationException("Nodes can only be added to the graph, not to an execution of it");
+	}
+
+	@Override
+	void accept(String dependent, String predecessor) {
+		throw new UnsupportedOperationException("Connections can only be added to the graph, not to an execution of it");
+	}
+
+	@Override
+	public ExecutionPlan<T> compile() {
+		return topology.compile();
+	}
+
+	@Override
+	public Graph<T> filter(String nodeToRun) {
+		return topology.filter(nodeToRun);
+	}
+}
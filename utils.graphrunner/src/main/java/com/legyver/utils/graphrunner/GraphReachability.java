@@ -0,0 +1,127 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transitive closures over the forward (dependent) and reverse (prerequisite) edges of an {@link ExecutionPlan}.
+ * A closure is a sorted array of the plan ids of its members, and since plan ids are assigned in topological order, iterating it
+ * visits the closure in an order in which every node comes after its prerequisites.  Iterating a closure, and holding it, cost in
+ * proportion to its own size, not to the size of the plan.
+ *
+ * The closures most recently used are cached, up to a number of members in proportion to the size of the plan, so the cache
+ * never holds much more than the plan itself.  A {@link Graph} discards its reachability whenever the graph changes.
+ */
+class GraphReachability {
+	/**
+	 * The members the cache can hold at least, however small the plan
+	 */
+	private static final int MIN_CACHED_MEMBERS = 1 << 16;
+
+	private final ExecutionPlan<?> plan;
+	private final Map<Long, int[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private final long maxCachedMembers;
+	private long cachedMembers;
+
+	GraphReachability(ExecutionPlan<?> plan) {
+		this.plan = plan;
+		this.maxCachedMembers = Math.max(MIN_CACHED_MEMBERS, 2L * plan.size());
+	}
+
+	/**
+	 * The node and everything it transitively depends on.
+	 * The returned array is shared and must not be modified.
+	 * @param id the plan id of the node
+	 * @return the plan ids of the upstream closure, inclusive of the node, in ascending order
+	 */
+	int[] upstream(int id) {
+		return closure(id, false);
+	}
+
+	/**
+	 * The node and everything that transitively depends on it.
+	 * The returned array is shared and must not be modified.
+	 * @param id the plan id of the node
+	 * @return the plan ids of the downstream closure, inclusive of the node, in ascending order
+	 */
+	int[] downstream(int id) {
+		return closure(id, true);
+	}
+
+	/**
+	 * The number of members of the closures cached
+	 * @return the member count
+	 */
+	long cachedMembers() {
+		synchronized (cache) {
+			return cachedMembers;
+		}
+	}
+
+	private int[] closure(int id, boolean downstream) {
+		//the direction in the low bit, so each direction has its own entries
+		Long key = ((long) id << 1) | (downstream ? 1 : 0);
+		synchronized (cache) {
+			int[] closure = cache.get(key);
+			if (closure != null) {
+				return closure;
+			}
+		}
+		//two threads may walk the same closure at once, to the same members
+		int[] closure = downstream
+				? walk(id, plan.dependentOffsets(), plan.dependents())
+				: walk(id, plan.prerequisiteOffsets(), plan.prerequisites());
+		synchronized (cache) {
+			if (cache.put(key, closure) == null) {
+				cachedMembers += closure.length;
+			}
+			//least recently used first
+			Iterator<int[]> eldest = cache.values().iterator();
+			while (cachedMembers > maxCachedMembers && eldest.hasNext()) {
+				int[] evicted = eldest.next();
+				if (evicted != closure) {
+					cachedMembers -= evicted.length;
+					eldest.remove();
+				}
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * Iterative depth-first walk, proportional to the size of the closure
+	 */
+	private static int[] walk(int id, int[] offsets, int[] targets) {
+		//grows only as far as the highest id visited
+		BitSet visited = new BitSet();
+		int[] members = new int[16];
+		int count = 0;
+		int[] stack = new int[16];
+		int top = 0;
+		visited.set(id);
+		stack[top++] = id;
+		while (top > 0) {
+			int node = stack[--top];
+			if (count == members.length) {
+				members = Arrays.copyOf(members, count * 2);
+			}
+			members[count++] = node;
+			for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+				int next = targets[e];
+				if (!visited.get(next)) {
+					visited.set(next);
+					if (top == stack.length) {
+						stack = Arrays.copyOf(stack, top * 2);
+					}
+					stack[top++] = next;
+				}
+			}
+		}
+		members = Arrays.copyOf(members, count);
+		Arrays.sort(members);
+		return members;
+	}
+}
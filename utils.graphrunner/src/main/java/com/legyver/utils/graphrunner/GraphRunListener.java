@@ -0,0 +1,45 @@
+package com.legyver.utils.graphrunner;
+
+/**
+ * Listener notified as the nodes of a graph are run.  See {@link Graph#setListener(GraphRunListener)}.
+ * Times are from {@link System#nanoTime()}.  Concurrent strategies notify the listener from multiple threads.
+ * All methods default to doing nothing, so implementations only need to override what they use.
+ */
+public interface GraphRunListener {
+	/**
+	 * A node became evaluable and is waiting for a thread.  Only concurrent strategies report this.
+	 * @param nodeName the name of the node
+	 * @param nanoTime the time the node was queued
+	 */
+	default void nodeQueued(String nodeName, long nanoTime) {
+		//template
+	}
+
+	/**
+	 * The command started on a node
+	 * @param nodeName the name of the node
+	 * @param nanoTime the time the command started
+	 */
+	default void nodeStarted(String nodeName, long nanoTime) {
+		//template
+	}
+
+	/**
+	 * The command completed on a node
+	 * @param nodeName the name of the node
+	 * @param nanoTime the time the command completed
+	 */
+	default void nodeFinished(String nodeName, long nanoTime) {
+		//template
+	}
+
+	/**
+	 * The command failed on a node
+	 * @param nodeName the name of the node
+	 * @param nanoTime the time the command failed
+	 * @param failure the exception thrown by the command
+	 */
+	default void nodeFailed(String nodeName, long nanoTime, Throwable failure) {
+		//template
+	}
+}
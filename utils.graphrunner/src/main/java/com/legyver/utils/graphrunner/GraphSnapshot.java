@@ -0,0 +1,193 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * The topology of a graph, as node names and edges between them, in a compact binary file that is read in a few large reads to load.
+ * The file records a hash of the source it was built from, so a snapshot of a source that has since changed is never loaded.
+ *
+ * The file is: a magic number, the format version, the source hash, the node count, the edge count, each node name as its UTF-8 length
+ * and bytes, then each edge as the ids of its predecessor and dependent.
+ * See {@link PropertyGraphFactory#make(Map, java.util.function.BiFunction, Path)}
+ */
+final class GraphSnapshot {
+	private static final int MAGIC = 0x47524e53;
+	private static final int VERSION = 1;
+	/**
+	 * The magic number, version, source hash, node count and edge count
+	 */
+	private static final int HEADER_LENGTH = 4 + 4 + 8 + 4 + 4;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final String[] names;
+	private final int[] from;
+	private final int[] to;
+	private final long sourceHash;
+
+	/**
+	 * Construct a snapshot
+	 * @param names the node names by id
+	 * @param from the predecessor id of each edge
+	 * @param to the dependent id of each edge
+	 * @param sourceHash the hash of the source the topology was built from, see {@link #hash(Map, String...)}
+	 */
+	GraphSnapshot(String[] names, int[] from, int[] to, long sourceHash) {
+		this.names = names;
+		this.from = from;
+		this.to = to;
+		this.sourceHash = sourceHash;
+	}
+
+	/**
+	 * Hash the entries of a map, independent of the order the map iterates them in, together with anything else that decides
+	 * the topology built from it
+	 * @param source the map
+	 * @param configuration the configuration the topology is built with, ex: the tokenizer pattern
+	 * @return the hash
+	 */
+	static long hash(Map<String, ?> source, String... configuration) {
+		long hash = source.size();
+		for (Map.Entry<String, ?> entry : source.entrySet()) {
+			hash += mix(fnv(fnv(FNV_OFFSET_BASIS, entry.getKey()), String.valueOf(entry.getValue())));
+		}
+		long configurationHash = FNV_OFFSET_BASIS;
+		for (String s : configuration) {
+			configurationHash = fnv(configurationHash, String.valueOf(s));
+		}
+		return mix(hash ^ configurationHash);
+	}
+
+	private static long fnv(long hash, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			hash = (hash ^ s.charAt(i)) * FNV_PRIME;
+		}
+		//separate consecutive strings
+		return (hash ^ 0xffff) * FNV_PRIME;
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Read a snapshot.  The header is checked before the rest of the file is read, so a stale snapshot costs one small read.
+	 * The file is read into the heap rather than memory-mapped, as a mapped file cannot be replaced on some platforms until the
+	 * mapping is garbage collected, and a stale snapshot is replaced as soon as it is read
+	 * @param file the snapshot file
+	 * @param expectedSourceHash the hash of the source as it is now
+	 * @return the snapshot, or null if there is no snapshot, it was built from a different source, or it cannot be read
+	 */
+	static GraphSnapshot read(Path file, long expectedSourceHash) {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			if (!readFully(channel, header)
+					|| header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != expectedSourceHash) {
+				return null;
+			}
+			String[] names = new String[header.getInt()];
+			int edgeCount = header.getInt();
+			ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(channel.size() - HEADER_LENGTH));
+			if (!readFully(channel, buffer)) {
+				return null;
+			}
+			for (int i = 0; i < names.length; i++) {
+				int length = buffer.getInt();
+				names[i] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+			}
+			int[] from = new int[edgeCount];
+			int[] to = new int[edgeCount];
+			for (int e = 0; e < edgeCount; e++) {
+				from[e] = buffer.getInt();
+				to[e] = buffer.getInt();
+			}
+			return new GraphSnapshot(names, from, to, expectedSourceHash);
+		} catch (IOException | RuntimeException e) {
+			//a truncated or corrupt snapshot is rebuilt like a stale one
+			return null;
+		}
+	}
+
+	/**
+	 * Fill a buffer from the channel, and flip it for reading
+	 * @return false if the channel ended first
+	 */
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				return false;
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+
+	/**
+	 * Write the snapshot.  The file is written alongside and moved into place, so a concurrent reader never sees part of it
+	 * @param file the snapshot file
+	 * @throws CoreException if the snapshot cannot be written
+	 */
+	void write(Path file) throws CoreException {
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(sourceHash);
+				out.writeInt(names.length);
+				out.writeInt(from.length);
+				for (String name : names) {
+					byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				for (int e = 0; e < from.length; e++) {
+					out.writeInt(from[e]);
+					out.writeInt(to[e]);
+				}
+			}
+			try {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new CoreException("Unable to write graph snapshot " + file, e);
+		}
+	}
+
+	/**
+	 * Add the edges of the snapshot to a graph
+	 * @param builder the builder of the graph
+	 */
+	void connect(Graph.Builder<?> builder) {
+		for (int e = 0; e < from.length; e++) {
+			builder.connect(new Graph.Connection()
+					.from(names[from[e]])
+					.to(names[to[e]]));
+		}
+	}
+
+	int getEdgeCount() {
+		return from.length;
+	}
+}
@@ -0,0 +1,29 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+/**
+ * Decorates a command to notify a {@link GraphRunListener} as each node is run
+ * @param <T> type of the graph payload
+ */
+class ListenedCommand<T> implements GraphExecutedCommand<T> {
+	private final GraphExecutedCommand<T> command;
+	private final GraphRunListener listener;
+
+	ListenedCommand(GraphExecutedCommand<T> command, GraphRunListener listener) {
+		this.command = command;
+		this.listener = listener;
+	}
+
+	@Override
+	public void execute(String nodeName, T object) throws CoreException {
+		listener.nodeStarted(nodeName, System.nanoTime());
+		try {
+			command.execute(nodeName, object);
+		} catch (CoreException | RuntimeException | Error e) {
+			listener.nodeFailed(nodeName, System.nanoTime(), e);
+			throw e;
+		}
+		listener.nodeFinished(nodeName, System.nanoTime());
+	}
+}
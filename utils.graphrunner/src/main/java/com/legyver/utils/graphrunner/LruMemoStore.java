@@ -0,0 +1,42 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory {@link MemoStore} that discards the least recently used result once it holds a maximum number of results
+ */
+public class LruMemoStore implements MemoStore {
+	private final Map<Fingerprint, MemoizedResult> results;
+
+	/**
+	 * Construct an LruMemoStore
+	 * @param maxEntries the maximum number of results to keep
+	 */
+	public LruMemoStore(int maxEntries) {
+		this.results = new LinkedHashMap<Fingerprint, MemoizedResult>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Fingerprint, MemoizedResult> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	@Override
+	public synchronized MemoizedResult get(Fingerprint fingerprint) {
+		return results.get(fingerprint);
+	}
+
+	@Override
+	public synchronized void put(Fingerprint fingerprint, MemoizedResult result) {
+		results.put(fingerprint, result);
+	}
+
+	/**
+	 * The number of results currently held
+	 * @return the number of results
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+}
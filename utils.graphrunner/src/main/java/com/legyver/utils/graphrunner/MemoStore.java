@@ -0,0 +1,44 @@
+package com.legyver.utils.graphrunner;
+
+/**
+ * Storage for node results keyed by the fingerprint of the node's inputs.  See {@link MemoizingCommand}.
+ * Implementations must be thread-safe if used with a concurrent strategy.
+ */
+public interface MemoStore {
+	/**
+	 * Look up the result produced for a set of inputs
+	 * @param fingerprint the inputs of the node
+	 * @return the stored result, or null if there is none
+	 */
+	MemoizedResult get(Fingerprint fingerprint);
+
+	/**
+	 * Store the result produced for a set of inputs
+	 * @param fingerprint the inputs of the node
+	 * @param result the result produced
+	 */
+	void put(Fingerprint fingerprint, MemoizedResult result);
+
+	/**
+	 * A stored result.  Wrapped so that a null result can be told apart from no result.
+	 */
+	final class MemoizedResult {
+		private final Object result;
+
+		/**
+		 * Construct a MemoizedResult
+		 * @param result the result produced by the command
+		 */
+		public MemoizedResult(Object result) {
+			this.result = result;
+		}
+
+		/**
+		 * The result produced by the command
+		 * @return the result
+		 */
+		public Object getResult() {
+			return result;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorates a command to skip nodes whose inputs have not changed since a previous run.
+ * Before a node is run, its fingerprint is taken from the node's own input value and the results of its prerequisites.
+ * If a result is stored for that fingerprint, the result is restored instead of running the command.
+ * Otherwise the command is run and its result stored.
+ * Ex:
+ *   MemoizingCommand&lt;SharedMapCtx&gt; memoizing = new MemoizingCommand&lt;&gt;(graph, command, valueReader, resultAccessor);
+ *   graph.executeStrategy(memoizing);
+ *   graph.resetEvaluated();
+ *   graph.executeStrategy(memoizing);//all nodes are cache hits
+ *
+ * The graph's topology is captured when the command is constructed; construct a new command if nodes or connections are added.
+ * @param <T> type of the graph payload
+ */
+public class MemoizingCommand<T> implements GraphExecutedCommand<T> {
+	/**
+	 * Default number of results kept by the {@link LruMemoStore}
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+	private final ExecutionPlan<T> plan;
+	private final GraphExecutedCommand<T> command;
+	private final NodeValueReader<T> valueReader;
+	private final NodeResultAccessor<T> resultAccessor;
+	private final MemoStore store;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Construct a MemoizingCommand
+	 * @param graph the graph the command will be run on
+	 * @param command the command to memoize
+	 * @param valueReader reads the input value of a node, which must not be changed by running the command on the node.
+	 *                    Called with a null payload for nodes that have none.
+	 * @param resultAccessor reads and restores the result of the command on a node
+	 * @param store where the results are stored
+	 */
+	public MemoizingCommand(Graph<T> graph, GraphExecutedCommand<T> command, NodeValueReader<T> valueReader,
+							NodeResultAccessor<T> resultAccessor, MemoStore store) {
+		this.plan = graph.plan();
+		this.command = command;
+		this.valueReader = valueReader;
+		this.resultAccessor = resultAccessor;
+		this.store = store;
+	}
+
+	/**
+	 * Construct a MemoizingCommand that keeps up to {@link #DEFAULT_MAX_ENTRIES} results in memory
+	 * @param graph the graph the command will be run on
+	 * @param command the command to memoize
+	 * @param valueReader reads the input value of a node, which must not be changed by running the command on the node.
+	 *                    Called with a null payload for nodes that have none.
+	 * @param resultAccessor reads and restores the result of the command on a node
+	 */
+	public MemoizingCommand(Graph<T> graph, GraphExecutedCommand<T> command, NodeValueReader<T> valueReader,
+							NodeResultAccessor<T> resultAccessor) {
+		this(graph, command, valueReader, resultAccessor, new LruMemoStore(DEFAULT_MAX_ENTRIES));
+	}
+
+	@Override
+	public void execute(String nodeName, T object) throws CoreException {
+		Fingerprint fingerprint = fingerprint(nodeName, object);
+		MemoStore.MemoizedResult memoized = store.get(fingerprint);
+		if (memoized != null) {
+			hits.increment();
+			resultAccessor.restoreResult(nodeName, object, memoized.getResult());
+		} else {
+			misses.increment();
+			command.execute(nodeName, object);
+			store.put(fingerprint, new MemoStore.MemoizedResult(resultAccessor.readResult(nodeName, object)));
+		}
+	}
+
+	private Fingerprint fingerprint(String nodeName, T object) {
+		int id = plan.indexOf(nodeName);
+		if (id < 0) {
+			return new Fingerprint(new Object[]{nodeName, valueReader.read(nodeName, object)});
+		}
+		int[] prerequisiteOffsets = plan.prerequisiteOffsets();
+		int[] prerequisites = plan.prerequisites();
+		Object[] values = new Object[2 + prerequisiteOffsets[id + 1] - prerequisiteOffsets[id]];
+		values[0] = nodeName;
+		values[1] = valueReader.read(nodeName, object);
+		for (int e = prerequisiteOffsets[id], v = 2; e < prerequisiteOffsets[id + 1]; e++, v++) {
+			int prerequisite = prerequisites[e];
+			values[v] = resultAccessor.readResult(plan.getName(prerequisite), plan.getPayload(prerequisite));
+		}
+		return new Fingerprint(values);
+	}
+
+	/**
+	 * The number of nodes whose stored result was reused
+	 * @return the hit count
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * The number of nodes the command was run on
+	 * @return the miss count
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+}
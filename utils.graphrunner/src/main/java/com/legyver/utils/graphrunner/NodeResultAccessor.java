@@ -0,0 +1,29 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+/**
+ * Read the result a command produced for a node, and put a previously produced result back in place of running the command again.
+ * See {@link MemoizingCommand}.
+ * Ex: for a {@link com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx} payload where the command sets the node's own value,
+ * the result is {@code payload.getValue()} and it is restored with {@code payload.setValue(result)}
+ * @param <T> type of the graph payload
+ */
+public interface NodeResultAccessor<T> {
+	/**
+	 * Read the result of the command on a node, after the command has run
+	 * @param nodeName the name of the node
+	 * @param payload the payload associated with the node
+	 * @return the result
+	 */
+	Object readResult(String nodeName, T payload);
+
+	/**
+	 * Restore a result previously read by {@link #readResult(String, Object)}
+	 * @param nodeName the name of the node
+	 * @param payload the payload associated with the node
+	 * @param result the result to restore
+	 * @throws CoreException if the result cannot be restored
+	 */
+	void restoreResult(String nodeName, T payload, Object result) throws CoreException;
+}
@@ -0,0 +1,89 @@
+package com.legyver.utils.graphrunner;
+
+/**
+ * Timing of a single node recorded by an {@link ExecutionTrace}.  Times are from {@link System#nanoTime()}.
+ */
+public class NodeTiming {
+	private final String nodeName;
+	private volatile long queuedNanos = -1;
+	private volatile long startedNanos = -1;
+	private volatile long finishedNanos = -1;
+	private volatile Throwable failure;
+
+	NodeTiming(String nodeName) {
+		this.nodeName = nodeName;
+	}
+
+	/**
+	 * The name of the node
+	 * @return the node name
+	 */
+	public String getNodeName() {
+		return nodeName;
+	}
+
+	/**
+	 * The time the node was queued, only recorded by concurrent strategies
+	 * @return the time, or -1 if not recorded
+	 */
+	public long getQueuedNanos() {
+		return queuedNanos;
+	}
+
+	/**
+	 * The time the command started on the node
+	 * @return the time, or -1 if not recorded
+	 */
+	public long getStartedNanos() {
+		return startedNanos;
+	}
+
+	/**
+	 * The time the command finished, or failed, on the node
+	 * @return the time, or -1 if not recorded
+	 */
+	public long getFinishedNanos() {
+		return finishedNanos;
+	}
+
+	/**
+	 * The exception thrown by the command
+	 * @return the exception, or null if the command did not fail
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Time from when the node was queued until the command started on it
+	 * @return the queue wait, or 0 if the node was not queued
+	 */
+	public long getQueueWaitNanos() {
+		return queuedNanos < 0 || startedNanos < 0 ? 0 : startedNanos - queuedNanos;
+	}
+
+	/**
+	 * Time the command took on the node
+	 * @return the duration, or 0 if the command has not finished
+	 */
+	public long getDurationNanos() {
+		return startedNanos < 0 || finishedNanos < 0 ? 0 : finishedNanos - startedNanos;
+	}
+
+	void queued(long nanoTime) {
+		queuedNanos = nanoTime;
+	}
+
+	void started(long nanoTime) {
+		startedNanos = nanoTime;
+	}
+
+	void finished(long nanoTime) {
+		finishedNanos = nanoTime;
+	}
+
+	void failed(long nanoTime, Throwable failure) {
+		this.finishedNanos = nanoTime;
+		this.failure = failure;
+	}
+}
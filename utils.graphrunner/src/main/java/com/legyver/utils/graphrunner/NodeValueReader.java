@@ -0,0 +1,17 @@
+package com.legyver.utils.graphrunner;
+
+/**
+ * Read the current value of a node, for strategies that need to know whether evaluating a node changed anything.
+ * Ex: for a {@link com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx} payload the value would typically be {@code payload.getValue()}
+ * @param <T> type of the graph payload
+ */
+@FunctionalInterface
+public interface NodeValueReader<T> {
+	/**
+	 * Read the value of a node
+	 * @param nodeName the name of the node
+	 * @param payload the payload associated with the node
+	 * @return the current value of the node
+	 */
+	Object read(String nodeName, T payload);
+}
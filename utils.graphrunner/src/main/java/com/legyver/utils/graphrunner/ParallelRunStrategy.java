@@ -0,0 +1,170 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Run all nodes in the graph concurrently.  As soon as all the prerequisites of a node have been evaluated, the node is
+ * submitted to the executor, so independent nodes are evaluated in parallel.
+ * Guarantees that all nodes are only evaluated once, and that a node is only evaluated after all of its prerequisites.
+ * If the command fails on any node, no further nodes are started and the first failure is rethrown once the nodes
+ * already running have finished.
+ */
+public class ParallelRunStrategy implements RunStrategy {
+	/**
+	 * The executor the nodes are evaluated on
+	 */
+	private final Executor executor;
+
+	/**
+	 * Construct a ParallelRunStrategy that evaluates nodes on the specified executor
+	 * @param executor the executor to use
+	 */
+	public ParallelRunStrategy(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Construct a ParallelRunStrategy that evaluates nodes on the {@link ForkJoinPool#commonPool()}
+	 */
+	public ParallelRunStrategy() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	@Override
+	public <T> void execute(Graph<T> graph, GraphExecutedCommand<T> command) throws CoreException {
+		new Execution<>(graph, command).run();
+	}
+
+	private class Execution<T> {
+		private final Graph<T> graph;
+		private final GraphExecutedCommand<T> command;
+		private final ExecutionPlan<T> plan;
+		/**
+		 * Number of prerequisites of each node that have yet to be evaluated, by plan id
+		 */
+		private final AtomicIntegerArray remainingPrerequisites;
+		/**
+		 * Number of nodes submitted to the executor that have not finished yet
+		 */
+		private final AtomicInteger pending = new AtomicInteger();
+		private final AtomicBoolean cancelled = new AtomicBoolean();
+		private final AtomicReference<Throwable> failure = new AtomicReference<>();
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+		private final GraphRunListener listener;
+
+		private Execution(Graph<T> graph, GraphExecutedCommand<T> command) {
+			this.graph = graph;
+			this.command = command;
+			this.listener = graph.getListener();
+			this.plan = graph.plan();
+			this.remainingPrerequisites = new AtomicIntegerArray(plan.size());
+		}
+
+		private void run() throws CoreException {
+			int[] ready = countPrerequisites();
+			if (ready.length == 0) {
+				return;
+			}
+			pending.addAndGet(ready.length);
+			for (int id : ready) {
+				submit(id);
+			}
+			try {
+				done.get();
+			} catch (InterruptedException e) {
+				cancelled.set(true);
+				Thread.currentThread().interrupt();
+				throw new CoreException("Interrupted while waiting for graph to finish", e);
+			} catch (ExecutionException e) {
+				//only completed exceptionally via the failure reference
+			}
+			rethrowFailure();
+		}
+
+		/**
+		 * Count the direct prerequisites of every node in the plan.
+		 * @return the ids of the nodes that have no prerequisites
+		 */
+		private int[] countPrerequisites() {
+			int[] prerequisiteOffsets = plan.prerequisiteOffsets();
+			int[] ready = new int[plan.size()];
+			int readyCount = 0;
+			for (int i = 0; i < plan.size(); i++) {
+				int count = prerequisiteOffsets[i + 1] - prerequisiteOffsets[i];
+				remainingPrerequisites.set(i, count);
+				if (count == 0) {
+					ready[readyCount++] = i;
+				}
+			}
+			return Arrays.copyOf(ready, readyCount);
+		}
+
+		private void submit(int id) {
+			if (listener != null) {
+				listener.nodeQueued(plan.getName(id), System.nanoTime());
+			}
+			try {
+				executor.execute(() -> evaluate(id));
+			} catch (RejectedExecutionException e) {
+				fail(e);
+				finished();
+			}
+		}
+
+		private void evaluate(int id) {
+			try {
+				if (!cancelled.get()) {
+					graph.evaluate(id, command);
+					int[] dependentOffsets = plan.dependentOffsets();
+					int[] dependents = plan.dependents();
+					for (int e = dependentOffsets[id]; e < dependentOffsets[id + 1]; e++) {
+						int dependent = dependents[e];
+						if (remainingPrerequisites.decrementAndGet(dependent) == 0 && !cancelled.get()) {
+							pending.incrementAndGet();
+							submit(dependent);
+						}
+					}
+				}
+			} catch (Throwable t) {
+				fail(t);
+			} finally {
+				finished();
+			}
+		}
+
+		private void fail(Throwable t) {
+			failure.compareAndSet(null, t);
+			cancelled.set(true);
+		}
+
+		private void finished() {
+			if (pending.decrementAndGet() == 0) {
+				done.complete(null);
+			}
+		}
+
+		private void rethrowFailure() throws CoreException {
+			Throwable t = failure.get();
+			if (t instanceof CoreException) {
+				throw (CoreException) t;
+			} else if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			} else if (t != null) {
+				throw new CoreException(t);
+			}
+		}
+	}
+}
@@ -1,9 +1,14 @@
 package com.legyver.utils.graphrunner;
 
+import com.legyver.core.exception.CoreException;
+
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.BiFunction;
-import java.util.regex.Matcher;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Factory to create a Graph from one or more property files by identifying properties with keys that are present in other keys' values
@@ -12,6 +17,7 @@ public class PropertyGraphFactory {
 
 	private final VariableExtractionOptions variableExtractionOptions;
 	private final VariableTransformationRule variableTransformationRule;
+	private boolean parallel;
 
 	/**
 	 * Construct a PropertyGraphFactory with the specified variable extraction options and transformation rules.
@@ -42,6 +48,18 @@ public class PropertyGraphFactory {
 		this(new VariableExtractionOptions(tokenizerPattern, group));
 	}
 
+	/**
+	 * Make the nodes, tokenize property values, and add and connect the nodes in parallel on the common fork-join pool, so the
+	 * node factory is called from several threads at once.  The graph is the same as one made sequentially, although nodes
+	 * that do not depend on each other may be run in a different order.
+	 * Worthwhile for tens of thousands of properties or more, on more than one core.
+	 * @return this factory
+	 */
+	public PropertyGraphFactory parallel() {
+		this.parallel = true;
+		return this;
+	}
+
 	/**
 	 * Make a directional graph of properties that reference other properties
 	 * example:
@@ -63,57 +81,194 @@ public class PropertyGraphFactory {
 	 * @param <T> type of the graph payload
 	 * @return the graph of all nodes in the propertyMap
 	 */
+	@SuppressWarnings("unchecked")
 	public <T extends Graph.Payload> Graph<T> make(Map<String, Object> propertyMap, BiFunction<String, Object, T> newNodeFactory) {
+		//each node is made in the same pass its value is tokenized in
+		List<DirectionalProperty> directionalProperties = link(propertyMap.entrySet(), newNodeFactory);
+		if (parallel) {
+			return connectConcurrently(directionalProperties);
+		}
+		Graph.Payload[] payloads = new Graph.Payload[directionalProperties.size()];
+		for (int i = 0; i < payloads.length; i++) {
+			payloads[i] = directionalProperties.get(i).payload;
+		}
 		Graph.Builder<T> builder = new Graph.Builder<>();
 		//add all properties to graph
-		propertyMap.entrySet().forEach(entry-> {
-			builder.nodes(newNodeFactory.apply(entry.getKey(), entry.getValue()));
-		});
-
-		List<DirectionalProperty> directionalProperties = link(propertyMap.entrySet());
+		builder.nodes((T[]) payloads);
 		for (DirectionalProperty directionalProperty : directionalProperties) {
 			for (String predecessor : directionalProperty.depends) {
 				builder.connect(new Graph.Connection()
 						.from(predecessor)
 						.to(directionalProperty.key));
 			}
+			if (directionalProperty.alias != null) {
+				builder.connect(new Graph.Connection()
+						.from(directionalProperty.key)
+						.to(directionalProperty.alias));
+			}
 		}
 		return builder.build();
 	}
 
-	private List<DirectionalProperty> link(Set<? extends Map.Entry<String, ?>> propertiesToResolve) {
-		List<DirectionalProperty> result = new ArrayList<>();
-		for (Map.Entry<String, ? extends Object> property : propertiesToResolve) {
-			DirectionalProperty directionalProperty = new DirectionalProperty(property.getKey());
-			result.add(directionalProperty);
-			String propertyValue = String.valueOf(property.getValue());
-
-			//ex: Since the result of the operation on build.date.format is set as build.date
-			// build.date.format must be resolved first before any operation involving build.date can be executed.
-			if (variableTransformationRule != null && variableTransformationRule.matches(property.getKey())) {
-				// in this example, transformed would be build.date and referenceProperty.key would be build.date.format
-				String transformed = variableTransformationRule.transform(property.getKey());
-				//so the dependency is transformed depends on referenceProperty.key
-				DirectionalProperty alias = new DirectionalProperty(transformed);
-				alias.depends.add(property.getKey());
-				result.add(alias);
+	/**
+	 * Add the nodes and connections of the properties from several threads at once, in two passes as every node must be added
+	 * before any are connected
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Graph.Payload> Graph<T> connectConcurrently(List<DirectionalProperty> directionalProperties) {
+		Graph<T> graph = Graph.concurrent();
+		directionalProperties.parallelStream().forEach(directionalProperty -> {
+			graph.addNodeConcurrently(directionalProperty.payload.getNodeName(), (T) directionalProperty.payload);
+			//references to properties that are not in the map are nodes without a payload, as the builder makes them
+			for (String predecessor : directionalProperty.depends) {
+				graph.addNodeConcurrently(predecessor, null);
+			}
+			if (directionalProperty.depends.length > 0 || directionalProperty.alias != null) {
+				graph.addNodeConcurrently(directionalProperty.key, null);
 			}
+			if (directionalProperty.alias != null) {
+				graph.addNodeConcurrently(directionalProperty.alias, null);
+			}
+		});
+		directionalProperties.parallelStream().forEach(directionalProperty -> {
+			for (String predecessor : directionalProperty.depends) {
+				graph.acceptConcurrently(directionalProperty.key, predecessor);
+			}
+			if (directionalProperty.alias != null) {
+				graph.acceptConcurrently(directionalProperty.alias, directionalProperty.key);
+			}
+		});
+		graph.modified();
+		return graph;
+	}
 
-			Matcher m = variableExtractionOptions.getTokenizerPattern().matcher(propertyValue);
-			while (m.find()) {
-				String group = m.group(variableExtractionOptions.getGroup());
-				directionalProperty.depends.add(group);
+	/**
+	 * Make a directional graph of properties that reference other properties, as {@link #make(Map, BiFunction)}, loading the
+	 * connections from a snapshot file instead of scanning every property value when the snapshot was made from the same properties.
+	 * Otherwise the properties are scanned, and the snapshot is written for next time.
+	 * The snapshot is made for the properties and the tokenizer and transformation patterns.  The transformation operation cannot
+	 * be compared, so delete the snapshot if the operation changes.  A {@link VariableTokenizer} is known only by its class, so
+	 * delete the snapshot if the tokenizer changes without its class changing.
+	 * @param propertyMap map containing properties
+	 * @param newNodeFactory factory to use to construct new nodes based on a property's key and value
+	 * @param snapshotFile the file to load the snapshot from, or to write it to
+	 * @param <T> type of the graph payload
+	 * @return the graph of all nodes in the propertyMap
+	 * @throws CoreException if the snapshot has to be written, and cannot be
+	 */
+	public <T extends Graph.Payload> Graph<T> make(Map<String, Object> propertyMap, BiFunction<String, Object, T> newNodeFactory, Path snapshotFile) throws CoreException {
+		long sourceHash = snapshotHash(propertyMap);
+		GraphSnapshot snapshot = GraphSnapshot.read(snapshotFile, sourceHash);
+		if (snapshot == null) {
+			snapshot = snapshot(link(propertyMap.entrySet(), null), sourceHash);
+			snapshot.write(snapshotFile);
+		}
+		Graph.Builder<T> builder = new Graph.Builder<>();
+		propertyMap.entrySet().forEach(entry-> {
+			builder.nodes(newNodeFactory.apply(entry.getKey(), entry.getValue()));
+		});
+		snapshot.connect(builder);
+		return builder.build();
+	}
+
+	/**
+	 * The hash of the properties and the options that decide the connections made from them
+	 */
+	long snapshotHash(Map<String, Object> propertyMap) {
+		VariableTokenizer tokenizer = variableExtractionOptions.getTokenizer();
+		return GraphSnapshot.hash(propertyMap,
+				tokenizer == null ? variableExtractionOptions.getTokenizerPattern().pattern() : tokenizer.getClass().getName(),
+				String.valueOf(variableExtractionOptions.getGroup()),
+				variableExtractionOptions.getVariablePrefix(),
+				variableTransformationRule == null ? null : variableTransformationRule.getOriginalPattern().pattern());
+	}
+
+	private static GraphSnapshot snapshot(List<DirectionalProperty> directionalProperties, long sourceHash) {
+		Map<String, Integer> ids = new LinkedHashMap<>();
+		int edgeCount = 0;
+		for (DirectionalProperty directionalProperty : directionalProperties) {
+			edgeCount += directionalProperty.depends.length + (directionalProperty.alias == null ? 0 : 1);
+		}
+		int[] from = new int[edgeCount];
+		int[] to = new int[edgeCount];
+		int edge = 0;
+		for (DirectionalProperty directionalProperty : directionalProperties) {
+			for (String predecessor : directionalProperty.depends) {
+				from[edge] = ids.computeIfAbsent(predecessor, name -> ids.size());
+				to[edge++] = ids.computeIfAbsent(directionalProperty.key, name -> ids.size());
+			}
+			if (directionalProperty.alias != null) {
+				from[edge] = ids.computeIfAbsent(directionalProperty.key, name -> ids.size());
+				to[edge++] = ids.computeIfAbsent(directionalProperty.alias, name -> ids.size());
 			}
 		}
-		return result;
+		return new GraphSnapshot(ids.keySet().toArray(new String[0]), from, to, sourceHash);
+	}
+
+	/**
+	 * Find what each property depends on, making its node as well if there is a node factory
+	 */
+	private List<DirectionalProperty> link(Set<? extends Map.Entry<String, ?>> propertiesToResolve, BiFunction<String, Object, ? extends Graph.Payload> newNodeFactory) {
+		Stream<? extends Map.Entry<String, ?>> properties = parallel ? propertiesToResolve.parallelStream() : propertiesToResolve.stream();
+		return properties
+				.map(property -> link(property, newNodeFactory == null ? null : newNodeFactory.apply(property.getKey(), property.getValue())))
+				.collect(Collectors.toList());
+	}
+
+	private DirectionalProperty link(Map.Entry<String, ?> property, Graph.Payload payload) {
+		Depends depends = new Depends();
+		variableExtractionOptions.tokenize(String.valueOf(property.getValue()), depends);
+
+		//ex: Since the result of the operation on build.date.format is set as build.date
+		// build.date.format must be resolved first before any operation involving build.date can be executed.
+		String alias = null;
+		if (variableTransformationRule != null && variableTransformationRule.matches(property.getKey())) {
+			// in this example, alias would be build.date and the key would be build.date.format
+			alias = variableTransformationRule.transform(property.getKey());
+		}
+		return new DirectionalProperty(property.getKey(), depends.toArray(), alias, payload);
 	}
 
 	private static class DirectionalProperty {
 		private final String key;
-		private final Set<String> depends = new HashSet<>();
+		private final String[] depends;
+		/**
+		 * The transformed key, which depends on this property, or null if the key does not match the transformation rule
+		 */
+		private final String alias;
+		private final Graph.Payload payload;
 
-		private DirectionalProperty(String key) {
+		private DirectionalProperty(String key, String[] depends, String alias, Graph.Payload payload) {
 			this.key = key;
+			this.depends = depends;
+			this.alias = alias;
+			this.payload = payload;
+		}
+	}
+
+	/**
+	 * The distinct variables of a value, in the order found.  Values reference few variables, so they are compared one by one
+	 */
+	private static class Depends implements Consumer<String> {
+		private static final String[] NONE = new String[0];
+		private String[] names = NONE;
+		private int count;
+
+		@Override
+		public void accept(String name) {
+			for (int i = 0; i < count; i++) {
+				if (names[i].equals(name)) {
+					return;
+				}
+			}
+			if (count == names.length) {
+				names = Arrays.copyOf(names, Math.max(4, count * 2));
+			}
+			names[count++] = name;
+		}
+
+		private String[] toArray() {
+			return count == names.length ? names : Arrays.copyOf(names, count);
 		}
 	}
 }
@@ -2,9 +2,11 @@ package com.legyver.utils.graphrunner;
 
 import com.legyver.core.exception.CoreException;
 
+
 /**
  *
  * Run only nodes in the graph necessary to run the nodeToRun.
+ * That is the nodeToRun and everything it transitively depends on, run in topological order.
  * Guarantees that any node that is run is only evaluated once, and that as soon as a node is evaluable it is evaluated.
  *
  */
@@ -24,7 +26,14 @@ public class RunWithDependentsStrategy implements RunStrategy {
 
 	@Override
 	public <T> void execute(Graph<T> graph, GraphExecutedCommand<T> command) throws CoreException {
-		Graph<T> filtered = graph.filter(nodeToRun);
-		filtered.run(command);
+		ExecutionPlan<T> plan = graph.plan();
+		int id = plan.indexOf(nodeToRun);
+		if (id < 0) {
+			return;
+		}
+		int[] closure = graph.reachability().upstream(id);
+		for (int i : closure) {
+			graph.evaluate(i, command);
+		}
 	}
 }
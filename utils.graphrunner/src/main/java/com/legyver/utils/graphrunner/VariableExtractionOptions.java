@@ -1,9 +1,11 @@
 package com.legyver.utils.graphrunner;
 
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * The VariableExtractionOptions that identify a regular expression and group to extract
+ * The VariableExtractionOptions that identify a regular expression and group to extract, or a {@link VariableTokenizer}
  */
 public class VariableExtractionOptions {
 	/**
@@ -14,6 +16,14 @@ public class VariableExtractionOptions {
 	 * The group to extract
 	 */
 	private final int group;
+	/**
+	 * The literal text every match starts with, or null if there is none
+	 */
+	private final String variablePrefix;
+	/**
+	 * The tokenizer used instead of the pattern, or null if the pattern is used
+	 */
+	private final VariableTokenizer tokenizer;
 
 	/**
 	 * Match options to construct directional {@link Graph}
@@ -25,13 +35,49 @@ public class VariableExtractionOptions {
 	 *   would give you build.date.day, build.date.month and build.date.year
 	 */
 	public VariableExtractionOptions(Pattern tokenizerPattern, int group) {
+		this(tokenizerPattern, group, null);
+	}
+
+	/**
+	 * Match options to construct directional {@link Graph}, skipping the tokenizer pattern for values that cannot match it
+	 * @param tokenizerPattern : compatible with java.util.Matcher, used for matching variables to extract from value
+	 * @param group: Matcher.group(group) to extract
+	 * @param variablePrefix: literal text every match of the tokenizerPattern starts with.  Values that do not contain it are not matched.
+	 * example: `${build.date.day} ${build.date.month} ${build.date.year}`
+	 *   tokenizerPattern: \$\{(([a-z\.-])*)\}
+	 *   group: 1
+	 *   variablePrefix: ${
+	 */
+	public VariableExtractionOptions(Pattern tokenizerPattern, int group, String variablePrefix) {
+		this(tokenizerPattern, group, variablePrefix, null);
+	}
+
+	/**
+	 * Match options to construct directional {@link Graph}, finding variables with a tokenizer instead of a regular expression
+	 * @param tokenizer finds the variables referenced by a value
+	 */
+	public VariableExtractionOptions(VariableTokenizer tokenizer) {
+		this(null, 0, null, tokenizer);
+	}
+
+	/**
+	 * Match options to construct directional {@link Graph}, finding variables with a tokenizer that finds the same variables as
+	 * the tokenizer pattern, so callers that read the pattern still see it
+	 * @param tokenizerPattern : compatible with java.util.Matcher, matches the same variables as the tokenizer
+	 * @param group: Matcher.group(group) to extract
+	 * @param variablePrefix: literal text every match of the tokenizerPattern starts with
+	 * @param tokenizer finds the variables referenced by a value, used instead of the tokenizerPattern
+	 */
+	public VariableExtractionOptions(Pattern tokenizerPattern, int group, String variablePrefix, VariableTokenizer tokenizer) {
 		this.tokenizerPattern = tokenizerPattern;
 		this.group = group;
+		this.variablePrefix = variablePrefix;
+		this.tokenizer = tokenizer;
 	}
 
 	/**
 	 * Return the tokenizer pattern
-	 * @return the tokenizer pattern
+	 * @return the tokenizer pattern, or null if only a {@link VariableTokenizer} was given
 	 */
 	public Pattern getTokenizerPattern() {
 		return tokenizerPattern;
@@ -44,4 +90,37 @@ public class VariableExtractionOptions {
 	public int getGroup() {
 		return group;
 	}
+
+	/**
+	 * The literal text every match of the tokenizer pattern starts with
+	 * @return the prefix, or null if values are always matched
+	 */
+	public String getVariablePrefix() {
+		return variablePrefix;
+	}
+
+	/**
+	 * The tokenizer used instead of the tokenizer pattern
+	 * @return the tokenizer, or null if the tokenizer pattern is used
+	 */
+	public VariableTokenizer getTokenizer() {
+		return tokenizer;
+	}
+
+	/**
+	 * Find the variables referenced by a value, with the tokenizer if there is one, otherwise with the tokenizer pattern
+	 * @param value the property value
+	 * @param variableNames receives the name of each variable found
+	 */
+	public void tokenize(String value, Consumer<String> variableNames) {
+		if (tokenizer != null) {
+			tokenizer.tokenize(value, variableNames);
+		} else if (variablePrefix == null || value.contains(variablePrefix)) {
+			//a value without the prefix cannot reference another property, so is not worth running the regex on
+			Matcher m = tokenizerPattern.matcher(value);
+			while (m.find()) {
+				variableNames.accept(m.group(group));
+			}
+		}
+	}
 }
@@ -0,0 +1,17 @@
+package com.legyver.utils.graphrunner;
+
+import java.util.function.Consumer;
+
+/**
+ * Finds the names of the variables a property value references, for tokenizers that are not a regular expression,
+ * ex: a hand-written scanner that recognises several variable syntaxes in one pass
+ */
+@FunctionalInterface
+public interface VariableTokenizer {
+	/**
+	 * Find the variables referenced by a value
+	 * @param value the property value
+	 * @param variableNames receives the name of each variable found
+	 */
+	void tokenize(String value, Consumer<String> variableNames);
+}
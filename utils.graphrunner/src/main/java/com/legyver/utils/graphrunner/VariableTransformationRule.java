@@ -51,4 +51,8 @@ public class VariableTransformationRule {
 	public String transform(String text) {
 		return transformationOperation.transform(text);
 	}
+
+	Pattern getOriginalPattern() {
+		return originalPattern;
+	}
 }
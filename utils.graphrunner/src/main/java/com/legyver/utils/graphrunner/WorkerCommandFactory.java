@@ -0,0 +1,19 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+
+import java.util.Map;
+
+/**
+ * Creates the command a worker process runs on the components it is sent.  See {@link WorkerPool}.
+ * Implementations must have a public no-argument constructor, as they are created by class name in the worker process.
+ */
+public interface WorkerCommandFactory {
+	/**
+	 * Create the command to run on the nodes of one component
+	 * @param values the values of the component, shared by the {@link SharedMapCtx} of every node.  Whatever the command puts in the
+	 *               map is sent back to the calling process when the component has run
+	 * @return the command
+	 */
+	GraphExecutedCommand<SharedMapCtx> newCommand(Map<String, Object> values);
+}
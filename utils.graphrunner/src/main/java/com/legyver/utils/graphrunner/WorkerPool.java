@@ -0,0 +1,335 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Run the weakly connected components of a graph in worker processes, for parallelism beyond one JVM.
+ * The workers are started when the pool is created and are reused for every graph run with it, each running one component at
+ * a time.  See {@link ComponentWorker} for the worker side.
+ *
+ * Each component is sent to a worker over its stdin with the values of its nodes, run there with a command created by a
+ * {@link WorkerCommandFactory}, and the values it ends up with are sent back over its stdout and put into the values of the
+ * calling process.  The values must therefore be {@link java.io.Serializable}; a component with a value that is not fails on its own.
+ * A component that fails does not stop the others.  A worker that dies is replaced, and its component is sent to a worker once more.
+ * The workers are shared by every call, so graphs are run one at a time: a call to {@link #execute(Graph, Map)} waits for any other
+ * call on the same pool to finish.
+ */
+public class WorkerPool implements Closeable {
+	/**
+	 * The times a component is sent to a worker before it is failed, as a component whose worker dies is sent to another
+	 */
+	private static final int MAX_ATTEMPTS = 2;
+
+	private final List<String> command;
+	private final List<Worker> workers = new ArrayList<>();
+
+	/**
+	 * Start worker processes with the module path and classpath of this JVM.  If this library was loaded from the module path,
+	 * the workers run it from the module path too, with every module of the module path, so the package of the factory must be
+	 * exported to this library's module
+	 * @param workerCount the number of worker processes
+	 * @param commandFactory the class of the factory of the command the workers run
+	 * @throws CoreException if a worker process cannot be started, or this JVM has neither a module path nor a classpath to start
+	 * them with, in which case pass the classpath to {@link #WorkerPool(int, Class, String)}
+	 */
+	public WorkerPool(int workerCount, Class<? extends WorkerCommandFactory> commandFactory) throws CoreException {
+		this(workerCount, commandFactory, launchArguments());
+	}
+
+	/**
+	 * Start worker processes
+	 * @param workerCount the number of worker processes
+	 * @param commandFactory the class of the factory of the command the workers run
+	 * @param classpath the classpath of the worker processes, which must include this library, its dependencies and the factory
+	 * @throws CoreException if a worker process cannot be started
+	 */
+	public WorkerPool(int workerCount, Class<? extends WorkerCommandFactory> commandFactory, String classpath) throws CoreException {
+		this(workerCount, commandFactory, Arrays.asList("-cp", classpath, ComponentWorker.class.getName()));
+	}
+
+	private WorkerPool(int workerCount, Class<? extends WorkerCommandFactory> commandFactory, List<String> launchArguments) throws CoreException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(launchArguments);
+		command.add(commandFactory.getName());
+		this.command = Collections.unmodifiableList(command);
+		try {
+			for (int i = 0; i < workerCount; i++) {
+				workers.add(new Worker(start()));
+			}
+		} catch (IOException e) {
+			close();
+			throw new CoreException("Unable to start worker process", e);
+		}
+	}
+
+	/**
+	 * The arguments that launch a worker the way this JVM was launched: from the module path if this library was loaded from it,
+	 * otherwise from the classpath
+	 */
+	private static List<String> launchArguments() throws CoreException {
+		Module module = WorkerPool.class.getModule();
+		String modulePath = System.getProperty("jdk.module.path");
+		String classpath = System.getProperty("java.class.path");
+		List<String> arguments = new ArrayList<>();
+		if (module.isNamed() && modulePath != null && !modulePath.isEmpty()) {
+			Collections.addAll(arguments, "--module-path", modulePath, "--add-modules", "ALL-MODULE-PATH");
+			if (classpath != null && !classpath.isEmpty()) {
+				Collections.addAll(arguments, "-cp", classpath);
+			}
+			Collections.addAll(arguments, "-m", module.getName() + "/" + ComponentWorker.class.getName());
+		} else if (classpath != null && !classpath.isEmpty()) {
+			Collections.addAll(arguments, "-cp", classpath, ComponentWorker.class.getName());
+		} else {
+			throw new CoreException("No module path or classpath to start worker processes with");
+		}
+		return arguments;
+	}
+
+	private Process start() throws IOException {
+		return new ProcessBuilder(command)
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+	}
+
+	/**
+	 * Run every component of a graph in the workers, waiting for all of them to finish.  A worker that has died is replaced,
+	 * and the component it was running is sent to a worker again
+	 * @param graph the graph to split into components.  Its payloads are not sent, only whether each node has one
+	 * @param values the values of the nodes, sent to the workers with their components.  The values of each component are put back
+	 *               into the map once it has run, so the map must not be modified by anything else until this returns
+	 * @throws CoreException if a component failed, with the failures of any other components suppressed, or if interrupted while
+	 * waiting, in which case the workers are stopped, and replaced by the next call, and no more values are put into the map
+	 */
+	public synchronized void execute(Graph<?> graph, Map<String, Object> values) throws CoreException {
+		List<? extends Graph<?>> components = graph.components();
+		Queue<Job> queue = new ConcurrentLinkedQueue<>();
+		for (Graph<?> component : components) {
+			queue.add(new Job(component));
+		}
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+		AtomicBoolean cancelled = new AtomicBoolean();
+		List<Thread> threads = new ArrayList<>();
+		for (Worker worker : workers) {
+			Thread thread = new Thread(() -> worker.run(queue, values, failures, cancelled), "component-worker");
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			cancel(threads, cancelled);
+			Thread.currentThread().interrupt();
+			throw new CoreException("Interrupted while waiting for worker processes", e);
+		}
+		if (!queue.isEmpty()) {
+			failures.add(new CoreException("No worker process left to run " + queue.size() + " components"));
+		}
+		ComponentRunner.throwFailures(failures, components.size());
+	}
+
+	/**
+	 * Stop the threads sending components to the workers, killing the workers so the threads are not left waiting on them.
+	 * Waits for the threads to finish, however often interrupted, so none of them puts values into the map after execute returns
+	 */
+	private void cancel(List<Thread> threads, AtomicBoolean cancelled) {
+		cancelled.set(true);
+		for (Worker worker : workers) {
+			worker.kill();
+		}
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					//interrupted again; the interrupt is restored by the caller
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the stdin of the workers so they exit, and wait for them to
+	 */
+	@Override
+	public void close() {
+		for (Worker worker : workers) {
+			worker.close();
+		}
+	}
+
+	private static ComponentWorker.Request request(Graph<?> component, Map<String, Object> values) {
+		ExecutionPlan<?> plan = component.compile();
+		ComponentWorker.Request request = new ComponentWorker.Request();
+		int size = plan.size();
+		request.names = new String[size];
+		request.hasPayload = new boolean[size];
+		request.values = new HashMap<>();
+		int[] prerequisiteOffsets = plan.prerequisiteOffsets();
+		int[] prerequisites = plan.prerequisites();
+		request.from = new int[prerequisiteOffsets[size]];
+		request.to = new int[prerequisiteOffsets[size]];
+		synchronized (values) {
+			for (int i = 0; i < size; i++) {
+				String name = plan.getName(i);
+				request.names[i] = name;
+				request.hasPayload[i] = plan.getPayload(i) != null;
+				if (values.containsKey(name)) {
+					request.values.put(name, values.get(name));
+				}
+				for (int e = prerequisiteOffsets[i]; e < prerequisiteOffsets[i + 1]; e++) {
+					request.from[e] = prerequisites[e];
+					request.to[e] = i;
+				}
+			}
+		}
+		return request;
+	}
+
+	/**
+	 * A component to run, and the number of times it has been sent to a worker
+	 */
+	private static class Job {
+		private final Graph<?> component;
+		private int attempts;
+
+		private Job(Graph<?> component) {
+			this.component = component;
+		}
+	}
+
+	private class Worker {
+		/**
+		 * Volatile as it is killed from the thread that cancels a run
+		 */
+		private volatile Process process;
+		private DataOutputStream out;
+		private DataInputStream in;
+
+		private Worker(Process process) {
+			this.process = process;
+		}
+
+		/**
+		 * Run components from the queue until it is empty, or the worker dies and cannot be replaced
+		 */
+		private void run(Queue<Job> queue, Map<String, Object> values, List<Throwable> failures, AtomicBoolean cancelled) {
+			if (!process.isAlive() && !restart(failures)) {
+				return;
+			}
+			Job job;
+			while (!cancelled.get() && (job = queue.poll()) != null) {
+				byte[] request;
+				try {
+					request = ComponentWorker.toMessage(request(job.component, values));
+				} catch (IOException e) {
+					//ex: a value that is not Serializable; nothing has been written, so the worker carries on
+					failures.add(new CoreException("Unable to send component to worker process", e));
+					continue;
+				}
+				ComponentWorker.Response response;
+				try {
+					response = (ComponentWorker.Response) ComponentWorker.readMessage(send(request));
+				} catch (ClassNotFoundException e) {
+					failures.add(new CoreException("Unable to read values from worker process", e));
+					continue;
+				} catch (IOException | RuntimeException e) {
+					if (cancelled.get()) {
+						//killed by the cancel, so left to be replaced by the next call
+						return;
+					}
+					if (++job.attempts < MAX_ATTEMPTS) {
+						queue.add(job);
+					} else {
+						failures.add(new CoreException("Worker process failed", e));
+					}
+					if (!restart(failures)) {
+						return;
+					}
+					continue;
+				}
+				synchronized (values) {
+					if (cancelled.get()) {
+						return;
+					}
+					values.putAll(response.values);
+				}
+				if (response.failure != null) {
+					failures.add(new CoreException("Component failed in worker process: " + response.failure));
+				}
+			}
+		}
+
+		private byte[] send(byte[] request) throws IOException {
+			if (out == null) {
+				out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+				in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+			}
+			ComponentWorker.writeMessage(out, request);
+			out.flush();
+			byte[] response = new byte[in.readInt()];
+			in.readFully(response);
+			return response;
+		}
+
+		/**
+		 * Replace a worker process that died
+		 * @return false if a new process cannot be started
+		 */
+		private boolean restart(List<Throwable> failures) {
+			process.destroyForcibly();
+			out = null;
+			in = null;
+			try {
+				process = start();
+				return true;
+			} catch (IOException e) {
+				failures.add(new CoreException("Unable to start worker process", e));
+				return false;
+			}
+		}
+
+		private void kill() {
+			process.destroyForcibly();
+		}
+
+		private void close() {
+			try {
+				if (out != null) {
+					out.close();
+				} else {
+					process.getOutputStream().close();
+				}
+				if (!process.waitFor(5, TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+				}
+			} catch (IOException e) {
+				process.destroyForcibly();
+			} catch (InterruptedException e) {
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
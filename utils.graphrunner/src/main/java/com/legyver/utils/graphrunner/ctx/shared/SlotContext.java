@@ -0,0 +1,209 @@
+package com.legyver.utils.graphrunner.ctx.shared;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A shared context where each name is given a fixed int slot when the context is made, and values are kept in an array by slot.
+ * Payloads made with {@link #newCtx(String)} read and write their slot directly instead of hashing their name into a map.
+ * In concurrent mode the values are kept in an {@link AtomicReferenceArray}, so a context can be shared by concurrent strategies.
+ *
+ * {@link #asMap()} is a Map view for code that needs a Map, ex: an expression interpreter.  Names without a slot can still be put in
+ * the view and are kept to the side.  A null value is the same as no value.
+ */
+public class SlotContext {
+	private final Map<String, Integer> slots;
+	private final String[] names;
+	/**
+	 * The values by slot, when not concurrent
+	 */
+	private final Object[] values;
+	/**
+	 * The values by slot, when concurrent
+	 */
+	private final AtomicReferenceArray<Object> concurrentValues;
+	/**
+	 * Values of names without a slot
+	 */
+	private final Map<String, Object> unslotted;
+	private final Map<String, Object> mapView = new MapView();
+
+	/**
+	 * Construct a SlotContext with a slot for each key of a map, initialized to the value of the key
+	 * @param initialValues the names and their initial values
+	 * @param concurrent true if the context may be read and written by more than one thread at a time
+	 */
+	public SlotContext(Map<String, ?> initialValues, boolean concurrent) {
+		int size = initialValues.size();
+		this.slots = new HashMap<>(size * 4 / 3 + 1);
+		this.names = new String[size];
+		this.values = concurrent ? null : new Object[size];
+		this.concurrentValues = concurrent ? new AtomicReferenceArray<>(size) : null;
+		this.unslotted = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+		int slot = 0;
+		for (Map.Entry<String, ?> entry : initialValues.entrySet()) {
+			slots.put(entry.getKey(), slot);
+			names[slot] = entry.getKey();
+			set(slot++, entry.getValue());
+		}
+	}
+
+	/**
+	 * Construct a SlotContext with a slot for each key of a map, for use by one thread at a time
+	 * @param initialValues the names and their initial values
+	 */
+	public SlotContext(Map<String, ?> initialValues) {
+		this(initialValues, false);
+	}
+
+	/**
+	 * Make a payload for a node that reads and writes the slot of its name.
+	 * Can be used as the node factory of {@link com.legyver.utils.graphrunner.PropertyGraphFactory}: (s, o) -&gt; context.newCtx(s)
+	 * @param name the name of the node
+	 * @return the payload
+	 */
+	public SlotCtx newCtx(String name) {
+		return new SlotCtx(name, this);
+	}
+
+	/**
+	 * The slot of a name
+	 * @param name the name
+	 * @return the slot, or -1 if the name has no slot
+	 */
+	public int slotOf(String name) {
+		Integer slot = slots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * The number of slots
+	 * @return the number of slots
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Return the value in a slot
+	 * @param slot the slot
+	 * @return the value, or null if there is none
+	 */
+	public Object get(int slot) {
+		return values != null ? values[slot] : concurrentValues.get(slot);
+	}
+
+	/**
+	 * Set the value in a slot
+	 * @param slot the slot
+	 * @param value the value
+	 */
+	public void set(int slot, Object value) {
+		if (values != null) {
+			values[slot] = value;
+		} else {
+			concurrentValues.set(slot, value);
+		}
+	}
+
+	/**
+	 * A Map view of the context.  Reads and writes of names with a slot go to the slot.
+	 * @return the map view
+	 */
+	public Map<String, Object> asMap() {
+		return mapView;
+	}
+
+	private class MapView extends AbstractMap<String, Object> {
+		private final Set<Entry<String, Object>> entrySet = new EntrySet();
+
+		@Override
+		public Object get(Object key) {
+			Integer slot = slots.get(key);
+			return slot != null ? SlotContext.this.get(slot) : unslotted.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public Object put(String key, Object value) {
+			Integer slot = slots.get(key);
+			if (slot != null) {
+				Object previous = SlotContext.this.get(slot);
+				set(slot, value);
+				return previous;
+			}
+			return value == null ? unslotted.remove(key) : unslotted.put(key, value);
+		}
+
+		@Override
+		public Object remove(Object key) {
+			Integer slot = slots.get(key);
+			if (slot != null) {
+				Object previous = SlotContext.this.get(slot);
+				set(slot, null);
+				return previous;
+			}
+			return unslotted.remove(key);
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return entrySet;
+		}
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+		@Override
+		public Iterator<Map.Entry<String, Object>> iterator() {
+			List<Map.Entry<String, Object>> entries = new ArrayList<>();
+			for (int slot = 0; slot < names.length; slot++) {
+				Object value = get(slot);
+				if (value != null) {
+					entries.add(new SlotEntry(slot, value));
+				}
+			}
+			entries.addAll(unslotted.entrySet());
+			return Collections.unmodifiableList(entries).iterator();
+		}
+
+		@Override
+		public int size() {
+			int size = unslotted.size();
+			for (int slot = 0; slot < names.length; slot++) {
+				if (get(slot) != null) {
+					size++;
+				}
+			}
+			return size;
+		}
+	}
+
+	private class SlotEntry extends AbstractMap.SimpleEntry<String, Object> {
+		private static final long serialVersionUID = 1L;
+		private final int slot;
+
+		private SlotEntry(int slot, Object value) {
+			super(names[slot], value);
+			this.slot = slot;
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			set(slot, value);
+			return super.setValue(value);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.legyver.utils.graphrunner.ctx.shared;
+
+/**
+ * A {@link SharedMapCtx} whose value is kept in its slot of a {@link SlotContext}, so getValue() and setValue() index an array instead of
+ * hashing the node name.  The shared context map is the {@link SlotContext#asMap()} view of the same values.
+ */
+public class SlotCtx extends SharedMapCtx {
+	private final SlotContext context;
+	/**
+	 * The slot of the node, or -1 if the node has no slot and its value is kept in the map view
+	 */
+	private final int slot;
+
+	/**
+	 * Construct a SlotCtx for a node of a SlotContext.  See {@link SlotContext#newCtx(String)}
+	 * @param name the name of the node
+	 * @param context the context holding the value of the node
+	 */
+	public SlotCtx(String name, SlotContext context) {
+		super(name, context.asMap());
+		this.context = context;
+		this.slot = context.slotOf(name);
+	}
+
+	/**
+	 * Return the value in the slot of the node
+	 * @return the value
+	 */
+	@Override
+	public Object getValue() {
+		return slot < 0 ? super.getValue() : context.get(slot);
+	}
+
+	/**
+	 * Set the value in the slot of the node
+	 * @param value the value to set
+	 */
+	@Override
+	public void setValue(Object value) {
+		if (slot < 0) {
+			super.setValue(value);
+		} else {
+			context.set(slot, value);
+		}
+	}
+}
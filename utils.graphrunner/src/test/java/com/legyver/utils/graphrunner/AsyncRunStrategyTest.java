@@ -0,0 +1,140 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class AsyncRunStrategyTest {
+
+	@Test
+	public void blockingNodesOverlap() throws Exception {
+		List<Evaluated> payloads = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			payloads.add(new Evaluated("node" + i));
+		}
+		Graph.Builder builder = new Graph.Builder().nodes(payloads.toArray(new Evaluated[0]));
+		//two levels: node1..node19 all depend on node0
+		for (int i = 1; i < payloads.size(); i++) {
+			builder.connect(new Graph.Connection().from("node0").to("node" + i));
+		}
+		Graph<Evaluated> graph = builder.build();
+		ExecutorService executorService = AsyncRunStrategy.newVirtualThreadPerTaskExecutor();
+		try {
+			graph.setStrategy(new AsyncRunStrategy(executorService));
+			AtomicInteger counter = new AtomicInteger();
+			long start = System.nanoTime();
+			graph.executeStrategy((nodeName, evaluated) -> {
+				evaluated.count = counter.getAndIncrement();
+				sleep(100);
+			});
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			//critical path is two nodes deep, the sum of all nodes is 20 x 100ms
+			assertThat(elapsedMillis, is(lessThan(1000L)));
+			for (int i = 1; i < payloads.size(); i++) {
+				assertThat(payloads.get(i).count, is(greaterThan(payloads.get(0).count)));
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void asyncCommandChainsOnPrerequisites() throws Exception {
+		Evaluated a = new Evaluated("A");
+		Evaluated b = new Evaluated("B");
+		Evaluated c = new Evaluated("C");
+		Graph<Evaluated> graph = new Graph.Builder()
+				.nodes(a, b, c)
+				.connect(new Graph.Connection().from("A").to("C"))
+				.connect(new Graph.Connection().from("B").to("C"))
+				.build();
+		AtomicInteger counter = new AtomicInteger();
+
+		new AsyncRunStrategy(Runnable::run).executeAsync(graph, (nodeName, evaluated) -> CompletableFuture.runAsync(() -> {
+			sleep("A".equals(nodeName) ? 50 : 0);
+			evaluated.count = counter.getAndIncrement();
+		})).get(5, TimeUnit.SECONDS);
+
+		assertThat(c.count, is(2));
+	}
+
+	@Test
+	public void failureIsReportedAndStopsDependents() throws Exception {
+		Evaluated a = new Evaluated("A");
+		Evaluated b = new Evaluated("B");
+		Graph<Evaluated> graph = new Graph.Builder()
+				.nodes(a, b)
+				.connect(new Graph.Connection().from("A").to("B"))
+				.build();
+		CoreException expected = new CoreException("A failed");
+
+		CompletableFuture<Void> future = new AsyncRunStrategy(Runnable::run).executeAsync(graph, (nodeName, evaluated) -> {
+			if ("A".equals(nodeName)) {
+				CompletableFuture<Void> failed = new CompletableFuture<>();
+				failed.completeExceptionally(expected);
+				return failed;
+			}
+			evaluated.count = 0;
+			return CompletableFuture.completedFuture(null);
+		});
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Expected failure");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause() == expected, is(true));
+		}
+		assertThat(b.count, is(-1));
+	}
+
+	@Test
+	public void blockingFailureRethrowsCoreException() throws Exception {
+		Graph<Evaluated> graph = new Graph.Builder()
+				.nodes(new Evaluated("A"))
+				.build();
+		graph.setStrategy(new AsyncRunStrategy(Runnable::run));
+		try {
+			graph.executeStrategy((nodeName, evaluated) -> {
+				throw new CoreException("A failed");
+			});
+			fail("Expected CoreException");
+		} catch (CoreException e) {
+			assertThat(e.getMessage(), is("A failed"));
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class Evaluated implements Graph.Payload {
+		private final String name;
+		private volatile int count = -1;
+
+		private Evaluated(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.legyver.utils.graphrunner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+
+public class CompactGraphTest {
+
+	/**
+	 * a -> b -> d, a -> c -> d, e unconnected
+	 */
+	private static Graph<Node> diamond() {
+		return new Graph.Builder<Node>()
+				.compact()
+				.nodes(new Node("a"), new Node("b"), new Node("c"), new Node("d"), new Node("e"))
+				.connect(new Graph.Connection().from("a").to("b"))
+				.connect(new Graph.Connection().from("a").to("c"))
+				.connect(new Graph.Connection().from("b").to("d"))
+				.connect(new Graph.Connection().from("c").to("d"))
+				.build();
+	}
+
+	@Test
+	public void runsEveryNodeOnceInOrder() throws Exception {
+		Graph<Node> graph = diamond();
+		List<String> run = new ArrayList<>();
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+
+		assertThat(run, containsInAnyOrder("a", "b", "c", "d", "e"));
+		assertThat(run.indexOf("a"), is(lessThan(run.indexOf("b"))));
+		assertThat(run.indexOf("a"), is(lessThan(run.indexOf("c"))));
+		assertThat(run.indexOf("b"), is(lessThan(run.indexOf("d"))));
+		assertThat(run.indexOf("c"), is(lessThan(run.indexOf("d"))));
+	}
+
+	@Test
+	public void resetEvaluatedRunsAgain() throws Exception {
+		Graph<Node> graph = diamond();
+		List<String> run = new ArrayList<>();
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+		graph.resetEvaluated();
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+
+		assertThat(run.size(), is(10));
+	}
+
+	@Test
+	public void evaluatedStateSurvivesAddingNodes() throws Exception {
+		Graph.Builder<Node> builder = new Graph.Builder<Node>()
+				.compact()
+				.nodes(new Node("a"));
+		Graph<Node> graph = builder.build();
+		List<String> run = new ArrayList<>();
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+		builder.nodes(new Node("b"))
+				.connect(new Graph.Connection().from("a").to("b"));
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+
+		assertThat(run, contains("a", "b"));
+	}
+
+	@Test
+	public void runWithDependents() throws Exception {
+		Graph<Node> graph = diamond();
+		List<String> run = new ArrayList<>();
+		graph.setStrategy(new RunWithDependentsStrategy("b"));
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+
+		assertThat(run, contains("a", "b"));
+	}
+
+	@Test
+	public void runInParallel() throws Exception {
+		Graph<Node> graph = diamond();
+		List<String> run = Collections.synchronizedList(new ArrayList<>());
+		graph.setStrategy(new ParallelRunStrategy());
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+
+		assertThat(run, containsInAnyOrder("a", "b", "c", "d", "e"));
+		assertThat(run.indexOf("b"), is(lessThan(run.indexOf("d"))));
+		assertThat(run.indexOf("c"), is(lessThan(run.indexOf("d"))));
+	}
+
+	@Test
+	public void filter() throws Exception {
+		Graph<Node> filtered = diamond().filter("c");
+		List<String> run = new ArrayList<>();
+		filtered.executeStrategy((nodeName, node) -> run.add(nodeName));
+
+		assertThat(run, contains("a", "c"));
+	}
+
+	@Test
+	public void compactHoldsNoNodeObjects() throws Exception {
+		int size = 10_000;
+		Node[] nodes = nodes(size);
+		Graph<Node> tree = build(new Graph.Builder<Node>(), nodes);
+		Graph<Node> compact = build(new Graph.Builder<Node>().compact(), nodes);
+
+		//a tree graph holds a GraphNode, with its own map of dependents, for every node; a compact graph holds only arrays
+		assertThat(compact.getChildMap().isEmpty(), is(true));
+		for (Node node : nodes) {
+			assertThat(tree.find(node.name), is(notNullValue()));
+			assertThat(compact.find(node.name), is(nullValue()));
+		}
+		ExecutionPlan<Node> plan = compact.compile();
+		assertThat(plan.size(), is(size));
+		assertThat(plan.dependents().length, is(size - 1));
+		for (int i = 1; i < size; i++) {
+			int id = plan.indexOf(nodes[i].name);
+			assertThat(plan.getPayload(id), is(sameInstance(nodes[i])));
+			assertThat(plan.getName(plan.prerequisites()[plan.prerequisiteOffsets()[id]]), is(nodes[(i - 1) / 2].name));
+		}
+	}
+
+	static Node[] nodes(int size) {
+		Node[] nodes = new Node[size];
+		for (int i = 0; i < size; i++) {
+			nodes[i] = new Node("node." + i);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Every node depends on the node at half its index, so the graph fans out like a binary tree
+	 */
+	static Graph<Node> build(Graph.Builder<Node> builder, Node[] nodes) {
+		builder.nodes(nodes);
+		for (int i = 1; i < nodes.length; i++) {
+			builder.connect(new Graph.Connection().from(nodes[(i - 1) / 2].name).to(nodes[i].name));
+		}
+		return builder.build();
+	}
+
+	static class Node implements Graph.Payload {
+		private final String name;
+
+		private Node(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+	}
+}
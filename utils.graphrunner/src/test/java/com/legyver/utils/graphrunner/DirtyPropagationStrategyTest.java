@@ -0,0 +1,94 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+public class DirtyPropagationStrategyTest {
+	private final Map<String, Object> values = new HashMap<>();
+	private final List<String> run = new ArrayList<>();
+	private Graph<SharedMapCtx> graph;
+
+	/**
+	 * tens = input / 10, label = "tens: " + tens.  other is unconnected.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		values.put("input", 11);
+		graph = new Graph.Builder()
+				.nodes(new SharedMapCtx("input", values), new SharedMapCtx("tens", values),
+						new SharedMapCtx("label", values), new SharedMapCtx("other", values))
+				.connect(new Graph.Connection().from("input").to("tens"))
+				.connect(new Graph.Connection().from("tens").to("label"))
+				.build();
+		graph.executeStrategy(this::evaluate);
+		assertThat(values.get("label"), is("tens: 1"));
+		run.clear();
+	}
+
+	private void evaluate(String nodeName, SharedMapCtx ctx) {
+		run.add(nodeName);
+		switch (nodeName) {
+			case "tens":
+				ctx.setValue((Integer) values.get("input") / 10);
+				break;
+			case "label":
+				ctx.setValue("tens: " + values.get("tens"));
+				break;
+		}
+	}
+
+	@Test
+	public void rerunsDirtyNodeAndDependents() throws Exception {
+		values.put("input", 25);
+		graph.setStrategy(new DirtyPropagationStrategy().markDirty("input"));
+		graph.executeStrategy(this::evaluate);
+
+		assertThat(run, contains("input", "tens", "label"));
+		assertThat(values.get("label"), is("tens: 2"));
+	}
+
+	@Test
+	public void stopsPropagatingUnchangedValues() throws Exception {
+		values.put("input", 12);
+		graph.setStrategy(new DirtyPropagationStrategy()
+				.stopWhenUnchanged((String nodeName, SharedMapCtx ctx) -> ctx.getValue())
+				.markDirty("input"));
+		graph.executeStrategy(this::evaluate);
+
+		//tens is still 1, so label is not re-run
+		assertThat(run, contains("input", "tens"));
+	}
+
+	@Test
+	public void changedInputPropagatesWhenStoppingUnchangedValues() throws Exception {
+		//the input is changed before it is marked, so re-running it leaves its value as it is
+		values.put("input", 25);
+		graph.setStrategy(new DirtyPropagationStrategy()
+				.stopWhenUnchanged((String nodeName, SharedMapCtx ctx) -> ctx.getValue())
+				.markDirty("input"));
+		graph.executeStrategy(this::evaluate);
+
+		assertThat(run, contains("input", "tens", "label"));
+		assertThat(values.get("label"), is("tens: 2"));
+	}
+
+	@Test
+	public void dirtyNodesAreClearedAfterRun() throws Exception {
+		DirtyPropagationStrategy strategy = new DirtyPropagationStrategy().markDirty("label");
+		graph.setStrategy(strategy);
+		graph.executeStrategy(this::evaluate);
+		graph.executeStrategy(this::evaluate);
+
+		assertThat(run, contains("label"));
+	}
+}
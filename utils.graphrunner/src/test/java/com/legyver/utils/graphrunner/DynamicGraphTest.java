@@ -0,0 +1,281 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class DynamicGraphTest {
+
+	private static Graph.Connection connection(String from, String to) {
+		return new Graph.Connection().from(from).to(to);
+	}
+
+	private static List<String> run(Graph<Node> graph) throws CoreException {
+		List<String> run = Collections.synchronizedList(new ArrayList<>());
+		graph.newExecution().executeStrategy((nodeName, node) -> run.add(nodeName));
+		return run;
+	}
+
+	@Test
+	public void connectionAgainstTheOrderIsReordered() throws Exception {
+		DynamicGraph<Node> graph = new DynamicGraph<Node>()
+				.addNodes(new Node("a"), new Node("b"), new Node("c"), new Node("d"))
+				.connect(connection("a", "b"))
+				.connect(connection("d", "a"))
+				.connect(connection("c", "d"));
+
+		assertThat(run(graph), contains("c", "d", "a", "b"));
+	}
+
+	@Test
+	public void cycleIsRejectedAndGraphUnchanged() throws Exception {
+		DynamicGraph<Node> graph = new DynamicGraph<Node>()
+				.addNodes(new Node("a"), new Node("b"), new Node("c"))
+				.connect(connection("a", "b"))
+				.connect(connection("b", "c"));
+		try {
+			graph.connect(connection("c", "a"));
+			fail("Expected cycle to be rejected");
+		} catch (CoreException e) {
+			assertThat(e.getMessage(), is("Connecting c to a would make a cycle"));
+		}
+		try {
+			graph.connect(connection("a", "a"));
+			fail("Expected cycle to be rejected");
+		} catch (CoreException e) {
+			assertThat(e.getMessage(), is("Connecting a to itself would make a cycle"));
+		}
+
+		assertThat(run(graph), contains("a", "b", "c"));
+	}
+
+	@Test
+	public void removeNodesAndConnections() throws Exception {
+		DynamicGraph<Node> graph = new DynamicGraph<Node>()
+				.addNodes(new Node("a"), new Node("b"), new Node("c"))
+				.connect(connection("a", "b"))
+				.connect(connection("b", "c"));
+
+		assertThat(graph.disconnect(connection("b", "c")), is(true));
+		assertThat(graph.disconnect(connection("b", "c")), is(false));
+		//c no longer depends on b, so b may now depend on c
+		graph.connect(connection("c", "b"));
+		assertThat(graph.removeNode("a"), is(true));
+		graph.addNodes(new Node("e"));
+		graph.connect(connection("e", "c"));
+
+		assertThat(graph.size(), is(3));
+		assertThat(run(graph), contains("e", "c", "b"));
+	}
+
+	@Test
+	public void evaluatedStateSurvivesChanges() throws Exception {
+		DynamicGraph<Node> graph = new DynamicGraph<Node>()
+				.addNodes(new Node("a"), new Node("b"));
+		List<String> run = new ArrayList<>();
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+		graph.addNodes(new Node("c")).connect(connection("c", "a"));
+		graph.setStrategy(new ParallelRunStrategy());
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+		graph.resetEvaluated();
+		graph.setStrategy(new RunWithDependentsStrategy("a"));
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+
+		assertThat(run, contains("a", "b", "c", "c", "a"));
+	}
+
+	@Test
+	public void randomChangesKeepOrderValid() throws Exception {
+		Random random = new Random(42);
+		DynamicGraph<Node> graph = new DynamicGraph<>();
+		List<String[]> edges = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			String from = "n" + random.nextInt(200);
+			String to = "n" + random.nextInt(200);
+			if (random.nextInt(10) == 0 && !edges.isEmpty()) {
+				String[] edge = edges.remove(random.nextInt(edges.size()));
+				graph.disconnect(connection(edge[0], edge[1]));
+			} else if (random.nextInt(50) == 0) {
+				graph.removeNode(from);
+				edges.removeIf(edge -> edge[0].equals(from) || edge[1].equals(from));
+			} else {
+				try {
+					graph.connect(connection(from, to));
+					if (edges.stream().noneMatch(edge -> edge[0].equals(from) && edge[1].equals(to))) {
+						edges.add(new String[] {from, to});
+					}
+				} catch (CoreException e) {
+					//rejected cycle
+				}
+			}
+		}
+
+		List<String> run = run(graph);
+		assertThat(run.size(), is(graph.size()));
+		for (String[] edge : edges) {
+			assertThat(run.indexOf(edge[0]), is(lessThan(run.indexOf(edge[1]))));
+		}
+	}
+
+	@Test
+	public void changesOnlyRenumberNodesBetweenTheirEnds() throws Exception {
+		int size = 100_000;
+		DynamicGraph<Node> graph = new DynamicGraph<>();
+		for (int i = 1; i < size; i++) {
+			graph.connect(connection("n" + (i - 1) / 2, "n" + i));
+		}
+		ExecutionPlan<Node> before = graph.compile();
+		//the last leaf of the tree comes after the leaf half the order before it, so connecting them is against the order
+		String predecessor = "n" + (size - 1);
+		String dependent = "n" + size / 2;
+		graph.connect(connection(predecessor, dependent));
+		ExecutionPlan<Node> after = graph.compile();
+
+		int lowerBound = before.indexOf(dependent);
+		int upperBound = before.indexOf(predecessor);
+		for (int id = 0; id < size; id++) {
+			if (id < lowerBound || id > upperBound) {
+				assertThat(after.getName(id), is(before.getName(id)));
+			}
+		}
+		assertThat(after.indexOf(predecessor), is(lessThan(after.indexOf(dependent))));
+		assertPlanMatches(after, graph, Collections.singletonList(new String[] {predecessor, dependent}), size);
+	}
+
+	@Test
+	public void patchedPlansMatchTheGraph() throws Exception {
+		Random random = new Random(7);
+		DynamicGraph<Node> graph = new DynamicGraph<>();
+		List<String[]> edges = new ArrayList<>();
+		for (int i = 0; i < 3_000; i++) {
+			String from = "n" + random.nextInt(100);
+			String to = "n" + random.nextInt(100);
+			int change = random.nextInt(100);
+			if (change < 10 && !edges.isEmpty()) {
+				String[] edge = edges.remove(random.nextInt(edges.size()));
+				graph.disconnect(connection(edge[0], edge[1]));
+			} else if (change < 12) {
+				graph.removeNode(from);
+				edges.removeIf(edge -> edge[0].equals(from) || edge[1].equals(from));
+			} else if (change < 20) {
+				graph.addNodes(new Node(from));
+			} else {
+				try {
+					graph.connect(connection(from, to));
+					if (edges.stream().noneMatch(edge -> edge[0].equals(from) && edge[1].equals(to))) {
+						edges.add(new String[] {from, to});
+					}
+				} catch (CoreException e) {
+					//rejected cycle
+				}
+			}
+			if (random.nextInt(5) == 0) {
+				assertPlanMatches(graph.compile(), graph, edges, -1);
+			}
+		}
+		assertPlanMatches(graph.compile(), graph, edges, -1);
+	}
+
+	/**
+	 * Check every node of the plan has its own id, the latest payload and exactly the connections of the graph, in topological order
+	 * @param connectionCount the number of connections of the graph, or -1 if they are all in the edges
+	 */
+	private static void assertPlanMatches(ExecutionPlan<Node> plan, DynamicGraph<Node> graph, List<String[]> edges, int connectionCount) {
+		assertThat(plan.size(), is(graph.size()));
+		int planConnections = 0;
+		for (int id = 0; id < plan.size(); id++) {
+			String nodeName = plan.getName(id);
+			assertThat(plan.indexOf(nodeName), is(id));
+			if (plan.getPayload(id) != null) {
+				assertThat(plan.getPayload(id).getNodeName(), is(nodeName));
+			}
+			for (int e = plan.dependentOffsets()[id]; e < plan.dependentOffsets()[id + 1]; e++) {
+				int dependent = plan.dependents()[e];
+				assertThat(dependent, is(greaterThan(id)));
+				boolean prerequisite = false;
+				for (int p = plan.prerequisiteOffsets()[dependent]; p < plan.prerequisiteOffsets()[dependent + 1]; p++) {
+					prerequisite |= plan.prerequisites()[p] == id;
+				}
+				assertThat(prerequisite, is(true));
+				planConnections++;
+			}
+		}
+		for (String[] edge : edges) {
+			int from = plan.indexOf(edge[0]);
+			int to = plan.indexOf(edge[1]);
+			boolean dependent = false;
+			for (int e = plan.dependentOffsets()[from]; e < plan.dependentOffsets()[from + 1]; e++) {
+				dependent |= plan.dependents()[e] == to;
+			}
+			assertThat(dependent, is(true));
+		}
+		assertThat(planConnections, is(connectionCount < 0 ? edges.size() : connectionCount));
+		assertThat(plan.prerequisites().length, is(planConnections));
+	}
+
+	@Test(timeout = 10_000)
+	public void commandMayChangeTheGraphWhileItRuns() throws Exception {
+		DynamicGraph<Node> graph = new DynamicGraph<Node>()
+				.addNodes(new Node("a"), new Node("b"))
+				.connect(connection("a", "b"));
+		List<String> run = new ArrayList<>();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			graph.executeStrategy((nodeName, node) -> {
+				run.add(nodeName);
+				//changed from another thread, which could not change it if the graph were locked while it runs
+				try {
+					executor.submit(() -> graph.addNodes(new Node(nodeName + ".next"))).get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new CoreException(e);
+				}
+			});
+		} finally {
+			executor.shutdown();
+		}
+		//the nodes added while the graph runs are left for the next run
+		assertThat(run, contains("a", "b"));
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+		assertThat(run, contains("a", "b", "a.next", "b.next"));
+	}
+
+	@Test
+	public void runAllStrategy() throws Exception {
+		DynamicGraph<Node> graph = new DynamicGraph<Node>()
+				.addNodes(new Node("a"), new Node("b"))
+				.connect(connection("b", "a"));
+		List<String> run = new ArrayList<>();
+		graph.executeStrategy((nodeName, node) -> run.add(nodeName));
+
+		assertThat(run, containsInAnyOrder("a", "b"));
+		assertThat(run.get(0), is("b"));
+	}
+
+	private static class Node implements Graph.Payload {
+		private final String name;
+
+		private Node(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+	}
+}
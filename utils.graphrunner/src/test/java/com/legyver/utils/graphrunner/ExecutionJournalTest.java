@@ -0,0 +1,211 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class ExecutionJournalTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final List<String> run = new ArrayList<>();
+
+	/**
+	 * input, doubled = input * 2, label = "doubled: " + doubled.  A fresh graph and values map, as in a new JVM
+	 */
+	private Graph<SharedMapCtx> graph(Map<String, Object> values) {
+		values.put("input", 2);
+		return new Graph.Builder()
+				.nodes(new SharedMapCtx("input", values), new SharedMapCtx("doubled", values), new SharedMapCtx("label", values))
+				.connect(new Graph.Connection().from("input").to("doubled"))
+				.connect(new Graph.Connection().from("doubled").to("label"))
+				.build();
+	}
+
+	private GraphExecutedCommand<SharedMapCtx> evaluate(Map<String, Object> values, String failOn) {
+		return (nodeName, ctx) -> {
+			if (nodeName.equals(failOn)) {
+				throw new CoreException("JVM died");
+			}
+			run.add(nodeName);
+			switch (nodeName) {
+				case "doubled":
+					ctx.setValue((Integer) values.get("input") * 2);
+					break;
+				case "label":
+					ctx.setValue("doubled: " + values.get("doubled"));
+					break;
+			}
+		};
+	}
+
+	@Test
+	public void resumeSkipsCompletedNodesAndRestoresResults() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("run.journal");
+		Map<String, Object> firstValues = new HashMap<>();
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ofSeconds(10))) {
+			graph(firstValues).executeStrategy(journal.journaled(evaluate(firstValues, "label"), new ValueResult()));
+			fail("Expected the run to fail");
+		} catch (CoreException e) {
+			assertThat(e.getMessage(), is("JVM died"));
+		}
+
+		run.clear();
+		Map<String, Object> values = new HashMap<>();
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			assertThat(journal.getCompletedNodes(), containsInAnyOrder("input", "doubled"));
+			graph(values).executeStrategy(journal.journaled(evaluate(values, null), new ValueResult()));
+		}
+
+		assertThat(run, contains("label"));
+		assertThat(values.get("label"), is("doubled: 4"));
+	}
+
+	@Test
+	public void tornRecordIsDiscarded() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("torn.journal");
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			journal.record("a", "result a");
+			journal.record("b", null);
+		}
+		long complete = Files.size(file);
+		//half of a record header, as left by a crash
+		Files.write(file, new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			assertThat(journal.getCompletedNodes(), containsInAnyOrder("a", "b"));
+			assertThat(Files.size(file), is(complete));
+			journal.record("c", null);
+		}
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			assertThat(journal.getCompletedNodes(), containsInAnyOrder("a", "b", "c"));
+		}
+	}
+
+	@Test
+	public void bufferedRecordsAreWrittenOnFlush() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("buffered.journal");
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ofHours(1))) {
+			journal.record("a", 1);
+			assertThat(Files.size(file), is(0L));
+			journal.flush();
+			assertThat(Files.size(file) > 0, is(true));
+		}
+	}
+
+	@Test
+	public void nodeWhoseResultCannotBeSerializedIsRunAgain() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("unserializable.journal");
+		List<Object> result = new ArrayList<>();
+		result.add(new Object());
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			assertThat(journal.record("a", result), is(false));
+			assertThat(journal.record("b", "result b"), is(true));
+		}
+
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			assertThat(journal.getCompletedNodes(), contains("b"));
+		}
+	}
+
+	@Test
+	public void resumeRunsNodesWhoseResultCannotBeSerialized() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("resume-unserializable.journal");
+		Map<String, Object> firstValues = new HashMap<>();
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			graph(firstValues).executeStrategy(journal.journaled(unserializable(firstValues, "label"), new ValueResult()));
+			fail("Expected the run to fail");
+		} catch (CoreException e) {
+			assertThat(e.getMessage(), is("JVM died"));
+		}
+
+		run.clear();
+		Map<String, Object> values = new HashMap<>();
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			assertThat(journal.getCompletedNodes(), contains("input"));
+			graph(values).executeStrategy(journal.journaled(unserializable(values, null), new ValueResult()));
+		}
+
+		assertThat(run, contains("doubled", "label"));
+		assertThat(values.get("label"), is("doubled: 4"));
+	}
+
+	/**
+	 * As {@link #evaluate(Map, String)}, with doubled held in an object that cannot be serialized
+	 */
+	private GraphExecutedCommand<SharedMapCtx> unserializable(Map<String, Object> values, String failOn) {
+		return (nodeName, ctx) -> {
+			if (nodeName.equals(failOn)) {
+				throw new CoreException("JVM died");
+			}
+			run.add(nodeName);
+			switch (nodeName) {
+				case "doubled":
+					ctx.setValue(new Holder((Integer) values.get("input") * 2));
+					break;
+				case "label":
+					ctx.setValue("doubled: " + ((Holder) values.get("doubled")).value);
+					break;
+			}
+		};
+	}
+
+	private static class Holder {
+		private final int value;
+
+		private Holder(int value) {
+			this.value = value;
+		}
+	}
+
+	@Test
+	public void recordsSpanningManyReadBuffersAreReadBack() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("long.journal");
+		StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			padding.append('x');
+		}
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ofHours(1))) {
+			for (int i = 0; i < 20_000; i++) {
+				journal.record("node " + i, padding + " " + i);
+			}
+		}
+
+		Map<String, Object> restored = new HashMap<>();
+		try (ExecutionJournal journal = new ExecutionJournal(file, Duration.ZERO)) {
+			assertThat(journal.getCompletedNodes().size(), is(20_000));
+			journal.journaled((nodeName, ctx) -> run.add(nodeName), new ValueResult())
+					.execute("node 12345", new SharedMapCtx("node 12345", restored));
+		}
+		assertThat(restored.get("node 12345"), is(padding + " 12345"));
+	}
+
+	private class ValueResult implements NodeResultAccessor<SharedMapCtx> {
+		@Override
+		public Object readResult(String nodeName, SharedMapCtx payload) {
+			return payload.getValue();
+		}
+
+		@Override
+		public void restoreResult(String nodeName, SharedMapCtx payload, Object result) {
+			payload.setValue(result);
+		}
+	}
+}
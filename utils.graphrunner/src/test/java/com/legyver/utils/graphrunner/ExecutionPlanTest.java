@@ -0,0 +1,108 @@
+package com.legyver.utils.graphrunner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+public class ExecutionPlanTest {
+
+	@Test
+	public void idsAreTopologicallySorted() throws Exception {
+		ExecutionPlan<Node> plan = diamond().compile();
+
+		assertThat(plan.size(), is(5));
+		assertThat(plan.indexOf("A"), is(lessThan(plan.indexOf("B"))));
+		assertThat(plan.indexOf("A"), is(lessThan(plan.indexOf("C"))));
+		assertThat(plan.indexOf("B"), is(lessThan(plan.indexOf("D"))));
+		assertThat(plan.indexOf("C"), is(lessThan(plan.indexOf("D"))));
+		assertThat(plan.indexOf("unknown"), is(-1));
+		assertThat(plan.getPayload(plan.indexOf("E")).getNodeName(), is("E"));
+	}
+
+	@Test
+	public void nodesGroupedByLevel() throws Exception {
+		ExecutionPlan<Node> plan = diamond().compile();
+		int[][] levels = plan.levels();
+
+		assertThat(levels.length, is(3));
+		assertThat(names(plan, levels[0]), containsInAnyOrder("A", "E"));
+		assertThat(names(plan, levels[1]), containsInAnyOrder("B", "C"));
+		assertThat(names(plan, levels[2]), contains("D"));
+	}
+
+	private static List<String> names(ExecutionPlan<Node> plan, int[] ids) {
+		List<String> names = new ArrayList<>();
+		for (int id : ids) {
+			names.add(plan.getName(id));
+		}
+		return names;
+	}
+
+	@Test
+	public void nodesOnlyRerunAfterReset() throws Exception {
+		ExecutionPlan<Node> plan = diamond().compile();
+		ExecutionState state = plan.newState();
+		List<String> run = new ArrayList<>();
+
+		plan.execute(state, (nodeName, node) -> run.add(nodeName));
+		assertThat(run, containsInAnyOrder("A", "B", "C", "D", "E"));
+		assertThat(run.indexOf("B"), is(lessThan(run.indexOf("D"))));
+		assertThat(run.indexOf("C"), is(lessThan(run.indexOf("D"))));
+
+		run.clear();
+		plan.execute(state, (nodeName, node) -> run.add(nodeName));
+		assertThat(run.isEmpty(), is(true));
+
+		state.reset();
+		plan.execute(state, (nodeName, node) -> run.add(nodeName));
+		assertThat(run.size(), is(5));
+	}
+
+	@Test
+	public void cyclesAreLeftOut() throws Exception {
+		Graph<Node> graph = new Graph.Builder()
+				.nodes(new Node("A"), new Node("B"), new Node("C"), new Node("D"))
+				.connect(new Graph.Connection().from("B").to("C"))
+				.connect(new Graph.Connection().from("C").to("B"))
+				.connect(new Graph.Connection().from("C").to("D"))
+				.build();
+		ExecutionPlan<Node> plan = graph.compile();
+		List<String> run = new ArrayList<>();
+
+		plan.execute(plan.newState(), (nodeName, node) -> run.add(nodeName));
+		assertThat(run, contains("A"));
+	}
+
+	/**
+	 * A before B and C, which are both before D.  E is unconnected.
+	 */
+	private Graph<Node> diamond() {
+		return new Graph.Builder()
+				.nodes(new Node("A"), new Node("B"), new Node("C"), new Node("D"), new Node("E"))
+				.connect(new Graph.Connection().from("A").to("B"))
+				.connect(new Graph.Connection().from("A").to("C"))
+				.connect(new Graph.Connection().from("B").to("D"))
+				.connect(new Graph.Connection().from("C").to("D"))
+				.build();
+	}
+
+	private static class Node implements Graph.Payload {
+		private final String name;
+
+		private Node(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+	}
+}
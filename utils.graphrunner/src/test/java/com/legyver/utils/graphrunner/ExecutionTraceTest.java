@@ -0,0 +1,92 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class ExecutionTraceTest {
+
+	/**
+	 * slow -> medium -> last, and fast -> last
+	 */
+	private Graph<Node> makeGraph() {
+		return new Graph.Builder()
+				.nodes(new Node("slow", 60), new Node("medium", 30), new Node("fast", 5), new Node("last", 10))
+				.connect(new Graph.Connection().from("slow").to("medium"))
+				.connect(new Graph.Connection().from("medium").to("last"))
+				.connect(new Graph.Connection().from("fast").to("last"))
+				.build();
+	}
+
+	@Test
+	public void criticalPathFollowsSlowestChain() throws Exception {
+		Graph<Node> graph = makeGraph();
+		ExecutionTrace trace = new ExecutionTrace();
+		graph.setListener(trace);
+		graph.setStrategy(new ParallelRunStrategy());
+		graph.executeStrategy((nodeName, node) -> sleep(node.millis));
+
+		ExecutionReport report = trace.report(graph);
+		assertThat(report.getCriticalPath(), contains("slow", "medium", "last"));
+		assertThat(report.getSlowestNodes(1).get(0).getNodeName(), is("slow"));
+		assertThat(report.getCriticalPathNanos(), is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100))));
+		assertThat(report.getCriticalPathNanos(), is(lessThan(report.getTotalNodeNanos())));
+		assertThat(report.getWallTimeNanos(), is(greaterThanOrEqualTo(report.getCriticalPathNanos())));
+		assertThat(report.toText(2), containsString("Critical path: slow -> medium -> last"));
+		assertThat(report.toJson(), containsString("\"criticalPath\":[\"slow\",\"medium\",\"last\"]"));
+	}
+
+	@Test
+	public void failuresAreRecorded() throws Exception {
+		Graph<Node> graph = makeGraph();
+		ExecutionTrace trace = new ExecutionTrace();
+		graph.setListener(trace);
+		try {
+			graph.executeStrategy((nodeName, node) -> {
+				if ("fast".equals(nodeName)) {
+					throw new CoreException("fast failed");
+				}
+			});
+			fail("Expected CoreException");
+		} catch (CoreException e) {
+			//expected
+		}
+
+		ExecutionReport report = trace.report(graph);
+		assertThat(report.getFailedNodes().size(), is(1));
+		assertThat(report.getFailedNodes().get(0).getNodeName(), is("fast"));
+		assertThat(report.toJson(), containsString("fast failed"));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class Node implements Graph.Payload {
+		private final String name;
+		private final long millis;
+
+		private Node(String name, long millis) {
+			this.name = name;
+			this.millis = millis;
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class GraphBatchTest {
+	private static final Pattern VARIABLE = Pattern.compile(PropertyGraphFactoryTest.JEXL_VARIABLE);
+
+	/**
+	 * The same structure for every tenant: greeting depends on name, message depends on greeting
+	 */
+	private static Map<String, Object> tenant(int i) {
+		Map<String, Object> values = new HashMap<>();
+		values.put("name", "tenant" + i);
+		values.put("greeting", "Hello ${name}");
+		values.put("message", "${greeting}!");
+		return values;
+	}
+
+	private static Graph<SharedMapCtx> structure() {
+		Map<String, Object> template = tenant(0);
+		return new PropertyGraphFactory(VARIABLE, 1).make(template, (s, o) -> new SharedMapCtx(s, template));
+	}
+
+	/**
+	 * Replace each ${variable} with the already resolved value
+	 */
+	private static void resolve(String nodeName, Map<String, Object> values) throws CoreException {
+		String value = String.valueOf(values.get(nodeName));
+		for (String name : new String[] {"name", "greeting"}) {
+			value = value.replace("${" + name + "}", String.valueOf(values.get(name)));
+		}
+		if (value.contains("fail")) {
+			throw new CoreException("Failed on " + nodeName);
+		}
+		values.put(nodeName, value);
+	}
+
+	@Test
+	public void eachSetOfValuesIsResolvedOnItsOwn() throws Exception {
+		List<Map<String, Object>> tenants = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			tenants.add(tenant(i));
+		}
+
+		List<GraphBatch.Failure<Map<String, Object>>> failures = new GraphBatch(structure())
+				.execute(tenants, TenantNode::new, (nodeName, node) -> resolve(node.name, node.values));
+
+		assertThat(failures.isEmpty(), is(true));
+		for (int i = 0; i < tenants.size(); i++) {
+			assertThat(tenants.get(i).get("message"), is("Hello tenant" + i + "!"));
+		}
+	}
+
+	@Test
+	public void concurrentBatchReportsFailuresInOrder() throws Exception {
+		List<Map<String, Object>> tenants = new ArrayList<>();
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			List<GraphBatch.Failure<Map<String, Object>>> failures = new GraphBatch(structure(), executorService)
+					.execute(IntStream.range(0, 1_000).mapToObj(i -> {
+						Map<String, Object> values = tenant(i);
+						if (i % 100 == 7) {
+							values.put("name", "fail");
+						}
+						tenants.add(values);
+						return values;
+					}), (nodeName, values) -> values, GraphBatchTest::resolve);
+
+			assertThat(failures.size(), is(10));
+			for (int i = 0; i < failures.size(); i++) {
+				assertThat(failures.get(i).getIndex(), is(i * 100 + 7));
+				assertThat(failures.get(i).getNodeName(), is("name"));
+			}
+			assertThat(tenants.get(8).get("message"), is("Hello tenant8!"));
+			assertThat(tenants.get(7).get("message"), is("${greeting}!"));
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void errorOnExecutorThreadIsThrownToCaller() throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		try {
+			new GraphBatch(structure(), executorService)
+					.execute(IntStream.range(0, 10).mapToObj(GraphBatchTest::tenant), (nodeName, values) -> values, (nodeName, values) -> {
+						if (nodeName.equals("greeting") && values.get("name").equals("tenant3")) {
+							throw new StackOverflowError();
+						}
+						resolve(nodeName, values);
+					});
+			fail("Expected the error to be thrown");
+		} catch (StackOverflowError e) {
+			//thrown on the calling thread, not reported as the failure of a tenant
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test(expected = StackOverflowError.class)
+	public void errorOnCallingThreadIsThrown() throws Exception {
+		new GraphBatch(structure()).execute(Collections.singletonList(tenant(0)), (nodeName, values) -> {
+			throw new StackOverflowError();
+		});
+	}
+
+	private static class TenantNode implements Graph.Payload {
+		private final String name;
+		private final Map<String, Object> values;
+
+		private TenantNode(String name, Map<String, Object> values) {
+			this.name = name;
+			this.values = values;
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class GraphComponentsTest {
+
+	/**
+	 * Islands: a -> b -> c, d -> c (one component of four), e -> f, and g on its own
+	 */
+	private static Graph<Node> islands() {
+		return new Graph.Builder<Node>()
+				.nodes(new Node("a"), new Node("b"), new Node("c"), new Node("d"), new Node("e"), new Node("f"), new Node("g"))
+				.connect(new Graph.Connection().from("a").to("b"))
+				.connect(new Graph.Connection().from("b").to("c"))
+				.connect(new Graph.Connection().from("d").to("c"))
+				.connect(new Graph.Connection().from("e").to("f"))
+				.build();
+	}
+
+	private static List<String> names(Graph<Node> component) {
+		ExecutionPlan<Node> plan = component.compile();
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < plan.size(); i++) {
+			names.add(plan.getName(i));
+		}
+		return names;
+	}
+
+	@Test
+	public void splitIntoWeaklyConnectedComponents() throws Exception {
+		List<Graph<Node>> components = islands().components();
+
+		assertThat(components.size(), is(3));
+		assertThat(names(components.get(0)), containsInAnyOrder("a", "b", "c", "d"));
+		assertThat(names(components.get(1)), contains("e", "f"));
+		assertThat(names(components.get(2)), contains("g"));
+		List<String> largest = names(components.get(0));
+		assertThat(largest.indexOf("b"), is(lessThan(largest.indexOf("c"))));
+		assertThat(components.get(0).compile().getPayload(0).getNodeName(), is(largest.get(0)));
+	}
+
+	@Test
+	public void componentsOfCompactGraph() throws Exception {
+		Graph<Node> graph = new Graph.Builder<Node>()
+				.compact()
+				.nodes(new Node("a"), new Node("b"), new Node("c"))
+				.connect(new Graph.Connection().from("c").to("a"))
+				.build();
+
+		List<List<String>> components = graph.components().stream()
+				.map(GraphComponentsTest::names)
+				.collect(Collectors.toList());
+		assertThat(components, contains(contains("c", "a"), contains("b")));
+	}
+
+	@Test
+	public void runComponentsConcurrently() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			List<String> run = Collections.synchronizedList(new ArrayList<>());
+			new ComponentRunner<>(islands(), executor).execute((nodeName, node) -> run.add(nodeName));
+
+			assertThat(run, containsInAnyOrder("a", "b", "c", "d", "e", "f", "g"));
+			assertThat(run.indexOf("a"), is(lessThan(run.indexOf("b"))));
+			assertThat(run.indexOf("d"), is(lessThan(run.indexOf("c"))));
+			assertThat(run.indexOf("e"), is(lessThan(run.indexOf("f"))));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void failedComponentDoesNotStopOthers() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<String> run = Collections.synchronizedList(new ArrayList<>());
+			new ComponentRunner<>(islands(), executor).execute((nodeName, node) -> {
+				if (nodeName.equals("b") || nodeName.equals("e")) {
+					throw new CoreException(nodeName + " failed");
+				}
+				run.add(nodeName);
+			});
+			fail("Expected the failures to be reported");
+		} catch (CoreException e) {
+			assertThat(e.getMessage(), is("2 of 3 components failed"));
+			assertThat(e.getSuppressed().length, is(1));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void errorInComponentIsReported() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			new ComponentRunner<>(islands(), executor).execute((nodeName, node) -> {
+				if (nodeName.equals("g")) {
+					throw new StackOverflowError();
+				}
+			});
+			fail("Expected the error to be reported");
+		} catch (CoreException e) {
+			assertThat(e.getMessage(), is("1 of 3 components failed"));
+			assertThat(e.getCause() instanceof StackOverflowError, is(true));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static class Node implements Graph.Payload {
+		private final String name;
+
+		private Node(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Graphs of large property sets.  How long they take to build is measured by {@link GraphScalingBenchmark}.
+ */
+public class GraphScalingTest {
+	private static final Pattern VARIABLE = Pattern.compile(PropertyGraphFactoryTest.JEXL_VARIABLE);
+
+	@Test
+	public void buildLargeGraph() throws Exception {
+		int size = 20_000;
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put(key(0), "root");
+		for (int i = 1; i < size; i++) {
+			//every property references the property at half its index, so the graph fans out like a binary tree
+			propertyMap.put(key(i), "${" + key((i - 1) / 2) + "}");
+		}
+
+		Graph<SharedMapCtx> graph = make(new PropertyGraphFactory(VARIABLE, 1), propertyMap);
+
+		assertThat(graph.getChildMap().keySet(), contains(key(0)));
+		for (int i = 0; i < size; i++) {
+			Set<String> dependents = new HashSet<>();
+			for (int dependent = i * 2 + 1; dependent <= i * 2 + 2 && dependent < size; dependent++) {
+				dependents.add(key(dependent));
+			}
+			assertThat(graph.find(key(i)).getChildMap().keySet(), is(dependents));
+		}
+		assertThat(graph.compile().size(), is(size));
+	}
+
+	@Test
+	public void parallelTokenizing() throws Exception {
+		int size = 20_000;
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put(key(0), "root");
+		for (int i = 1; i < size; i++) {
+			//as in real property files, most values are plain text and some reference several other properties
+			propertyMap.put(i % 7 == 0 ? key(i) + ".format" : key(i), i % 4 == 0
+					? "${" + key((i - 1) / 2) + "} and ${" + key(i / 3) + "} on ${" + key(i / 5) + "}"
+					: "a plain value of some length that references nothing at all, number " + i);
+		}
+		//a reference to a property that is not in the map
+		propertyMap.put("missing.reference", "${not.a.property}");
+		VariableTransformationRule format = new VariableTransformationRule(Pattern.compile("\\.format$"),
+				TransformationOperation.upToLastIndexOf(".format"));
+
+		Graph<SharedMapCtx> expected = make(new PropertyGraphFactory(new VariableExtractionOptions(VARIABLE, 1), format), propertyMap);
+		Graph<SharedMapCtx> prefixed = make(new PropertyGraphFactory(new VariableExtractionOptions(VARIABLE, 1, "${"), format), propertyMap);
+		Graph<SharedMapCtx> parallel = make(new PropertyGraphFactory(new VariableExtractionOptions(VARIABLE, 1, "${"), format).parallel(), propertyMap);
+		for (Graph<SharedMapCtx> graph : Arrays.asList(prefixed, parallel)) {
+			assertThat(graph.getChildMap().keySet(), is(expected.getChildMap().keySet()));
+			ExecutionPlan<SharedMapCtx> expectedPlan = expected.compile();
+			ExecutionPlan<SharedMapCtx> plan = graph.compile();
+			assertThat(plan.size(), is(expectedPlan.size()));
+			for (int id = 0; id < expectedPlan.size(); id++) {
+				String name = expectedPlan.getName(id);
+				assertThat(name, graph.find(name).getChildMap().keySet(), is(expected.find(name).getChildMap().keySet()));
+				//each factory makes its own payloads, so only whether there is one is compared
+				assertThat(name, plan.getPayload(plan.indexOf(name)) == null, is(expectedPlan.getPayload(id) == null));
+			}
+		}
+	}
+
+	private static Graph<SharedMapCtx> make(PropertyGraphFactory factory, PropertyMap propertyMap) {
+		return factory.make(propertyMap, (s, o) -> new SharedMapCtx(s, propertyMap));
+	}
+
+	/**
+	 * Property keys may only contain lowercase letters, dots and dashes
+	 */
+	private static String key(int i) {
+		StringBuilder sb = new StringBuilder("key.");
+		for (char c : Integer.toString(i).toCharArray()) {
+			sb.append((char) ('a' + (c - '0')));
+		}
+		return sb.toString();
+	}
+}
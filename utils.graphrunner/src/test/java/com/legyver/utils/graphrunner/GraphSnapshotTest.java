@@ -0,0 +1,148 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.core.Is.is;
+
+public class GraphSnapshotTest {
+	private static final Pattern VARIABLE = Pattern.compile(PropertyGraphFactoryTest.JEXL_VARIABLE);
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final PropertyGraphFactory factory = new PropertyGraphFactory(new VariableExtractionOptions(VARIABLE, 1),
+			new VariableTransformationRule(Pattern.compile("\\.format$"), TransformationOperation.upToLastIndexOf(".format")));
+
+	private static PropertyMap properties() {
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put("major.version", "1");
+		propertyMap.put("minor.version", "0");
+		propertyMap.put("build.version.format", "${major.version}.${minor.version}");
+		propertyMap.put("build.message", "Build ${build.version}");
+		return propertyMap;
+	}
+
+	private static List<String> run(Graph<SharedMapCtx> graph) throws Exception {
+		List<String> run = new ArrayList<>();
+		graph.executeStrategy((nodeName, ctx) -> run.add(nodeName));
+		return run;
+	}
+
+	private Graph<SharedMapCtx> make(PropertyMap propertyMap, Path file) throws Exception {
+		return factory.make(propertyMap, (s, o) -> new SharedMapCtx(s, propertyMap), file);
+	}
+
+	@Test
+	public void snapshotIsLoadedInsteadOfScanning() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("graph.snapshot");
+		PropertyMap propertyMap = properties();
+		List<String> built = run(make(propertyMap, file));
+		assertThat(Files.exists(file), is(true));
+
+		List<String> loaded = run(make(propertyMap, file));
+		assertThat(loaded, is(built));
+		assertThat(loaded.indexOf("build.version"), is(built.indexOf("build.version")));
+
+		//a snapshot of the same properties with different connections shows the connections come from the snapshot
+		long hash = factory.snapshotHash(propertyMap);
+		new GraphSnapshot(new String[] {"build.message", "major.version"}, new int[] {0}, new int[] {1}, hash).write(file);
+		List<String> fromSnapshot = run(make(propertyMap, file));
+		assertThat(fromSnapshot.indexOf("build.message") < fromSnapshot.indexOf("major.version"), is(true));
+	}
+
+	@Test
+	public void changedPropertiesInvalidateSnapshot() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("graph.snapshot");
+		make(properties(), file);
+
+		PropertyMap propertyMap = properties();
+		propertyMap.put("major.version", "${minor.version}");
+		List<String> run = run(make(propertyMap, file));
+
+		assertThat(run.indexOf("minor.version") < run.indexOf("major.version"), is(true));
+		assertThat(GraphSnapshot.read(file, factory.snapshotHash(properties())) == null, is(true));
+	}
+
+	@Test
+	public void staleSnapshotIsReplacedOnceRead() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("graph.snapshot");
+		PropertyMap propertyMap = properties();
+		make(propertyMap, file);
+		//loaded, so read while the JVM that replaces it is still running
+		make(propertyMap, file);
+
+		propertyMap.put("minor.version", "${major.version}");
+		List<String> run = run(make(propertyMap, file));
+		assertThat(run.indexOf("major.version") < run.indexOf("minor.version"), is(true));
+		assertThat(GraphSnapshot.read(file, factory.snapshotHash(propertyMap)) == null, is(false));
+		//nothing keeps the file open once read
+		Files.delete(file);
+		assertThat(Files.exists(file), is(false));
+	}
+
+	@Test
+	public void corruptSnapshotIsRebuilt() throws Exception {
+		Path file = temporaryFolder.getRoot().toPath().resolve("graph.snapshot");
+		PropertyMap propertyMap = properties();
+		List<String> built = run(make(propertyMap, file));
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+
+		assertThat(run(make(propertyMap, file)), containsInAnyOrder(built.toArray()));
+		assertThat(Files.size(file), is((long) bytes.length));
+	}
+
+	@Test
+	public void hashIgnoresIterationOrder() {
+		PropertyMap first = new PropertyMap();
+		first.put("a", "1");
+		first.put("b", "${a}");
+		PropertyMap second = new PropertyMap();
+		second.put("b", "${a}");
+		second.put("a", "1");
+
+		assertThat(GraphSnapshot.hash(first, "x"), is(GraphSnapshot.hash(second, "x")));
+		assertThat(GraphSnapshot.hash(first, "x") == GraphSnapshot.hash(first, "y"), is(false));
+		second.put("a", "2");
+		assertThat(GraphSnapshot.hash(first, "x") == GraphSnapshot.hash(second, "x"), is(false));
+	}
+
+	@Test
+	public void loadLargeSnapshot() throws Exception {
+		int size = 100_000;
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put("key.a", "root");
+		for (int i = 1; i < size; i++) {
+			propertyMap.put("key." + letters(i), "prefix ${key." + letters((i - 1) / 2) + "} suffix");
+		}
+		Path file = temporaryFolder.getRoot().toPath().resolve("large.snapshot");
+		Graph<SharedMapCtx> built = make(propertyMap, file);
+		Graph<SharedMapCtx> loaded = make(propertyMap, file);
+
+		assertThat(loaded.compile().size(), is(built.compile().size()));
+		assertThat(run(loaded).get(0), is("key.a"));
+	}
+
+	/**
+	 * Property keys may only contain lowercase letters, dots and dashes
+	 */
+	private static String letters(int i) {
+		StringBuilder sb = new StringBuilder();
+		for (char c : Integer.toString(i).toCharArray()) {
+			sb.append((char) ('a' + (c - '0')));
+		}
+		return sb.toString();
+	}
+}
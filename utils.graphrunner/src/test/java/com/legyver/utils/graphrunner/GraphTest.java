@@ -3,8 +3,18 @@ package com.legyver.utils.graphrunner;
 import com.legyver.core.exception.CoreException;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 
 public class GraphTest {
@@ -83,6 +93,123 @@ public class GraphTest {
 		testData.assertABCRun();
 	}
 
+	@Test
+	public void runningCRunsTransitivePrerequisitesOnly() throws Exception {
+		ChainData chainData = new ChainData();
+		Graph<Evaluated> graph = chainData.makeGraph();
+		graph.setStrategy(new RunWithDependentsStrategy(chainData.c.name));
+		Counter counter = new Counter();
+
+		graph.executeStrategy((nodeName, evaluated) -> evaluated.count = counter.next());
+
+		assertThat(chainData.a.count, is(0));
+		assertThat(chainData.b.count, is(1));
+		assertThat(chainData.c.count, is(2));
+		assertThat(chainData.e.count, is(-1));
+	}
+
+	@Test
+	public void filterCopiesUpstreamClosure() throws Exception {
+		ChainData chainData = new ChainData();
+		Graph<Evaluated> graph = chainData.makeGraph();
+
+		Graph<Evaluated> filtered = graph.filter(chainData.c.name);
+		assertThat(filtered.getChildMap().keySet(), contains("A"));
+		assertThat(filtered.find("C"), is(notNullValue()));
+		assertThat(filtered.find("E"), is(nullValue()));
+		assertThat(filtered.find("A") == graph.find("A"), is(false));
+	}
+
+	@Test
+	public void reachabilityFollowsWholeBranch() throws Exception {
+		ChainData chainData = new ChainData();
+		Graph<Evaluated> graph = chainData.makeGraph();
+		ExecutionPlan<Evaluated> plan = graph.plan();
+
+		int[] downstream = graph.reachability().downstream(plan.indexOf("A"));
+		assertThat(downstream.length, is(4));
+		int[] upstream = graph.reachability().upstream(plan.indexOf("C"));
+		assertThat(upstream.length, is(3));
+		assertThat(Arrays.binarySearch(upstream, plan.indexOf("E")) < 0, is(true));
+		//in topological order
+		for (int i = 1; i < upstream.length; i++) {
+			assertThat(upstream[i] > upstream[i - 1], is(true));
+		}
+
+		//adding a connection invalidates the cached closures
+		graph.accept("C", "E");
+		assertThat(graph.reachability().upstream(graph.plan().indexOf("C")).length, is(4));
+	}
+
+	@Test
+	public void reachabilityCacheIsBounded() throws Exception {
+		int size = 100_000;
+		Graph<CompactGraphTest.Node> graph = CompactGraphTest.build(new Graph.Builder<>(), CompactGraphTest.nodes(size));
+		ExecutionPlan<CompactGraphTest.Node> plan = graph.plan();
+		GraphReachability reachability = graph.reachability();
+		//the nodes near the root of the tree reach about half of the tree or more each
+		for (int i = 0; i < 200; i++) {
+			int[] downstream = reachability.downstream(plan.indexOf("node." + i));
+			assertThat(downstream[0], is(plan.indexOf("node." + i)));
+			assertThat(reachability.cachedMembers() <= 2L * size, is(true));
+		}
+		assertThat(reachability.downstream(plan.indexOf("node.0")).length, is(size));
+		int[] upstream = reachability.upstream(plan.indexOf("node." + (size - 1)));
+		//node.99999 and its ancestors up to the root, one per level of the tree
+		assertThat(upstream.length, is(17));
+		assertThat(reachability.cachedMembers() <= 2L * size, is(true));
+	}
+
+	@Test
+	public void executionsHaveTheirOwnEvaluatedState() throws Exception {
+		ChainData chainData = new ChainData();
+		Graph<Evaluated> graph = chainData.makeGraph();
+		List<String> run = new ArrayList<>();
+		graph.executeStrategy((nodeName, evaluated) -> run.add(nodeName));
+
+		Graph<Evaluated> execution = graph.newExecution();
+		execution.executeStrategy((nodeName, evaluated) -> run.add(nodeName));
+		graph.executeStrategy((nodeName, evaluated) -> run.add(nodeName));
+		execution.executeStrategy((nodeName, evaluated) -> run.add(nodeName));
+
+		assertThat(run.size(), is(8));
+	}
+
+	@Test
+	public void concurrentExecutionsOfOneGraph() throws Exception {
+		ChainData chainData = new ChainData();
+		Graph<Evaluated> graph = chainData.makeGraph();
+		ExecutorService executorService = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<List<String>>> futures = new ArrayList<>();
+			for (int i = 0; i < 64; i++) {
+				futures.add(executorService.submit(() -> {
+					List<String> run = new ArrayList<>();
+					graph.newExecution().executeStrategy((nodeName, evaluated) -> run.add(nodeName));
+					return run;
+				}));
+			}
+			for (Future<List<String>> future : futures) {
+				List<String> run = future.get();
+				assertThat(run.size(), is(4));
+				assertThat(run.indexOf("B"), is(greaterThan(run.indexOf("A"))));
+				assertThat(run.indexOf("C"), is(greaterThan(run.indexOf("B"))));
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void runningFilteredGraphLeavesOriginalUnevaluated() throws Exception {
+		ChainData chainData = new ChainData();
+		Graph<Evaluated> graph = chainData.makeGraph();
+		List<String> run = new ArrayList<>();
+		graph.filter(chainData.c.name).executeStrategy((nodeName, evaluated) -> run.add(nodeName));
+		graph.executeStrategy((nodeName, evaluated) -> run.add(nodeName));
+
+		assertThat(run.size(), is(7));
+	}
 
 	class Evaluated implements Graph.Payload {
 		final String name;
@@ -170,4 +297,29 @@ public class GraphTest {
 		}
 	}
 
+	/**
+	 * A before B before C.  E also depends on A.
+	 */
+	class ChainData {
+		Evaluated a = new Evaluated("A");
+		Evaluated b = new Evaluated("B");
+		Evaluated c = new Evaluated("C");
+		Evaluated e = new Evaluated("E");
+
+		Graph<Evaluated> makeGraph() {
+			return new Graph.Builder()
+					.nodes(a, b, c, e)
+					.connect(new Graph.Connection()
+							.from(a.getNodeName())
+							.to(b.getNodeName()))
+					.connect(new Graph.Connection()
+							.from(b.getNodeName())
+							.to(c.getNodeName()))
+					.connect(new Graph.Connection()
+							.from(a.getNodeName())
+							.to(e.getNodeName()))
+					.build();
+		}
+	}
+
 }
@@ -0,0 +1,115 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+public class MemoizingCommandTest {
+	private final Map<String, Object> values = new HashMap<>();
+	private final List<String> run = new ArrayList<>();
+	private Graph<SharedMapCtx> graph;
+	private MemoizingCommand<SharedMapCtx> memoizing;
+
+	/**
+	 * doubled = input * 2, label = "doubled: " + doubled
+	 */
+	@Before
+	public void setUp() {
+		values.put("input", 2);
+		graph = new Graph.Builder()
+				.nodes(new SharedMapCtx("input", values), new SharedMapCtx("doubled", values), new SharedMapCtx("label", values))
+				.connect(new Graph.Connection().from("input").to("doubled"))
+				.connect(new Graph.Connection().from("doubled").to("label"))
+				.build();
+		//only 'input' has a value of its own, the other nodes are computed from their prerequisites
+		NodeValueReader<SharedMapCtx> inputReader = (nodeName, ctx) -> "input".equals(nodeName) ? ctx.getValue() : null;
+		memoizing = new MemoizingCommand<>(graph, this::evaluate, inputReader, new ValueResult());
+	}
+
+	private void evaluate(String nodeName, SharedMapCtx ctx) {
+		run.add(nodeName);
+		switch (nodeName) {
+			case "doubled":
+				ctx.setValue((Integer) values.get("input") * 2);
+				break;
+			case "label":
+				ctx.setValue("doubled: " + values.get("doubled"));
+				break;
+		}
+	}
+
+	@Test
+	public void unchangedInputsAreNotRerun() throws Exception {
+		graph.executeStrategy(memoizing);
+		assertThat(memoizing.getMisses(), is(3L));
+
+		run.clear();
+		graph.resetEvaluated();
+		graph.executeStrategy(memoizing);
+
+		assertThat(run.isEmpty(), is(true));
+		assertThat(memoizing.getHits(), is(3L));
+		assertThat(values.get("label"), is("doubled: 4"));
+	}
+
+	@Test
+	public void changedInputsAreRerun() throws Exception {
+		graph.executeStrategy(memoizing);
+		run.clear();
+		values.put("input", 5);
+		values.remove("doubled");
+		values.remove("label");
+		graph.resetEvaluated();
+		graph.executeStrategy(memoizing);
+
+		assertThat(run, contains("input", "doubled", "label"));
+		assertThat(values.get("label"), is("doubled: 10"));
+
+		//switching back reuses the results stored for the original input
+		run.clear();
+		values.put("input", 2);
+		values.remove("doubled");
+		values.remove("label");
+		graph.resetEvaluated();
+		graph.executeStrategy(memoizing);
+		assertThat(run.isEmpty(), is(true));
+		assertThat(values.get("label"), is("doubled: 4"));
+	}
+
+	@Test
+	public void lruStoreEvictsEldest() {
+		LruMemoStore store = new LruMemoStore(2);
+		Fingerprint a = new Fingerprint(new Object[]{"a", 1});
+		Fingerprint b = new Fingerprint(new Object[]{"b", 1});
+		Fingerprint c = new Fingerprint(new Object[]{"c", 1});
+		store.put(a, new MemoStore.MemoizedResult("a"));
+		store.put(b, new MemoStore.MemoizedResult("b"));
+		store.get(a);
+		store.put(c, new MemoStore.MemoizedResult("c"));
+
+		assertThat(store.size(), is(2));
+		assertThat(store.get(b) == null, is(true));
+		assertThat(store.get(new Fingerprint(new Object[]{"a", 1})).getResult(), is("a"));
+	}
+
+	private class ValueResult implements NodeResultAccessor<SharedMapCtx> {
+		@Override
+		public Object readResult(String nodeName, SharedMapCtx payload) {
+			return payload.getValue();
+		}
+
+		@Override
+		public void restoreResult(String nodeName, SharedMapCtx payload, Object result) {
+			payload.setValue(result);
+		}
+	}
+}
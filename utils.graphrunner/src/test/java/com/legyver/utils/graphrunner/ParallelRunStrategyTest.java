@@ -0,0 +1,117 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class ParallelRunStrategyTest {
+
+	@Test
+	public void dependentsRunAfterPrerequisites() throws Exception {
+		Evaluated a = new Evaluated("A");
+		Evaluated b = new Evaluated("B");
+		Evaluated c = new Evaluated("C");
+		Evaluated d = new Evaluated("D");
+		Graph<Evaluated> graph = new Graph.Builder()
+				.nodes(a, b, c, d)
+				.connect(new Graph.Connection().from("A").to("C"))
+				.connect(new Graph.Connection().from("B").to("C"))
+				.connect(new Graph.Connection().from("C").to("D"))
+				.build();
+		graph.setStrategy(new ParallelRunStrategy());
+		AtomicInteger counter = new AtomicInteger();
+
+		graph.executeStrategy((nodeName, evaluated) -> evaluated.count = counter.getAndIncrement());
+
+		assertThat(counter.get(), is(4));
+		assertThat(c.count, is(greaterThan(a.count)));
+		assertThat(c.count, is(greaterThan(b.count)));
+		assertThat(d.count, is(greaterThan(c.count)));
+	}
+
+	@Test
+	public void wideGraphRunsEveryNodeOnce() throws Exception {
+		List<Evaluated> payloads = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			payloads.add(new Evaluated("node" + i));
+		}
+		Graph.Builder builder = new Graph.Builder().nodes(payloads.toArray(new Evaluated[0]));
+		//every node depends on the node at half its index, so the graph fans out like a binary tree
+		for (int i = 1; i < payloads.size(); i++) {
+			builder.connect(new Graph.Connection().from("node" + ((i - 1) / 2)).to("node" + i));
+		}
+		Graph<Evaluated> graph = builder.build();
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		try {
+			graph.setStrategy(new ParallelRunStrategy(executorService));
+			AtomicInteger counter = new AtomicInteger();
+			graph.executeStrategy((nodeName, evaluated) -> {
+				evaluated.timesRun.incrementAndGet();
+				evaluated.count = counter.getAndIncrement();
+			});
+
+			for (int i = 0; i < payloads.size(); i++) {
+				Evaluated evaluated = payloads.get(i);
+				assertThat(evaluated.timesRun.get(), is(1));
+				if (i > 0) {
+					assertThat(evaluated.count, is(greaterThan(payloads.get((i - 1) / 2).count)));
+				}
+			}
+		} finally {
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void failureStopsDependentsAndIsRethrown() throws Exception {
+		Evaluated a = new Evaluated("A");
+		Evaluated b = new Evaluated("B");
+		Evaluated c = new Evaluated("C");
+		Graph<Evaluated> graph = new Graph.Builder()
+				.nodes(a, b, c)
+				.connect(new Graph.Connection().from("A").to("B"))
+				.connect(new Graph.Connection().from("B").to("C"))
+				.build();
+		graph.setStrategy(new ParallelRunStrategy());
+		CoreException expected = new CoreException("B failed");
+
+		try {
+			graph.executeStrategy((nodeName, evaluated) -> {
+				if ("B".equals(nodeName)) {
+					throw expected;
+				}
+				evaluated.timesRun.incrementAndGet();
+			});
+			fail("Expected CoreException");
+		} catch (CoreException e) {
+			assertThat(e == expected, is(true));
+		}
+		assertThat(a.timesRun.get(), is(1));
+		assertThat(c.timesRun.get(), is(0));
+	}
+
+	private static class Evaluated implements Graph.Payload {
+		private final String name;
+		private final AtomicInteger timesRun = new AtomicInteger();
+		private volatile int count = -1;
+
+		private Evaluated(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getNodeName() {
+			return name;
+		}
+	}
+}
@@ -57,6 +57,28 @@ public class PropertyGraphFactoryTest {
 		}
 	}
 
+	@Test
+	public void createGraphWithTokenizer() throws Exception {
+		Properties p = new Properties();
+		p.setProperty("build.date.format","`@build.date.day@ @build.date.month@ @build.date.year@`");
+		p.setProperty("build.date.day","12");
+		p.setProperty("build.date.month","April");
+		p.setProperty("build.date.year","2020");
+		PropertyMap propertyMap = PropertyMap.of(p);
+
+		VariableTokenizer tokenizer = (value, variableNames) -> {
+			String[] parts = value.split("@");
+			for (int i = 1; i < parts.length - 1; i += 2) {
+				variableNames.accept(parts[i]);
+			}
+		};
+		PropertyGraphFactory factory = new PropertyGraphFactory(new VariableExtractionOptions(tokenizer));
+
+		Graph contextGraph = factory.make(propertyMap, (s, o) -> new SharedMapCtx(s, propertyMap));
+		Set<String> keySet = contextGraph.graph.keySet();
+		assertThat(keySet, containsInAnyOrder("build.date.day", "build.date.month", "build.date.year"));
+	}
+
 	@Test
 	public void createTwoLevelGraph() throws Exception {
 		Properties p = new Properties();
@@ -0,0 +1,226 @@
+package com.legyver.utils.graphrunner;
+
+import com.legyver.core.exception.CoreException;
+import com.legyver.utils.graphrunner.ctx.shared.SharedContextCommand;
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import com.legyver.utils.slel.ExpressionInterpreter;
+import com.legyver.utils.wrapadapt.WrapAdapter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class WorkerPoolTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private static final VariableTransformationRule FORMAT = new VariableTransformationRule(Pattern.compile("\\.format$"),
+			TransformationOperation.upToLastIndexOf(".format"));
+
+	/**
+	 * Evaluates x.format into x, as a process with no access to the calling process would
+	 */
+	public static class EvaluateFormat implements WorkerCommandFactory {
+		@Override
+		public GraphExecutedCommand<SharedMapCtx> newCommand(Map<String, Object> values) {
+			return new SharedContextCommand() {
+				@Override
+				public void executeString(String nodeName, String currentValue) throws CoreException {
+					if (FORMAT.matches(nodeName)) {
+						if (currentValue.contains("fail")) {
+							throw new CoreException("Unable to evaluate " + nodeName);
+						}
+						if (currentValue.startsWith("exit once ")) {
+							//dies the first time, as a worker process might, marking that it has in the file named
+							File marker = new File(currentValue.substring("exit once ".length()));
+							try {
+								if (marker.createNewFile()) {
+									System.exit(1);
+								}
+							} catch (IOException e) {
+								throw new CoreException(e);
+							}
+						}
+						if (currentValue.equals("exit")) {
+							System.exit(1);
+						}
+						if (currentValue.equals("hang")) {
+							try {
+								Thread.sleep(TimeUnit.MINUTES.toMillis(5));
+							} catch (InterruptedException e) {
+								throw new CoreException(e);
+							}
+						}
+						values.put(FORMAT.transform(nodeName), new ExpressionInterpreter(values).evaluate(currentValue));
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * The classpath of the test, found from the classes the workers need rather than java.class.path, which the test runner may not set
+	 */
+	private static String classpath() {
+		return Stream.of(WorkerPoolTest.class, ComponentWorker.class, CoreException.class, ExpressionInterpreter.class, WrapAdapter.class)
+				.map(type -> new File(type.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath())
+				.distinct()
+				.collect(Collectors.joining(File.pathSeparator));
+	}
+
+	private static Graph<SharedMapCtx> graph(PropertyMap propertyMap) {
+		PropertyGraphFactory factory = new PropertyGraphFactory(new VariableExtractionOptions(Pattern.compile(PropertyGraphFactoryTest.JEXL_VARIABLE), 1), FORMAT);
+		return factory.make(propertyMap, (s, o) -> new SharedMapCtx(s, propertyMap));
+	}
+
+	@Test
+	public void runComponentsInWorkerProcesses() throws Exception {
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put("major.version", "1");
+		propertyMap.put("minor.version", "0");
+		propertyMap.put("build.version.format", "${major.version}.${minor.version}");
+		propertyMap.put("build.message.format", "Build ${build.version}");
+		propertyMap.put("copyright.year", "2020");
+		propertyMap.put("copyright.format", "Copyright ${copyright.year}");
+		propertyMap.put("unrelated", "value");
+
+		try (WorkerPool workers = new WorkerPool(2, EvaluateFormat.class, classpath())) {
+			workers.execute(graph(propertyMap), propertyMap);
+			assertThat(propertyMap.get("build.version"), is("1.0"));
+			assertThat(propertyMap.get("build.message"), is("Build 1.0"));
+			assertThat(propertyMap.get("copyright"), is("Copyright 2020"));
+
+			//the workers are reused
+			propertyMap.put("copyright.year", "2021");
+			workers.execute(graph(propertyMap), propertyMap);
+			assertThat(propertyMap.get("copyright"), is("Copyright 2021"));
+		}
+	}
+
+	@Test
+	public void failedComponentDoesNotStopOthers() throws Exception {
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put("a.value", "1");
+		propertyMap.put("a.format", "${a.value} fail");
+		propertyMap.put("b.value", "2");
+		propertyMap.put("b.format", "${b.value}");
+
+		try (WorkerPool workers = new WorkerPool(1, EvaluateFormat.class, classpath())) {
+			workers.execute(graph(propertyMap), propertyMap);
+			fail("Expected the failure to be reported");
+		} catch (CoreException e) {
+			assertThat(e.getMessage(), is("1 of 2 components failed"));
+			assertThat(e.getCause().getMessage(), is("Component failed in worker process: " + new CoreException("Unable to evaluate a.format")));
+		}
+		assertThat(propertyMap.get("b"), is("2"));
+		assertThat(propertyMap.containsKey("a"), is(false));
+	}
+
+	@Test
+	public void valueThatCannotBeSentFailsOnlyItsComponent() throws Exception {
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put("a.value", new Object());
+		propertyMap.put("a.format", "${a.value}");
+		propertyMap.put("b.value", "2");
+		propertyMap.put("b.format", "${b.value}");
+
+		try (WorkerPool workers = new WorkerPool(1, EvaluateFormat.class, classpath())) {
+			try {
+				workers.execute(graph(propertyMap), propertyMap);
+				fail("Expected the failure to be reported");
+			} catch (CoreException e) {
+				assertThat(e.getMessage(), is("1 of 2 components failed"));
+				assertThat(e.getCause().getMessage(), is("Unable to send component to worker process"));
+			}
+			assertThat(propertyMap.get("b"), is("2"));
+
+			//the worker is still usable
+			propertyMap.remove("a.value");
+			propertyMap.put("a.format", "1");
+			workers.execute(graph(propertyMap), propertyMap);
+			assertThat(propertyMap.get("a"), is("1"));
+		}
+	}
+
+	@Test
+	public void deadWorkerIsReplacedAndItsComponentRunAgain() throws Exception {
+		File marker = new File(temporaryFolder.getRoot(), "died");
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put("a.format", "exit once " + marker.getPath());
+		propertyMap.put("b.value", "2");
+		propertyMap.put("b.format", "${b.value}");
+
+		try (WorkerPool workers = new WorkerPool(1, EvaluateFormat.class, classpath())) {
+			workers.execute(graph(propertyMap), propertyMap);
+			assertThat(marker.exists(), is(true));
+			assertThat(propertyMap.get("a"), is("exit once " + marker.getPath()));
+			assertThat(propertyMap.get("b"), is("2"));
+
+			//a component that kills every worker it is sent to is failed, and the pool carries on
+			propertyMap.put("a.format", "exit");
+			try {
+				workers.execute(graph(propertyMap), propertyMap);
+				fail("Expected the failure to be reported");
+			} catch (CoreException e) {
+				assertThat(e.getMessage(), is("1 of 2 components failed"));
+				assertThat(e.getCause().getMessage(), is("Worker process failed"));
+			}
+			propertyMap.put("a.format", "${b.value}");
+			workers.execute(graph(propertyMap), propertyMap);
+			assertThat(propertyMap.get("a"), is("2"));
+		}
+	}
+
+	@Test(timeout = 60_000)
+	public void interruptStopsTheWorkersBeforeReturning() throws Exception {
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put("a.format", "hang");
+		propertyMap.put("b.value", "2");
+		propertyMap.put("b.format", "${b.value}");
+
+		try (WorkerPool workers = new WorkerPool(2, EvaluateFormat.class, classpath())) {
+			AtomicReference<Throwable> thrown = new AtomicReference<>();
+			CountDownLatch returned = new CountDownLatch(1);
+			Thread caller = new Thread(() -> {
+				try {
+					workers.execute(graph(propertyMap), propertyMap);
+				} catch (Throwable e) {
+					thrown.set(e);
+				}
+				returned.countDown();
+			});
+			caller.start();
+			//b runs in the other worker, while a hangs
+			while (!propertyMap.containsKey("b")) {
+				Thread.sleep(10);
+			}
+			caller.interrupt();
+			assertThat(returned.await(30, TimeUnit.SECONDS), is(true));
+			assertThat(thrown.get().getMessage(), is("Interrupted while waiting for worker processes"));
+			//nothing is put into the map once execute has returned
+			Map<String, Object> after = new HashMap<>(propertyMap);
+			Thread.sleep(200);
+			assertThat(new HashMap<>(propertyMap), is(after));
+			assertThat(propertyMap.containsKey("a"), is(false));
+
+			//the killed workers are replaced by the next run
+			propertyMap.put("a.format", "${b.value}");
+			workers.execute(graph(propertyMap), propertyMap);
+			assertThat(propertyMap.get("a"), is("2"));
+		}
+	}
+}
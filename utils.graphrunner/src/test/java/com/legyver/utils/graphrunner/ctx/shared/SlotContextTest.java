@@ -0,0 +1,112 @@
+package com.legyver.utils.graphrunner.ctx.shared;
+
+import com.legyver.utils.graphrunner.Graph;
+import com.legyver.utils.graphrunner.ParallelRunStrategy;
+import com.legyver.utils.graphrunner.PropertyGraphFactory;
+import com.legyver.utils.graphrunner.PropertyMap;
+import com.legyver.utils.graphrunner.TransformationOperation;
+import com.legyver.utils.graphrunner.VariableExtractionOptions;
+import com.legyver.utils.graphrunner.VariableTransformationRule;
+import com.legyver.utils.slel.ExpressionInterpreter;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public class SlotContextTest {
+
+	@Test
+	public void payloadsAndMapViewShareValues() {
+		Map<String, Object> initial = new HashMap<>();
+		initial.put("a", 1);
+		initial.put("b", null);
+		SlotContext context = new SlotContext(initial);
+		SlotCtx a = context.newCtx("a");
+		SlotCtx b = context.newCtx("b");
+
+		assertThat(a.getValue(), is(1));
+		b.setValue("two");
+		assertThat(context.get(context.slotOf("b")), is("two"));
+		assertThat(context.asMap().get("b"), is("two"));
+		context.asMap().put("a", 3);
+		assertThat(a.getValue(), is(3));
+		assertThat(context.asMap().size(), is(2));
+	}
+
+	@Test
+	public void namesWithoutSlotAreKeptInMapView() {
+		SlotContext context = new SlotContext(new HashMap<>());
+		SlotCtx alias = context.newCtx("alias");
+		assertThat(context.slotOf("alias"), is(-1));
+
+		alias.setValue("value");
+		assertThat(context.asMap(), hasEntry("alias", "value"));
+		context.asMap().remove("alias");
+		assertThat(alias.getValue(), is(nullValue()));
+		assertThat(context.asMap().isEmpty(), is(true));
+	}
+
+	@Test
+	public void evaluatePropertyGraph() throws Exception {
+		PropertyMap propertyMap = new PropertyMap();
+		propertyMap.put("major.version", "1");
+		propertyMap.put("minor.version", "0");
+		propertyMap.put("build.version.format", "${major.version}.${minor.version}");
+		propertyMap.put("build.message.format", "Build ${build.version}");
+		SlotContext context = new SlotContext(propertyMap);
+		Map<String, Object> map = context.asMap();
+		VariableTransformationRule transformationRule = new VariableTransformationRule(Pattern.compile("\\.format$"),
+				TransformationOperation.upToLastIndexOf(".format"));
+		PropertyGraphFactory factory = new PropertyGraphFactory(
+				new VariableExtractionOptions(Pattern.compile("\\$\\{(([a-z\\.-])*)\\}"), 1, "${"), transformationRule);
+
+		Graph<SharedMapCtx> graph = factory.make(map, (s, o) -> context.newCtx(s));
+		graph.executeStrategy(new SharedContextCommand() {
+			@Override
+			public void executeString(String nodeName, String currentValue) {
+				if (transformationRule.matches(nodeName)) {
+					map.put(transformationRule.transform(nodeName), new ExpressionInterpreter(map).evaluate(currentValue));
+				}
+			}
+		});
+
+		assertThat(map.get("build.version"), is("1.0"));
+		assertThat(map.get("build.message"), is("Build 1.0"));
+		assertThat(map.get("build.version.format"), is("${major.version}.${minor.version}"));
+	}
+
+	@Test
+	public void concurrentContextUnderParallelRun() throws Exception {
+		Map<String, Object> initial = new HashMap<>();
+		int size = 10_000;
+		for (int i = 0; i < size; i++) {
+			initial.put("n" + i, null);
+		}
+		SlotContext context = new SlotContext(initial, true);
+		Graph.Builder<SlotCtx> builder = new Graph.Builder<>();
+		for (int i = 0; i < size; i++) {
+			builder.nodes(context.newCtx("n" + i));
+			if (i > 0) {
+				builder.connect(new Graph.Connection().from("n" + (i - 1) / 2).to("n" + i));
+			}
+		}
+		Graph<SlotCtx> graph = builder.build();
+		graph.setStrategy(new ParallelRunStrategy());
+		graph.executeStrategy((nodeName, ctx) -> {
+			int i = Integer.parseInt(nodeName.substring(1));
+			int parent = i == 0 ? 0 : (Integer) context.get(context.slotOf("n" + (i - 1) / 2));
+			ctx.setValue(parent + 1);
+		});
+
+		//each value is its depth in the tree
+		assertThat(context.asMap().get("n0"), is(1));
+		assertThat(context.asMap().get("n" + (size - 1)), is(32 - Integer.numberOfLeadingZeros(size)));
+		assertThat(context.asMap().size(), is(size));
+	}
+}
@@ -6,8 +6,17 @@ import com.legyver.utils.graphrunner.ctx.shared.SharedContextCommand;
 import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
 import com.legyver.utils.slel.ExpressionInterpreter;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,30 +42,166 @@ public class PropertyGraph {
 	 */
 	public void runGraph(OperationContext context) throws CoreException {
 		Pattern jexlVar = context.getVariablePattern();
-		VariableExtractionOptions variableExtractionOptions = context.getVariableExtractionOptions();
 		VariableTransformationRule variableTransformationRule = context.getVariableTransformationRule();
-
-		PropertyGraphFactory factory = new PropertyGraphFactory(variableExtractionOptions, variableTransformationRule);
-		Graph<SharedMapCtx> contextGraph = factory.make(map, (s, o) -> new SharedMapCtx(s, map));
+		Graph<SharedMapCtx> contextGraph = makeGraph(context, false);
+		ExpressionInterpreter expressionInterpreter = new ExpressionInterpreter(map);
 
 		contextGraph.executeStrategy(new SharedContextCommand() {
 			@Override
 			public void executeString(String nodeName, String currentValue) {
-				Matcher m = jexlVar.matcher(currentValue);
-				if (m.find()) {
-					ExpressionInterpreter expressionInterpreter = new ExpressionInterpreter(map);
-					String value = expressionInterpreter.evaluate(currentValue);
-					//update the map with the value
-					String key = nodeName;
-					//avoid overwriting the <transformationSuffix> property
-					if (variableTransformationRule.matches(nodeName)) {
-						key = variableTransformationRule.transform(nodeName);
+				evaluate(nodeName, currentValue, jexlVar, variableTransformationRule, expressionInterpreter, map);
+			}
+		});
+	}
+
+	/**
+	 * Run the graph a level at a time, evaluating the properties of each level concurrently.  The level of a property is one more
+	 * than the highest level of the properties it references, so the properties of a level are independent of each other.
+	 * Gives the same result as {@link #runGraph(OperationContext)}.  The property values are tokenized in parallel too.
+	 *
+	 * The results are kept in a concurrent map while the graph runs, and are put into the map once every level has been evaluated,
+	 * so the map is only ever changed by the calling thread.
+	 *
+	 * The levels only follow the references the tokenizer finds, while the interpreter reads any variable, ex: ${k1} when SLEL
+	 * variable names cannot hold digits.  So that such a read does not depend on which thread gets there first, the results of a
+	 * level are only seen once the whole level has been evaluated: a property read without being found by the tokenizer is seen
+	 * evaluated if it is in an earlier level, and as it was in the map otherwise.  {@link #runGraph(OperationContext)} sees it
+	 * evaluated if it happens to be run first, so the two may differ for such reads.
+	 * @param context the operation context to use when evaluating properties
+	 * @param executor the executor to evaluate the properties on
+	 * @throws CoreException if evaluating a property fails, with the failures of the other properties of its level suppressed,
+	 * or if interrupted while waiting for a level to finish
+	 */
+	public void runGraph(OperationContext context, Executor executor) throws CoreException {
+		Pattern jexlVar = context.getVariablePattern();
+		VariableTransformationRule variableTransformationRule = context.getVariableTransformationRule();
+		ExecutionPlan<SharedMapCtx> plan = makeGraph(context, true).compile();
+		Map<String, Object> results = new ConcurrentHashMap<>();
+		Map<String, Object> values = new ResultsOverMap(results, map);
+		ExpressionInterpreter expressionInterpreter = new ExpressionInterpreter(values);
+
+		int chunkCount = Runtime.getRuntime().availableProcessors();
+		for (int[] level : plan.levels()) {
+			Map<String, Object> levelResults = new ConcurrentHashMap<>();
+			List<CompletableFuture<Void>> chunks = new ArrayList<>();
+			int chunkSize = (level.length + chunkCount - 1) / chunkCount;
+			for (int start = 0; start < level.length; start += chunkSize) {
+				int from = start;
+				int to = Math.min(start + chunkSize, level.length);
+				Runnable chunk = () -> {
+					for (int i = from; i < to; i++) {
+						String nodeName = plan.getName(level[i]);
+						Object currentValue = values.get(nodeName);
+						if (plan.getPayload(level[i]) != null && currentValue instanceof String) {
+							evaluate(nodeName, (String) currentValue, jexlVar, variableTransformationRule, expressionInterpreter, levelResults);
+						}
 					}
-					map.put(key, value);
+				};
+				chunks.add(level.length <= chunkSize ? runNow(chunk) : CompletableFuture.runAsync(chunk, executor));
+			}
+			awaitLevel(chunks);
+			results.putAll(levelResults);
+		}
+		map.putAll(results);
+	}
+
+	private Graph<SharedMapCtx> makeGraph(OperationContext context, boolean parallel) {
+		PropertyGraphFactory factory = new PropertyGraphFactory(context.getVariableExtractionOptions(), context.getVariableTransformationRule());
+		if (parallel) {
+			factory.parallel();
+		}
+		return factory.make(map, (s, o) -> new SharedMapCtx(s, map));
+	}
+
+	/**
+	 * Evaluate a property, if it references other properties, and put the result under its key, or its transformed key
+	 */
+	private static void evaluate(String nodeName, String currentValue, Pattern jexlVar, VariableTransformationRule variableTransformationRule,
+								 ExpressionInterpreter expressionInterpreter, Map<String, Object> results) {
+		Matcher m = jexlVar.matcher(currentValue);
+		if (m.find()) {
+			String value = expressionInterpreter.evaluate(currentValue);
+			//update the map with the value
+			String key = nodeName;
+			//avoid overwriting the <transformationSuffix> property
+			if (variableTransformationRule.matches(nodeName)) {
+				key = variableTransformationRule.transform(nodeName);
+			}
+			results.put(key, value);
+		}
+	}
+
+	private static CompletableFuture<Void> runNow(Runnable chunk) {
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		try {
+			chunk.run();
+			done.complete(null);
+		} catch (RuntimeException | Error e) {
+			done.completeExceptionally(e);
+		}
+		return done;
+	}
+
+	private static void awaitLevel(List<CompletableFuture<Void>> chunks) throws CoreException {
+		CoreException failure = null;
+		for (CompletableFuture<Void> chunk : chunks) {
+			try {
+				chunk.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CoreException("Interrupted while waiting for properties to be evaluated", e);
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = new CoreException("Unable to evaluate properties", e.getCause());
+				} else {
+					failure.addSuppressed(e.getCause());
 				}
 			}
-		});
+		}
+		if (failure != null) {
+			throw failure;
+		}
 	}
 
+	/**
+	 * A view of the properties that evaluates each property only when it is read, instead of running the graph.
+	 * Use this when only a few of the properties are read.  See {@link ResolvingPropertyMap}
+	 * @param context the operation context to use when evaluating properties
+	 * @return the view of the evaluated properties.  The map itself is not changed
+	 */
+	public ResolvingPropertyMap resolveLazily(OperationContext context) {
+		return new ResolvingPropertyMap(map, context);
+	}
+
+	/**
+	 * The values of properties evaluated so far, read ahead of the values of the map they were evaluated from.
+	 * Only read while the graph runs, so only containsKey and get are needed
+	 */
+	private static class ResultsOverMap extends AbstractMap<String, Object> {
+		private final Map<String, Object> results;
+		private final Map<String, Object> map;
 
+		private ResultsOverMap(Map<String, Object> results, Map<String, Object> map) {
+			this.results = results;
+			this.map = map;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return results.containsKey(key) || map.containsKey(key);
+		}
+
+		@Override
+		public Object get(Object key) {
+			Object value = results.get(key);
+			return value != null ? value : map.get(key);
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			Map<String, Object> merged = new HashMap<>(map);
+			merged.putAll(results);
+			return merged.entrySet();
+		}
+	}
 }
@@ -0,0 +1,586 @@
+package com.legyver.utils.propcross;
+
+import com.legyver.core.exception.CoreException;
+import com.legyver.utils.graphrunner.DirtyPropagationStrategy;
+import com.legyver.utils.graphrunner.ExecutionPlan;
+import com.legyver.utils.graphrunner.Graph;
+import com.legyver.utils.graphrunner.PropertyGraphFactory;
+import com.legyver.utils.graphrunner.VariableTransformationRule;
+import com.legyver.utils.graphrunner.ctx.shared.SharedMapCtx;
+import com.legyver.utils.slel.ExpressionInterpreter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the evaluated properties of a set of property files up to date as the files change.
+ * When files change, only they are reloaded, and only the properties whose values changed, and those that depend on them, are
+ * evaluated again, giving the same values {@link PropertyGraph#runGraph(OperationContext)} would give for all the files.
+ *
+ * The evaluated properties are published as an immutable snapshot, replaced as a whole once an update has been evaluated,
+ * so readers never see a partly evaluated update.  Changes are watched for with a {@link WatchService} once {@link #start()} is
+ * called.  Editors often write a file several times when saving it, so changes are only applied once the files have been quiet
+ * for the debounce period.
+ *
+ * Where a key is in several files, the file given last wins, as in {@link com.legyver.utils.graphrunner.PropertyMap#of(Properties...)}.
+ * A file that does not exist, or is deleted, has no properties.
+ */
+public class PropertyWatcher implements Closeable {
+	/**
+	 * Default time the files must be quiet before changes are applied
+	 */
+	public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(200);
+
+	private final List<Path> files = new ArrayList<>();
+	private final OperationContext context;
+	private final Pattern variablePattern;
+	private final VariableTransformationRule variableTransformationRule;
+	private final Map<Path, Map<String, Object>> fileValues = new HashMap<>();
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private DirtyPropagationStrategy strategy = new DirtyPropagationStrategy();
+	/**
+	 * The properties of all the files, as they are in the files
+	 */
+	private Map<String, Object> raw = new HashMap<>();
+	/**
+	 * The properties as evaluated, changed only while an update is evaluated
+	 */
+	private final Map<String, Object> working = new HashMap<>();
+	private final ExpressionInterpreter expressionInterpreter = new ExpressionInterpreter(new RecordingMap());
+	/**
+	 * The keys read by the last evaluation of each property, and the properties that read each key.  The graph only connects
+	 * properties by the variables the tokenizer finds, while the interpreter reads any variable, so reads are tracked as well
+	 */
+	private final Map<String, Set<String>> readsOf = new HashMap<>();
+	private final Map<String, Set<String>> readersOf = new HashMap<>();
+	/**
+	 * The reads of each property as they were before the update being evaluated, to put back if it fails
+	 */
+	private Map<String, Set<String>> readsUndo;
+	/**
+	 * The keys read by the property being evaluated
+	 */
+	private Set<String> reads;
+	/**
+	 * The property each transformed key is evaluated from, ex: subject is evaluated from subject.format
+	 */
+	private Map<String, String> sources = new HashMap<>();
+	private Graph<SharedMapCtx> graph;
+	private volatile Map<String, Object> snapshot;
+	private Duration debounce = DEFAULT_DEBOUNCE;
+	private WatchService watchService;
+	private Thread watchThread;
+
+	/**
+	 * Load and evaluate the properties of the files.  The files are not watched until {@link #start()} is called
+	 * @param context the operation context to use when evaluating properties
+	 * @param files the property files, in order of precedence, lowest first
+	 * @throws CoreException if a file cannot be read
+	 */
+	public PropertyWatcher(OperationContext context, Path... files) throws CoreException {
+		this.context = context;
+		this.variablePattern = context.getVariablePattern();
+		this.variableTransformationRule = context.getVariableTransformationRule();
+		for (Path file : files) {
+			Path path = file.toAbsolutePath().normalize();
+			this.files.add(path);
+			fileValues.put(path, load(path));
+		}
+		raw = merge();
+		working.putAll(raw);
+		rebuild();
+		resolve(raw.keySet());
+		snapshot = Collections.unmodifiableMap(new HashMap<>(working));
+	}
+
+	/**
+	 * Set the time the files must be quiet before changes are applied
+	 * @param debounce the quiet period
+	 * @return this watcher
+	 */
+	public PropertyWatcher debounce(Duration debounce) {
+		this.debounce = debounce;
+		return this;
+	}
+
+	/**
+	 * Add a listener to be told of each update
+	 * @param listener the listener
+	 * @return this watcher
+	 */
+	public PropertyWatcher addListener(Listener listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * The evaluated properties as of the last update
+	 * @return an immutable snapshot of the evaluated properties
+	 */
+	public Map<String, Object> getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Start watching the files on a daemon thread
+	 * @return this watcher
+	 * @throws CoreException if the directories of the files cannot be watched
+	 */
+	public synchronized PropertyWatcher start() throws CoreException {
+		if (watchThread != null) {
+			return this;
+		}
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			Set<Path> directories = new LinkedHashSet<>();
+			for (Path file : files) {
+				directories.add(file.getParent());
+			}
+			for (Path directory : directories) {
+				directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+						StandardWatchEventKinds.ENTRY_DELETE);
+			}
+		} catch (IOException e) {
+			close();
+			throw new CoreException("Unable to watch property files", e);
+		}
+		return start(watchService);
+	}
+
+	/**
+	 * Start taking changes from a watch service on a daemon thread
+	 * @param service the watch service the directories of the files are registered with
+	 * @return this watcher
+	 */
+	synchronized PropertyWatcher start(WatchService service) {
+		watchService = service;
+		watchThread = new Thread(() -> watch(service), "property-watcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+		return this;
+	}
+
+	/**
+	 * Stop watching the files
+	 */
+	@Override
+	public void close() {
+		Thread thread;
+		synchronized (this) {
+			thread = watchThread;
+			watchThread = null;
+			if (watchService != null) {
+				try {
+					watchService.close();
+				} catch (IOException e) {
+					//the thread stops once the service is closed, or when the JVM exits as it is a daemon
+				}
+				watchService = null;
+			}
+		}
+		if (thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(5));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Reload files now, without waiting for them to be seen to change, and publish the update
+	 * @param changedFiles the files to reload.  Files not given when the watcher was made are ignored
+	 * @return the keys whose evaluated values changed
+	 * @throws CoreException if a file cannot be read or the properties cannot be evaluated, in which case the watcher is left as it
+	 * was before the reload.  The changes of the files are only applied again by the next reload of those files, as they are
+	 * not read again by a reload of other files
+	 */
+	public synchronized Set<String> reload(Path... changedFiles) throws CoreException {
+		Map<Path, Map<String, Object>> reloaded = new HashMap<>();
+		for (Path file : changedFiles) {
+			Path path = file.toAbsolutePath().normalize();
+			if (files.contains(path)) {
+				reloaded.put(path, load(path));
+			}
+		}
+		if (reloaded.isEmpty()) {
+			return Collections.emptySet();
+		}
+		Map<Path, Map<String, Object>> previousFileValues = new HashMap<>();
+		for (Path path : reloaded.keySet()) {
+			previousFileValues.put(path, fileValues.get(path));
+		}
+		Map<String, Object> previous = raw;
+		Map<String, String> previousSources = sources;
+		Graph<SharedMapCtx> previousGraph = graph;
+		readsUndo = new HashMap<>();
+		Set<String> touched;
+		try {
+			fileValues.putAll(reloaded);
+			raw = merge();
+
+			Set<String> changedKeys = new HashSet<>(previous.keySet());
+			changedKeys.addAll(raw.keySet());
+			changedKeys.removeIf(key -> Objects.equals(previous.get(key), raw.get(key)));
+			if (changedKeys.isEmpty()) {
+				return Collections.emptySet();
+			}
+			if (connectionsChanged(previous, changedKeys)) {
+				//properties put back to their values in the files have changed too
+				changedKeys.addAll(rebuild());
+			}
+			touched = resolve(changedKeys);
+		} catch (Throwable e) {
+			//put everything back as it was after the last update, so the changes are found again by the next reload of the same files
+			fileValues.putAll(previousFileValues);
+			raw = previous;
+			sources = previousSources;
+			graph = previousGraph;
+			undoReads();
+			working.clear();
+			working.putAll(snapshot);
+			strategy = new DirtyPropagationStrategy();
+			graph.setStrategy(strategy);
+			throw e;
+		} finally {
+			readsUndo = null;
+		}
+
+		Map<String, Object> before = snapshot;
+		Set<String> updated = new HashSet<>();
+		for (String key : touched) {
+			if (before.containsKey(key) != working.containsKey(key) || !Objects.equals(before.get(key), working.get(key))) {
+				updated.add(key);
+			}
+		}
+		snapshot = Collections.unmodifiableMap(new HashMap<>(working));
+		Set<String> updatedKeys = Collections.unmodifiableSet(updated);
+		for (Listener listener : listeners) {
+			listener.updated(snapshot, updatedKeys);
+		}
+		return updatedKeys;
+	}
+
+	/**
+	 * Whether the changed keys change the connections of the graph: a property is added or removed, or a value references
+	 * different variables than it did.  A change to the text around the variables of a value leaves the graph as it is
+	 */
+	private boolean connectionsChanged(Map<String, Object> previous, Set<String> changedKeys) {
+		for (String key : changedKeys) {
+			if (!previous.containsKey(key) || !raw.containsKey(key)) {
+				return true;
+			}
+			Object before = previous.get(key);
+			Object after = raw.get(key);
+			//whether a value has variables decides whether the key it is transformed to is evaluated from it
+			if (hasVariables(before) != hasVariables(after) || !variables(before).equals(variables(after))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Set<String> variables(Object value) {
+		Set<String> variables = new HashSet<>();
+		context.getVariableExtractionOptions().tokenize(String.valueOf(value), variables::add);
+		return variables;
+	}
+
+	/**
+	 * Wait for changes to the files, and apply them once the files have been quiet for the debounce period
+	 */
+	private void watch(WatchService service) {
+		try {
+			while (true) {
+				Set<Path> changed = new LinkedHashSet<>();
+				collect(service.take(), changed);
+				WatchKey key;
+				//keep collecting until nothing has changed for the debounce period
+				while ((key = service.poll(debounce.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+					collect(key, changed);
+				}
+				if (!changed.isEmpty()) {
+					try {
+						reload(changed.toArray(new Path[0]));
+					} catch (CoreException | RuntimeException e) {
+						for (Listener listener : listeners) {
+							listener.failed(e);
+						}
+					}
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			//closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void collect(WatchKey key, Set<Path> changed) {
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.context() instanceof Path) {
+				Path path = directory.resolve((Path) event.context()).toAbsolutePath().normalize();
+				if (files.contains(path)) {
+					changed.add(path);
+				}
+			}
+		}
+		key.reset();
+	}
+
+	private static Map<String, Object> load(Path file) throws CoreException {
+		Properties properties = new Properties();
+		try (InputStream inputStream = Files.newInputStream(file)) {
+			properties.load(inputStream);
+		} catch (NoSuchFileException e) {
+			return Collections.emptyMap();
+		} catch (IOException e) {
+			throw new CoreException("Unable to read property file " + file, e);
+		}
+		Map<String, Object> values = new HashMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			values.put(name, properties.getProperty(name));
+		}
+		return values;
+	}
+
+	private Map<String, Object> merge() {
+		Map<String, Object> merged = new HashMap<>();
+		for (Path file : files) {
+			merged.putAll(fileValues.get(file));
+		}
+		return merged;
+	}
+
+	/**
+	 * Build the graph of the properties again.  Properties that are left out of the new graph, as they are part of a cycle or
+	 * depend on one, are never evaluated, so go back to their values in the files, unless they are transformed from a property
+	 * that is still evaluated
+	 * @return the keys put back to their values in the files
+	 */
+	private Set<String> rebuild() {
+		sources = new HashMap<>();
+		if (variableTransformationRule != null) {
+			for (Map.Entry<String, Object> entry : raw.entrySet()) {
+				if (variableTransformationRule.matches(entry.getKey()) && hasVariables(entry.getValue())) {
+					sources.put(variableTransformationRule.transform(entry.getKey()), entry.getKey());
+				}
+			}
+		}
+		PropertyGraphFactory factory = new PropertyGraphFactory(context.getVariableExtractionOptions(), variableTransformationRule);
+		graph = factory.make(raw, (s, o) -> new SharedMapCtx(s, working));
+		graph.setStrategy(strategy);
+		for (String name : new ArrayList<>(readsOf.keySet())) {
+			if (!raw.containsKey(name)) {
+				forgetReads(name);
+			}
+		}
+		ExecutionPlan<SharedMapCtx> plan = graph.compile();
+		Set<String> restored = new HashSet<>();
+		for (String key : new ArrayList<>(working.keySet())) {
+			if (plan.indexOf(key) < 0) {
+				restore(key);
+				restored.add(key);
+			}
+		}
+		return restored;
+	}
+
+	/**
+	 * Evaluate the properties whose values changed, and those that depend on them, in the same way
+	 * {@link PropertyGraph#runGraph(OperationContext)} evaluates every property
+	 * @param changedKeys the keys whose values changed
+	 * @return the keys whose evaluated values may have changed
+	 */
+	private Set<String> resolve(Set<String> changedKeys) throws CoreException {
+		Set<String> dirtyKeys = dirty(changedKeys);
+		Set<String> touched = new HashSet<>(dirtyKeys);
+		Set<String> written = new HashSet<>();
+		for (String key : dirtyKeys) {
+			restore(key);
+		}
+		strategy.markDirty(dirtyKeys.toArray(new String[0]));
+		graph.executeStrategy((nodeName, payload) -> {
+			if (payload == null) {
+				return;
+			}
+			touched.add(nodeName);
+			forgetReads(nodeName);
+			reads = new HashSet<>();
+			Object currentValue;
+			if (written.contains(nodeName)) {
+				currentValue = working.get(nodeName);
+			} else if (sources.containsKey(nodeName)) {
+				//in a full run, the property this key is transformed from always runs first and puts its result here
+				currentValue = expressionInterpreter.evaluate((String) raw.get(sources.get(nodeName)));
+				working.put(nodeName, currentValue);
+			} else {
+				restore(nodeName);
+				currentValue = raw.get(nodeName);
+			}
+			String key = nodeName;
+			if (variableTransformationRule != null && variableTransformationRule.matches(nodeName)) {
+				key = variableTransformationRule.transform(nodeName);
+			}
+			if (hasVariables(currentValue)) {
+				working.put(key, expressionInterpreter.evaluate((String) currentValue));
+				written.add(key);
+				touched.add(key);
+			} else if (!key.equals(nodeName) && !written.contains(key)) {
+				restore(key);
+				touched.add(key);
+			}
+			for (String read : reads) {
+				readersOf.computeIfAbsent(read, k -> new HashSet<>()).add(nodeName);
+			}
+			readsOf.put(nodeName, reads);
+			reads = null;
+		});
+		return touched;
+	}
+
+	/**
+	 * The keys to evaluate again once keys have changed: the keys themselves, the keys transformed from them, the keys they are
+	 * transformed from, as only their evaluation puts them back, and the properties whose evaluation read any of those, and so on
+	 */
+	private Set<String> dirty(Set<String> changedKeys) {
+		Set<String> dirty = new HashSet<>();
+		Deque<String> queue = new ArrayDeque<>(changedKeys);
+		while (!queue.isEmpty()) {
+			String key = queue.poll();
+			if (!dirty.add(key)) {
+				continue;
+			}
+			if (variableTransformationRule != null && variableTransformationRule.matches(key)) {
+				queue.add(variableTransformationRule.transform(key));
+			}
+			if (sources.containsKey(key)) {
+				queue.add(sources.get(key));
+			}
+			queue.addAll(readersOf.getOrDefault(key, Collections.emptySet()));
+		}
+		return dirty;
+	}
+
+	private void forgetReads(String nodeName) {
+		if (readsUndo != null && !readsUndo.containsKey(nodeName)) {
+			readsUndo.put(nodeName, readsOf.get(nodeName));
+		}
+		Set<String> previous = readsOf.remove(nodeName);
+		if (previous != null) {
+			for (String read : previous) {
+				Set<String> readers = readersOf.get(read);
+				readers.remove(nodeName);
+				if (readers.isEmpty()) {
+					readersOf.remove(read);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Put back the reads of the properties evaluated by a failed update
+	 */
+	private void undoReads() {
+		Map<String, Set<String>> undo = readsUndo;
+		readsUndo = null;
+		for (Map.Entry<String, Set<String>> entry : undo.entrySet()) {
+			forgetReads(entry.getKey());
+			if (entry.getValue() != null) {
+				for (String read : entry.getValue()) {
+					readersOf.computeIfAbsent(read, k -> new HashSet<>()).add(entry.getKey());
+				}
+				readsOf.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Put a key back to its value in the files, or remove it if it is in none
+	 */
+	private void restore(String key) {
+		if (raw.containsKey(key)) {
+			working.put(key, raw.get(key));
+		} else {
+			working.remove(key);
+		}
+	}
+
+	private boolean hasVariables(Object value) {
+		return value instanceof String && variablePattern.matcher((String) value).find();
+	}
+
+	/**
+	 * The evaluated properties as the interpreter sees them, recording the keys it reads
+	 */
+	private class RecordingMap extends AbstractMap<String, Object> {
+		@Override
+		public boolean containsKey(Object key) {
+			if (reads != null && key instanceof String) {
+				reads.add((String) key);
+			}
+			return working.containsKey(key);
+		}
+
+		@Override
+		public Object get(Object key) {
+			if (reads != null && key instanceof String) {
+				reads.add((String) key);
+			}
+			return working.get(key);
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return working.entrySet();
+		}
+	}
+
+	/**
+	 * Told of each update of the evaluated properties
+	 */
+	public interface Listener {
+		/**
+		 * Called on the watching thread once an update has been published
+		 * @param snapshot the new snapshot of the evaluated properties
+		 * @param changedKeys the keys whose evaluated values changed, were added or were removed
+		 */
+		void updated(Map<String, Object> snapshot, Set<String> changedKeys);
+
+		/**
+		 * Called on the watching thread when changed files cannot be applied.  The snapshot is left as it was, and the changes are
+		 * applied with the next update that succeeds, once the files next change
+		 * @param e the failure
+		 */
+		default void failed(Exception e) {
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package com.legyver.utils.propcross;
+
+import com.legyver.utils.graphrunner.VariableTransformationRule;
+import com.legyver.utils.slel.ExpressionInterpreter;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A read-only view of a map of properties that evaluates a property only when it is read, instead of evaluating every property
+ * up front as {@link PropertyGraph#runGraph(OperationContext)} does.  Reading a property evaluates the properties it references,
+ * and theirs, and nothing else; each is evaluated once and the result kept, so no graph of all the properties is built.
+ *
+ * Gives the same values runGraph would put in the map, whatever order the properties are read in: a property whose key matches
+ * the transformation rule is read through its transformed key, ex: subject from subject.format, and is itself left as it is.
+ * Properties that are part of a cycle, or reference one, are left as they are, as runGraph never runs them.  A property that
+ * references itself is evaluated once, reading its own value as it is, as the graph does not connect a node to itself.
+ *
+ * The view is safe for concurrent readers.  Two threads reading the same property at once may both evaluate it, to the same value.
+ * Changes to the underlying map after the view is made are not seen.
+ */
+public class ResolvingPropertyMap extends AbstractMap<String, Object> {
+	/**
+	 * Held in place of a null value, which the map of results cannot hold
+	 */
+	private static final Object NULL = new Object();
+
+	private final Map<String, Object> map;
+	private final Pattern variablePattern;
+	private final VariableTransformationRule variableTransformationRule;
+	/**
+	 * The property each transformed key is evaluated from, ex: subject is evaluated from subject.format
+	 */
+	private final Map<String, String> sources = new HashMap<>();
+	private final Set<String> keys;
+	private final Map<String, Object> resolved = new ConcurrentHashMap<>();
+	/**
+	 * The properties found to be part of a cycle, or to reference one, so that properties read after them that reference them
+	 * are left as they are too
+	 */
+	private final Set<String> unresolvable = ConcurrentHashMap.newKeySet();
+	/**
+	 * The properties being evaluated by each thread, to detect cycles
+	 */
+	private final ThreadLocal<Path> resolving = ThreadLocal.withInitial(Path::new);
+	private final ExpressionInterpreter expressionInterpreter;
+
+	/**
+	 * Construct a view that resolves properties on demand.  Only the keys are read up front, and the values of the properties
+	 * that match the transformation rule
+	 * @param map a map that corresponds to the union of any {@link java.util.Properties} to be resolved
+	 * @param context the operation context to use when evaluating properties
+	 */
+	public ResolvingPropertyMap(Map<String, Object> map, OperationContext context) {
+		this.map = map;
+		this.variablePattern = context.getVariablePattern();
+		this.variableTransformationRule = context.getVariableTransformationRule();
+		Set<String> keys = new LinkedHashSet<>(map.keySet());
+		if (variableTransformationRule != null) {
+			for (String key : map.keySet()) {
+				if (variableTransformationRule.matches(key) && hasVariables(map.get(key))) {
+					String transformed = variableTransformationRule.transform(key);
+					sources.put(transformed, key);
+					keys.add(transformed);
+				}
+			}
+		}
+		this.keys = Collections.unmodifiableSet(keys);
+		this.expressionInterpreter = new ExpressionInterpreter(this);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return keys.contains(key);
+	}
+
+	/**
+	 * Get the evaluated value of a property, evaluating it and the properties it references if they have not been already
+	 * @param key the key of the property
+	 * @return the evaluated value, or null if there is no such property
+	 */
+	@Override
+	public Object get(Object key) {
+		if (!keys.contains(key)) {
+			return null;
+		}
+		String name = (String) key;
+		Path path = resolving.get();
+		Object value;
+		if (path.names.isEmpty()) {
+			try {
+				value = resolve(name, path);
+			} catch (Cycle e) {
+				return map.get(name);
+			}
+		} else if (name.equals(path.innermost) && !sources.containsKey(name)) {
+			//a property that references itself reads its own value as it is
+			return map.get(name);
+		} else {
+			//read by the evaluation of another property, so a cycle must reach every property waiting on this one
+			value = resolve(name, path);
+		}
+		return value == NULL ? null : value;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return keys;
+	}
+
+	@Override
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * Iterating the entries evaluates every property
+	 * @return the entries
+	 */
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new AbstractSet<Entry<String, Object>>() {
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				Iterator<String> names = keys.iterator();
+				return new Iterator<Entry<String, Object>>() {
+					@Override
+					public boolean hasNext() {
+						return names.hasNext();
+					}
+
+					@Override
+					public Entry<String, Object> next() {
+						String name = names.next();
+						return new SimpleImmutableEntry<>(name, get(name));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.size();
+			}
+		};
+	}
+
+	/**
+	 * The number of properties evaluated so far
+	 * @return the count of evaluated properties
+	 */
+	public int getResolvedCount() {
+		return resolved.size();
+	}
+
+	private Object resolve(String name, Path path) {
+		Object value = resolved.get(name);
+		if (value != null) {
+			return value;
+		}
+		if (unresolvable.contains(name) || !path.names.add(name)) {
+			throw new Cycle();
+		}
+		String outer = path.innermost;
+		path.innermost = name;
+		try {
+			value = evaluate(name);
+		} catch (Cycle e) {
+			//part of, or waiting on, a cycle: left as it is, as are all the properties waiting on it
+			unresolvable.add(name);
+			throw e;
+		} finally {
+			path.names.remove(name);
+			path.innermost = outer;
+		}
+		return remember(name, value);
+	}
+
+	private Object evaluate(String name) {
+		String source = sources.get(name);
+		if (source != null) {
+			return expressionInterpreter.evaluate((String) map.get(source));
+		}
+		Object value = map.get(name);
+		//the result of a property that matches the transformation rule is its transformed key, so it is left as it is
+		boolean transformed = variableTransformationRule != null && variableTransformationRule.matches(name);
+		if (!transformed && hasVariables(value)) {
+			return expressionInterpreter.evaluate((String) value);
+		}
+		return value;
+	}
+
+	private Object remember(String name, Object value) {
+		Object previous = resolved.putIfAbsent(name, value == null ? NULL : value);
+		return previous != null ? previous : (value == null ? NULL : value);
+	}
+
+	private boolean hasVariables(Object value) {
+		return value instanceof String && variablePattern.matcher((String) value).find();
+	}
+
+	/**
+	 * The properties being evaluated by a thread, and the innermost of them
+	 */
+	private static class Path {
+		private final Set<String> names = new HashSet<>();
+		private String innermost;
+	}
+
+	/**
+	 * Thrown when a property is read while it is being evaluated, and caught by the outermost read
+	 */
+	private static class Cycle extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private Cycle() {
+			super(null, null, false, false);
+		}
+	}
+}
@@ -24,7 +24,7 @@ public class SlelOperationContext implements OperationContext {
 	 */
 	public SlelOperationContext(String transformationSuffix) {
 		this.variablePattern = Pattern.compile(SLEL_VARIABLE);
-		this.variableExtractionOptions = new VariableExtractionOptions(variablePattern, 1);
+		this.variableExtractionOptions = new VariableExtractionOptions(variablePattern, 1, "${", new SlelVariableTokenizer());
 		String rulePattern = transformationSuffix + "$";
 		if (rulePattern.startsWith(".")) {
 			//escape the leading '.'
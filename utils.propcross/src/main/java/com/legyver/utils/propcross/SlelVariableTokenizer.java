@@ -0,0 +1,20 @@
+package com.legyver.utils.propcross;
+
+import com.legyver.utils.graphrunner.VariableTokenizer;
+import com.legyver.utils.slel.VariableScanner;
+
+import java.util.function.Consumer;
+
+/**
+ * Finds the SLEL variables of a value with the {@link VariableScanner#SLEL} scanner, which finds the same variables as
+ * {@link com.legyver.utils.slel.Patterns#SLEL_VARIABLE} without running a regular expression over every value
+ */
+class SlelVariableTokenizer implements VariableTokenizer {
+	@Override
+	public void tokenize(String value, Consumer<String> variableNames) {
+		VariableScanner.Cursor cursor = VariableScanner.SLEL.cursor(value);
+		while (cursor.find()) {
+			variableNames.accept(cursor.name());
+		}
+	}
+}
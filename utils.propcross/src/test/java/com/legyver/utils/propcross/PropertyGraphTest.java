@@ -1,13 +1,23 @@
 package com.legyver.utils.propcross;
 
 import com.legyver.utils.graphrunner.PropertyMap;
+import com.legyver.utils.graphrunner.VariableExtractionOptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
 
+import static com.legyver.utils.slel.Patterns.SLEL_VARIABLE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
@@ -49,6 +59,88 @@ public class PropertyGraphTest {
 		assertEquals("The quick red fox jumped over the lazy brown dog", sentence);
 	}
 
+	@Test
+	public void levelsEvaluatedConcurrentlyGiveSameResult() throws Exception {
+		Map<String, Object> sequential = new HashMap<>();
+		for (int i = 0; i < 2_000; i++) {
+			String name = name(i);
+			sequential.put(name + ".base", "value " + i);
+			//references the result of another .format property, 10 levels deep at most
+			String reference = i == 0 ? "the first" : "${" + name(i / 2) + "}";
+			sequential.put(name + ".format", "${" + name + ".base} of " + reference + " ${unknown}");
+			sequential.put(name + ".copy", "${" + name + "}");
+		}
+		Map<String, Object> concurrent = new HashMap<>(sequential);
+
+		new PropertyGraph(sequential).runGraph(new SlelOperationContext(".format"));
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			new PropertyGraph(concurrent).runGraph(new SlelOperationContext(".format"), executor);
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(sequential, concurrent);
+		assertEquals("value 3 of value 1 of value 0 of the first ${unknown} ${unknown} ${unknown}", concurrent.get(name(3) + ".copy"));
+	}
+
+	@Test
+	public void untokenizedReadsSeeOnlyEarlierLevels() throws Exception {
+		Map<String, Object> properties = new HashMap<>();
+		for (int i = 0; i < 500; i++) {
+			String name = name(i);
+			properties.put(name + ".a", "A");
+			properties.put(name + ".b", "B");
+			//the tokenizer does not find ${<name>1}, as SLEL variable names cannot hold digits, but the interpreter reads it
+			properties.put(name + "1", "${" + name + ".b}");
+			//in the same level as <name>1
+			properties.put(name + ".x.format", "${" + name + ".a} then ${" + name + "1}");
+			//two levels after <name>1
+			properties.put(name + ".y.format", "${" + name + ".x} and ${" + name + "1}");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			new PropertyGraph(properties).runGraph(new SlelOperationContext(".format"), executor);
+		} finally {
+			executor.shutdown();
+		}
+		for (int i = 0; i < 500; i++) {
+			String name = name(i);
+			assertEquals("B", properties.get(name + "1"));
+			assertEquals("A then ${" + name + ".b}", properties.get(name + ".x"), name);
+			assertEquals("A then ${" + name + ".b} and B", properties.get(name + ".y"), name);
+		}
+	}
+
+	@Test
+	public void slelContextKeepsTokenizerPatternAlongsideTokenizer() throws Exception {
+		VariableExtractionOptions options = new SlelOperationContext(".format").getVariableExtractionOptions();
+		assertEquals(SLEL_VARIABLE, options.getTokenizerPattern().pattern());
+		assertEquals(1, options.getGroup());
+		assertEquals("${", options.getVariablePrefix());
+
+		String value = "${a.b} and ${c} but not #{d} or ${e";
+		List<String> tokenized = new ArrayList<>();
+		options.getTokenizer().tokenize(value, tokenized::add);
+		List<String> matched = new ArrayList<>();
+		Matcher m = options.getTokenizerPattern().matcher(value);
+		while (m.find()) {
+			matched.add(m.group(options.getGroup()));
+		}
+		assertEquals(Arrays.asList("a.b", "c"), tokenized);
+		assertEquals(tokenized, matched);
+	}
+
+	/**
+	 * A property name for a number, in letters as SLEL variable names cannot hold digits
+	 */
+	private static String name(int i) {
+		StringBuilder name = new StringBuilder("p.");
+		for (char digit : String.valueOf(i).toCharArray()) {
+			name.append((char) ('a' + digit - '0'));
+		}
+		return name.toString();
+	}
+
 	@Test
 	public void i18nDate() throws Exception {
 
@@ -0,0 +1,347 @@
+package com.legyver.utils.propcross;
+
+import com.legyver.utils.graphrunner.PropertyMap;
+import com.legyver.utils.graphrunner.TransformationOperation;
+import com.legyver.utils.graphrunner.VariableExtractionOptions;
+import com.legyver.utils.graphrunner.VariableTransformationRule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.Watchable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PropertyWatcherTest {
+	private static final String[] SENTENCE_FILES = {"adjective", "directobject", "noun", "preposition", "sentence", "subject", "verb"};
+
+	@TempDir
+	Path directory;
+
+	private Path[] copySentenceFiles() throws IOException {
+		Path[] files = new Path[SENTENCE_FILES.length];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = directory.resolve(SENTENCE_FILES[i] + ".properties");
+			try (InputStream inputStream = PropertyWatcherTest.class.getResourceAsStream(SENTENCE_FILES[i] + ".properties")) {
+				Files.copy(inputStream, files[i]);
+			}
+		}
+		return files;
+	}
+
+	private static void write(Path file, String... keysAndValues) throws IOException {
+		Properties properties = new Properties();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+		}
+		try (OutputStream outputStream = Files.newOutputStream(file)) {
+			properties.store(outputStream, null);
+		}
+	}
+
+	/**
+	 * The properties of the files evaluated from scratch, as the watcher must give after any update
+	 */
+	private static Map<String, Object> runGraph(Path... files) throws Exception {
+		List<Properties> properties = new ArrayList<>();
+		for (Path file : files) {
+			Properties p = new Properties();
+			try (InputStream inputStream = Files.newInputStream(file)) {
+				p.load(inputStream);
+			} catch (NoSuchFileException e) {
+				//no properties
+			}
+			properties.add(p);
+		}
+		PropertyMap propertyMap = PropertyMap.of(properties.toArray(new Properties[0]));
+		new PropertyGraph(propertyMap).runGraph(new SlelOperationContext(".format"));
+		return new HashMap<>(propertyMap);
+	}
+
+	@Test
+	public void initialSnapshotIsEvaluated() throws Exception {
+		Path[] files = copySentenceFiles();
+		try (PropertyWatcher watcher = new PropertyWatcher(new SlelOperationContext(".format"), files)) {
+			assertEquals("The quick red fox jumped over the lazy brown dog", watcher.getSnapshot().get("sentence"));
+			assertEquals(runGraph(files), watcher.getSnapshot());
+			assertThrows(UnsupportedOperationException.class, () -> watcher.getSnapshot().put("sentence", "changed"));
+		}
+	}
+
+	@Test
+	public void onlyChangedKeysAndTheirDependentsAreUpdated() throws Exception {
+		Path[] files = copySentenceFiles();
+		try (PropertyWatcher watcher = new PropertyWatcher(new SlelOperationContext(".format"), files)) {
+			Map<String, Object> before = watcher.getSnapshot();
+			write(files[0], "subject.adjective1", "slow", "subject.adjective2", "red",
+					"direct.object.adjective1", "lazy", "direct.object.adjective2", "brown");
+
+			Set<String> changedKeys = watcher.reload(files[0]);
+			assertEquals(new HashSet<>(Arrays.asList("subject.adjective1", "subject", "sentence")), changedKeys);
+			assertEquals("The slow red fox jumped over the lazy brown dog", watcher.getSnapshot().get("sentence"));
+			//the previous snapshot is not changed
+			assertEquals("The quick red fox jumped over the lazy brown dog", before.get("sentence"));
+		}
+	}
+
+	@Test
+	public void reloadGivesSameValuesAsFullRun() throws Exception {
+		Random random = new Random(3);
+		Path[] files = {directory.resolve("a.properties"), directory.resolve("b.properties"), directory.resolve("c.properties")};
+		//k1 cannot be a SLEL variable name, so is not connected in the graph, but is still read by the interpreter
+		String[] keys = {"k.a", "k.b", "k.c", "k.d", "k.a.format", "k.b.format", "k.c.format", "k.e.format", "k1", "k1.format"};
+		for (Path file : files) {
+			write(file);
+		}
+		try (PropertyWatcher watcher = new PropertyWatcher(new SlelOperationContext(".format"), files)) {
+			for (int edit = 0; edit < 500; edit++) {
+				Path file = files[random.nextInt(files.length)];
+				if (random.nextInt(10) == 0) {
+					Files.deleteIfExists(file);
+				} else {
+					List<String> keysAndValues = new ArrayList<>();
+					for (String key : keys) {
+						if (random.nextInt(3) == 0) {
+							keysAndValues.add(key);
+							keysAndValues.add(random.nextBoolean() ? "v" + edit : "${" + keys[random.nextInt(keys.length)].replace(".format", "") + "} " + edit);
+						}
+					}
+					write(file, keysAndValues.toArray(new String[0]));
+				}
+				watcher.reload(file);
+
+				assertEquals(runGraph(files), watcher.getSnapshot(), "edit " + edit);
+			}
+		}
+	}
+
+	@Test
+	public void failedUpdateIsRolledBack() throws Exception {
+		Path[] files = copySentenceFiles();
+		CountingContext context = new CountingContext();
+		try (PropertyWatcher watcher = new PropertyWatcher(context, files)) {
+			write(files[6], "verb", "hopped");
+			//the first transformation finds the keys to evaluate again, the second fails while they are being evaluated
+			context.failAfter.set(1);
+			assertThrows(IllegalStateException.class, () -> watcher.reload(files[6]));
+			assertEquals("The quick red fox jumped over the lazy brown dog", watcher.getSnapshot().get("sentence"));
+
+			//an update of another file does not publish any of the failed update
+			write(files[3], "preposition", "under");
+			watcher.reload(files[3]);
+			assertEquals("jumped", watcher.getSnapshot().get("verb"));
+			assertEquals("The quick red fox jumped under the lazy brown dog", watcher.getSnapshot().get("sentence"));
+
+			//the failed changes are found again by the next reload of their file
+			Set<String> changedKeys = watcher.reload(files[6]);
+			assertEquals(new HashSet<>(Arrays.asList("verb", "sentence")), changedKeys);
+			assertEquals(runGraph(files), watcher.getSnapshot());
+		}
+	}
+
+	@Test
+	public void graphIsOnlyRebuiltWhenReferencesChange() throws Exception {
+		Path[] files = copySentenceFiles();
+		CountingContext context = new CountingContext();
+		try (PropertyWatcher watcher = new PropertyWatcher(context, files)) {
+			int tokenized = context.tokenized.get();
+			write(files[4], "sentence.format", "A ${subject} ${verb} ${preposition} the ${direct.object}");
+			watcher.reload(files[4]);
+			//only the value before and after the change
+			assertEquals(tokenized + 2, context.tokenized.get());
+			assertEquals("A quick red fox jumped over the lazy brown dog", watcher.getSnapshot().get("sentence"));
+
+			tokenized = context.tokenized.get();
+			write(files[4], "sentence.format", "A ${subject} ${verb} the ${direct.object}");
+			watcher.reload(files[4]);
+			assertTrue(context.tokenized.get() > tokenized + 2);
+			assertEquals(runGraph(files), watcher.getSnapshot());
+		}
+	}
+
+	@Test
+	public void watchedChangesAreDebounced() throws Exception {
+		Path[] files = copySentenceFiles();
+		FakeWatchService service = new FakeWatchService();
+		BlockingQueue<Set<String>> updates = new LinkedBlockingQueue<>();
+		try (PropertyWatcher watcher = new PropertyWatcher(new SlelOperationContext(".format"), files)) {
+			watcher.debounce(Duration.ofMillis(500))
+					.addListener((snapshot, changedKeys) -> updates.add(changedKeys));
+			//several writes in a row, each seen before the debounce period passes
+			write(files[6], "verb", "ran");
+			service.change(files[6]);
+			write(files[6], "verb", "leapt");
+			service.change(files[6]);
+			write(files[3], "preposition", "under");
+			service.change(files[3]);
+			watcher.start(service);
+
+			assertEquals(new HashSet<>(Arrays.asList("verb", "preposition", "sentence")), updates.poll(20, TimeUnit.SECONDS));
+			assertEquals("The quick red fox leapt under the lazy brown dog", watcher.getSnapshot().get("sentence"));
+			assertEquals(Arrays.asList(500L, 500L, 500L), service.pollTimeouts);
+
+			//a change after the quiet period is a second update
+			write(files[6], "verb", "hopped");
+			service.change(files[6]);
+			assertEquals(new HashSet<>(Arrays.asList("verb", "sentence")), updates.poll(20, TimeUnit.SECONDS));
+			assertTrue(updates.isEmpty());
+		}
+	}
+
+	/**
+	 * A SLEL context that counts the values tokenized, and whose transformation can be made to fail
+	 */
+	private static class CountingContext implements OperationContext {
+		private final SlelOperationContext slel = new SlelOperationContext(".format");
+		private final AtomicInteger tokenized = new AtomicInteger();
+		/**
+		 * The number of transformations to allow before one fails, or negative to never fail
+		 */
+		private final AtomicInteger failAfter = new AtomicInteger(-1);
+		private final VariableExtractionOptions variableExtractionOptions = new VariableExtractionOptions((value, variableNames) -> {
+			tokenized.incrementAndGet();
+			new SlelVariableTokenizer().tokenize(value, variableNames);
+		});
+		private final VariableTransformationRule variableTransformationRule = new VariableTransformationRule(Pattern.compile("\\.format$"),
+				original -> {
+					if (failAfter.getAndDecrement() == 0) {
+						throw new IllegalStateException("Transformation failed");
+					}
+					return TransformationOperation.upToLastIndexOf(".format").transform(original);
+				});
+
+		@Override
+		public Pattern getVariablePattern() {
+			return slel.getVariablePattern();
+		}
+
+		@Override
+		public VariableExtractionOptions getVariableExtractionOptions() {
+			return variableExtractionOptions;
+		}
+
+		@Override
+		public VariableTransformationRule getVariableTransformationRule() {
+			return variableTransformationRule;
+		}
+	}
+
+	/**
+	 * A watch service whose changes are given by the test.  Waiting for a change after one has been seen returns at once,
+	 * as if the debounce period had passed, so the batches do not depend on the timing of the file system
+	 */
+	private static class FakeWatchService implements WatchService {
+		private final BlockingQueue<WatchKey> keys = new LinkedBlockingQueue<>();
+		private final List<Long> pollTimeouts = new CopyOnWriteArrayList<>();
+		private volatile boolean closed;
+
+		private void change(Path file) {
+			keys.add(new FakeWatchKey(file));
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			keys.add(new FakeWatchKey(null));
+		}
+
+		@Override
+		public WatchKey poll() {
+			return next(keys.poll());
+		}
+
+		@Override
+		public WatchKey poll(long timeout, TimeUnit unit) {
+			pollTimeouts.add(unit.toMillis(timeout));
+			return next(keys.poll());
+		}
+
+		@Override
+		public WatchKey take() throws InterruptedException {
+			return next(keys.take());
+		}
+
+		private WatchKey next(WatchKey key) {
+			if (closed) {
+				throw new ClosedWatchServiceException();
+			}
+			return key;
+		}
+	}
+
+	private static class FakeWatchKey implements WatchKey {
+		private final Path file;
+
+		private FakeWatchKey(Path file) {
+			this.file = file;
+		}
+
+		@Override
+		public boolean isValid() {
+			return true;
+		}
+
+		@Override
+		public List<WatchEvent<?>> pollEvents() {
+			return Collections.singletonList(new WatchEvent<Path>() {
+				@Override
+				public Kind<Path> kind() {
+					return StandardWatchEventKinds.ENTRY_MODIFY;
+				}
+
+				@Override
+				public int count() {
+					return 1;
+				}
+
+				@Override
+				public Path context() {
+					return file.getFileName();
+				}
+			});
+		}
+
+		@Override
+		public boolean reset() {
+			return true;
+		}
+
+		@Override
+		public void cancel() {
+		}
+
+		@Override
+		public Watchable watchable() {
+			return file.getParent();
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.legyver.utils.propcross;
+
+import com.legyver.utils.graphrunner.PropertyMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResolvingPropertyMapTest {
+
+	private static PropertyMap sentenceProperties() throws IOException {
+		List<Properties> properties = new ArrayList<>();
+		for (String file : new String[] {"adjective", "directobject", "noun", "preposition", "sentence", "subject", "verb"}) {
+			try (InputStream inputStream = ResolvingPropertyMapTest.class.getResourceAsStream(file + ".properties")) {
+				Properties p = new Properties();
+				p.load(inputStream);
+				properties.add(p);
+			}
+		}
+		return PropertyMap.of(properties.toArray(new Properties[0]));
+	}
+
+	private static void assertSameValuesAsRunGraph(Map<String, Object> properties) throws Exception {
+		Map<String, Object> eager = new HashMap<>(properties);
+		new PropertyGraph(eager).runGraph(new SlelOperationContext(".format"));
+		ResolvingPropertyMap lazy = new PropertyGraph(new HashMap<>(properties)).resolveLazily(new SlelOperationContext(".format"));
+
+		assertTrue(lazy.keySet().containsAll(eager.keySet()));
+		for (String key : lazy.keySet()) {
+			assertEquals(eager.get(key), lazy.get(key), key);
+		}
+	}
+
+	/**
+	 * A property name for a number, in letters as SLEL variable names cannot hold digits
+	 */
+	private static String level(int i) {
+		StringBuilder name = new StringBuilder("level.");
+		for (char digit : String.valueOf(i).toCharArray()) {
+			name.append((char) ('a' + digit - '0'));
+		}
+		return name.toString();
+	}
+
+	@Test
+	public void quickRedFox() throws Exception {
+		PropertyMap propertyMap = sentenceProperties();
+		ResolvingPropertyMap resolved = new PropertyGraph(propertyMap).resolveLazily(new SlelOperationContext(".format"));
+
+		assertEquals("The quick red fox jumped over the lazy brown dog", resolved.get("sentence"));
+		//the map itself is not changed
+		assertNull(propertyMap.get("sentence"));
+	}
+
+	@Test
+	public void sameValuesAsRunGraph() throws Exception {
+		assertSameValuesAsRunGraph(sentenceProperties());
+	}
+
+	@Test
+	public void onlyReferencedPropertiesAreEvaluated() throws Exception {
+		ResolvingPropertyMap resolved = new ResolvingPropertyMap(sentenceProperties(), new SlelOperationContext(".format"));
+
+		assertEquals("quick red fox", resolved.get("subject"));
+		//subject and the three properties it references
+		assertEquals(4, resolved.getResolvedCount());
+	}
+
+	@Test
+	public void cyclesAreLeftAsTheyAre() throws Exception {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("a.format", "${b}");
+		properties.put("b.format", "${a}");
+		properties.put("c.format", "c of ${a}");
+		properties.put("d", "1");
+		properties.put("e.format", "e of ${d}");
+		properties.put("self", "${self}");
+		properties.put("selfish", "S ${selfish}");
+		//x -> z -> v -> x, with w on the cycle and u and t waiting on it
+		properties.put("x", "X ${z}");
+		properties.put("z", "Z ${v}");
+		properties.put("v", "V ${x}");
+		properties.put("w", "W ${v}");
+		properties.put("u", "U ${z}");
+		properties.put("t", "T ${w}");
+		ResolvingPropertyMap resolved = new ResolvingPropertyMap(properties, new SlelOperationContext(".format"));
+
+		assertNull(resolved.get("c"));
+		assertNull(resolved.get("a"));
+		assertEquals("${self}", resolved.get("self"));
+		assertEquals("S S ${selfish}", resolved.get("selfish"));
+		assertEquals("e of 1", resolved.get("e"));
+		assertSameValuesAsRunGraph(properties);
+
+		Map<String, Object> eager = new HashMap<>(properties);
+		new PropertyGraph(eager).runGraph(new SlelOperationContext(".format"));
+		List<String> order = new ArrayList<>(resolved.keySet());
+		Random random = new Random(7);
+		for (int run = 0; run < 50; run++) {
+			Collections.shuffle(order, random);
+			ResolvingPropertyMap lazy = new ResolvingPropertyMap(properties, new SlelOperationContext(".format"));
+			for (String key : order) {
+				assertEquals(eager.get(key), lazy.get(key), key + " read in order " + order);
+			}
+		}
+	}
+
+	@Test
+	public void concurrentReaders() throws Exception {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(level(0), "0");
+		for (int i = 1; i < 500; i++) {
+			properties.put(level(i) + ".format", "${" + level(i - 1) + "}");
+		}
+		ResolvingPropertyMap resolved = new ResolvingPropertyMap(properties, new SlelOperationContext(".format"));
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Callable<Object>> reads = new ArrayList<>();
+			for (int i = 0; i < 64; i++) {
+				String key = level(499 - i % 16);
+				reads.add(() -> resolved.get(key));
+			}
+			for (Future<Object> value : executor.invokeAll(reads)) {
+				assertEquals("0", value.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package com.legyver.utils.slel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Finding the variables of a large input with the scanner and with {@link Patterns#SLEL_VARIABLE}
+ */
+public class VariableScannerBenchmark {
+
+	@Test
+	public void fasterThanRegexOnLargeInput() {
+		Pattern pattern = Pattern.compile(Patterns.SLEL_VARIABLE);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; text.length() < 8_000_000; i++) {
+			text.append("property.").append(i).append(" = some text with $5 and {braces} then ${build.date.day} ${major.version}\n");
+		}
+		String input = text.toString();
+		for (int warmup = 0; warmup < 3; warmup++) {
+			VariableScannerTest.countRegex(pattern, input);
+			VariableScannerTest.count(VariableScanner.SLEL, input);
+		}
+		long regexNanos = Long.MAX_VALUE;
+		long scannerNanos = Long.MAX_VALUE;
+		for (int run = 0; run < 5; run++) {
+			long start = System.nanoTime();
+			VariableScannerTest.countRegex(pattern, input);
+			regexNanos = Math.min(regexNanos, System.nanoTime() - start);
+			start = System.nanoTime();
+			VariableScannerTest.count(VariableScanner.SLEL, input);
+			scannerNanos = Math.min(scannerNanos, System.nanoTime() - start);
+		}
+		System.out.println(String.format("Find variables in %d chars: regex=%dms, scanner=%dms",
+				input.length(), regexNanos / 1_000_000, scannerNanos / 1_000_000));
+
+		assertThat(scannerNanos).isLessThan(regexNanos);
+	}
+}
@@ -1,5 +1,8 @@
 package com.legyver.utils.slel;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.Map;
 
 /**
@@ -10,44 +13,126 @@ import java.util.Map;
  * @since 2.0
  */
 public class ExpressionInterpreter {
+	/**
+	 * The number of chars of an expression evaluated at a time when streaming
+	 */
+	private static final int STREAM_BUFFER_SIZE = 8192;
+
 	private final Map<String, ? extends Object> context;
+	private final TemplateCache templateCache;
+	private final VariableScanner scanner;
 
 	/**
-	 * Construct an ExpressionInterpreter with the specified context
+	 * Construct an ExpressionInterpreter with the specified context.  Expressions are compiled each time they are evaluated;
+	 * to evaluate the same expressions repeatedly, construct it with a {@link TemplateCache}
 	 * @param context a Map of values that contains variables
 	 */
 	public ExpressionInterpreter(Map<String, ? extends Object> context) {
+		this(context, VariableScanner.DEFAULT);
+	}
+
+	/**
+	 * Construct an ExpressionInterpreter with the specified context that recognises the variables a scanner finds, ex: #{name} or @name@
+	 * as well as ${name}.  Expressions are compiled each time they are evaluated
+	 * @param context a Map of values that contains variables
+	 * @param scanner the scanner of the variables of the expressions
+	 * @since 3.8
+	 */
+	public ExpressionInterpreter(Map<String, ? extends Object> context, VariableScanner scanner) {
+		this.context = context;
+		this.templateCache = null;
+		this.scanner = scanner;
+	}
+
+	/**
+	 * Construct an ExpressionInterpreter with the specified context and template cache.
+	 * The {@link VariableScanner} of the cache decides which variables are recognised, ex: #{name} or @name@ as well as ${name}
+	 * @param context a Map of values that contains variables
+	 * @param templateCache the cache of compiled expressions
+	 * @since 3.8
+	 */
+	public ExpressionInterpreter(Map<String, ? extends Object> context, TemplateCache templateCache) {
 		this.context = context;
+		this.templateCache = templateCache;
+		this.scanner = templateCache.getScanner();
+	}
+
+	/**
+	 * A cache of compiled expressions that interpreters on any thread may share, ex: new ExpressionInterpreter(context, getSharedCache()).
+	 * Only used by interpreters constructed with it
+	 * @return the shared cache
+	 * @since 3.8
+	 */
+	public static TemplateCache getSharedCache() {
+		return SharedCache.INSTANCE;
 	}
 
 	/**
 	 * Evaluate the expression.
+	 * Variables not in the context are left as they are, ex: ${unknown}.  A ${ with no closing } is not a variable.
 	 * @param expression the expression to be evaluated
 	 * @return evaluated expression
 	 */
 	public String evaluate(String expression) {
-		int indexStartEx = expression.indexOf(ExpressionVariable.STRING_VAR.getPrefix());
-		if (indexStartEx < 0) {
-			//base case: no expression
-			return expression;
+		Template template = templateCache != null ? templateCache.get(expression) : Template.compile(expression, scanner);
+		return template.render(context);
+	}
+
+	/**
+	 * Evaluate an expression read from a Reader, writing the result to an Appendable as it is evaluated, ex: a Writer to a file.
+	 * Memory use is bounded by the buffer size and the longest variable name in the context, not by the size of the expression.
+	 * Gives the same result as {@link #evaluate(String)} of the whole expression.  Only ${name} variables are recognised, so only
+	 * an interpreter with the default scanner can stream.
+	 * @param expression the expression to be evaluated
+	 * @param out where to write the evaluated expression
+	 * @throws IOException if the expression cannot be read or the result cannot be written
+	 * @throws IllegalStateException if the interpreter has a scanner other than {@link VariableScanner#DEFAULT}
+	 * @since 3.8
+	 */
+	public void evaluate(Reader expression, Appendable out) throws IOException {
+		checkStreamable();
+		StreamingEvaluation evaluation = new StreamingEvaluation(context, out);
+		char[] buffer = new char[STREAM_BUFFER_SIZE];
+		CharBuffer chunk = CharBuffer.wrap(buffer);
+		int read;
+		while ((read = expression.read(buffer)) >= 0) {
+			evaluation.feed(chunk, 0, read);
 		}
-		String left = expression.substring(0, indexStartEx);
-		String right = expression.substring(indexStartEx + ExpressionVariable.STRING_VAR.getPrefix().length());
-		int indexEndEx = right.indexOf(ExpressionVariable.STRING_VAR.getSuffix());
-		if (indexEndEx < 0) {
-			//unbalanced expression, don't treat as valid expression
-			return expression;
+		evaluation.finish();
+	}
+
+	/**
+	 * Evaluate an expression, writing the result to an Appendable as it is evaluated, ex: a Writer to a file.
+	 * As {@link #evaluate(Reader, Appendable)}, only an interpreter with the default scanner can stream
+	 * @param expression the expression to be evaluated
+	 * @param out where to write the evaluated expression
+	 * @throws IOException if the result cannot be written
+	 * @throws IllegalStateException if the interpreter has a scanner other than {@link VariableScanner#DEFAULT}
+	 * @since 3.8
+	 */
+	public void evaluate(CharSequence expression, Appendable out) throws IOException {
+		checkStreamable();
+		StreamingEvaluation evaluation = new StreamingEvaluation(context, out);
+		for (int start = 0; start < expression.length(); start += STREAM_BUFFER_SIZE) {
+			evaluation.feed(expression, start, Math.min(start + STREAM_BUFFER_SIZE, expression.length()));
 		}
-		String variable = right.substring(0, indexEndEx);
-		right = right.substring(indexEndEx + ExpressionVariable.STRING_VAR.getSuffix().length());
-		if (!context.containsKey(variable)) {
-			//no variable known, so skip it.
-			left = left + ExpressionVariable.STRING_VAR.getPrefix() + variable + ExpressionVariable.STRING_VAR.getSuffix();
-		} else {
-			Object value = context.get(variable);
-			left = left + value;
+		evaluation.finish();
+	}
+
+	/**
+	 * Streaming only recognises ${name} variables, so it would not give the same result as {@link #evaluate(String)} with any
+	 * other scanner
+	 */
+	private void checkStreamable() {
+		if (scanner != VariableScanner.DEFAULT) {
+			throw new IllegalStateException("Streaming evaluation only recognises ${name} variables, so requires VariableScanner.DEFAULT");
 		}
-		right = evaluate(right);
-		return left + right;
+	}
+
+	/**
+	 * Holds the shared cache, so it is only made when it is first asked for
+	 */
+	private static class SharedCache {
+		private static final TemplateCache INSTANCE = new TemplateCache();
 	}
 }
@@ -9,7 +9,19 @@ public enum ExpressionVariable {
 	 * A String variable
 	 * ex: "Hello ${name}"
 	 */
-	STRING_VAR("${","}");
+	STRING_VAR("${","}"),
+	/**
+	 * A variable in the #{ } form
+	 * ex: "Hello #{name}"
+	 * @since 3.8
+	 */
+	HASH_VAR("#{","}"),
+	/**
+	 * A variable between @ signs, as in Ant and Maven resource filtering
+	 * ex: "Hello @name@"
+	 * @since 3.8
+	 */
+	AT_VAR("@","@");
 	private final String prefix;
 	private final String suffix;
 
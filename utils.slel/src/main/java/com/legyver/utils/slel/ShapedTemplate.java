@@ -0,0 +1,139 @@
+package com.legyver.utils.slel;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A {@link Template} bound to the shape of the rows it is rendered with, so that each variable is rendered from its position in a
+ * row, without hashing its name.  Create one with {@link Template#shape(List)}.
+ * The template is a literal before each variable and after the last, with the position in the row of each variable between them.
+ * It is immutable, and may be shared between threads.
+ * @since 3.8
+ */
+public final class ShapedTemplate {
+	/**
+	 * The guess at the length of the value of each variable, used to size the result
+	 */
+	private static final int VARIABLE_LENGTH_ESTIMATE = 16;
+
+	/**
+	 * The literal before each variable, and after the last
+	 */
+	private final String[] literals;
+	/**
+	 * The position in the row of each variable
+	 */
+	private final int[] slots;
+	private final int rowLength;
+	private final int sizeEstimate;
+
+	ShapedTemplate(String[] literals, int[] slots, int rowLength) {
+		this.literals = literals;
+		this.slots = slots;
+		this.rowLength = rowLength;
+		int literalLength = 0;
+		for (String literal : literals) {
+			literalLength += literal.length();
+		}
+		this.sizeEstimate = literalLength + VARIABLE_LENGTH_ESTIMATE * slots.length;
+	}
+
+	/**
+	 * Render the template with a row of values
+	 * @param row the values, in the order of the shape
+	 * @return the rendered template
+	 */
+	public String render(Object[] row) {
+		return render(row, ShapedTemplate::get);
+	}
+
+	/**
+	 * Render the template with a row of any type
+	 * @param row the row
+	 * @param accessor reads the value at a position of the shape from the row
+	 * @param <R> the type of the row
+	 * @return the rendered template
+	 */
+	public <R> String render(R row, RowAccessor<R> accessor) {
+		StringBuilder sb = new StringBuilder(sizeEstimate);
+		render(row, accessor, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Render the template with a row of any type, appending the result to a StringBuilder
+	 * @param row the row
+	 * @param accessor reads the value at a position of the shape from the row
+	 * @param sb the StringBuilder to append to
+	 * @param <R> the type of the row
+	 */
+	public <R> void render(R row, RowAccessor<R> accessor, StringBuilder sb) {
+		sb.append(literals[0]);
+		for (int i = 0; i < slots.length; i++) {
+			sb.append(accessor.get(row, slots[i]));
+			sb.append(literals[i + 1]);
+		}
+	}
+
+	/**
+	 * Render the template for every row, spread across cores
+	 * @param rows the rows of values, each in the order of the shape
+	 * @return the rendered templates, in the order of the rows
+	 */
+	public List<String> renderAll(Iterable<Object[]> rows) {
+		return renderAll(rows, ShapedTemplate::get);
+	}
+
+	/**
+	 * Render the template for every row, spread across cores
+	 * @param rows the rows
+	 * @param accessor reads the value at a position of the shape from a row
+	 * @param <R> the type of a row
+	 * @return the rendered templates, in the order of the rows
+	 */
+	public <R> List<String> renderAll(Iterable<R> rows, RowAccessor<R> accessor) {
+		return renderAll(StreamSupport.stream(rows.spliterator(), false), accessor)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Render the template for every row of a stream, spread across cores.  The result is ordered like the rows, so it can be
+	 * written in order with forEachOrdered without collecting it.
+	 * @param rows the rows
+	 * @param accessor reads the value at a position of the shape from a row
+	 * @param <R> the type of a row
+	 * @return the rendered templates
+	 */
+	public <R> Stream<String> renderAll(Stream<R> rows, RowAccessor<R> accessor) {
+		return rows.parallel().map(row -> render(row, accessor));
+	}
+
+	/**
+	 * The number of values in a row of the shape
+	 * @return the row length
+	 */
+	public int getRowLength() {
+		return rowLength;
+	}
+
+	private static Object get(Object[] row, int slot) {
+		return row[slot];
+	}
+
+	/**
+	 * Reads the values of a row by their position in the shape
+	 * @param <R> the type of the row
+	 */
+	@FunctionalInterface
+	public interface RowAccessor<R> {
+		/**
+		 * Read a value of a row
+		 * @param row the row
+		 * @param slot the position of the value in the shape
+		 * @return the value
+		 */
+		Object get(R row, int slot);
+	}
+}
@@ -0,0 +1,131 @@
+package com.legyver.utils.slel;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Evaluation of an expression read in chunks, writing the result as it goes, so neither the expression nor the result is held in
+ * memory.  A variable may be split across chunks.  Gives the same result as {@link Template#render(Map)} of the whole expression.
+ *
+ * The name of a variable is held until its closing }.  A name longer than any key of the context cannot be known, so once a name
+ * is that long it is written as it is and the expression is copied up to the closing }, keeping memory bounded by the longest key.
+ */
+final class StreamingEvaluation {
+	private enum State {
+		/**
+		 * Copying literal text
+		 */
+		TEXT,
+		/**
+		 * After a $ that may start a variable
+		 */
+		DOLLAR,
+		/**
+		 * Reading the name of a variable
+		 */
+		NAME,
+		/**
+		 * Copying a variable that cannot be known up to its closing }
+		 */
+		UNKNOWN_NAME
+	}
+
+	private static final char DOLLAR = ExpressionVariable.STRING_VAR.getPrefix().charAt(0);
+	private static final char OPEN = ExpressionVariable.STRING_VAR.getPrefix().charAt(1);
+	private static final char CLOSE = ExpressionVariable.STRING_VAR.getSuffix().charAt(0);
+
+	private final Map<String, ?> context;
+	private final Appendable out;
+	private final int maxNameLength;
+	private final StringBuilder name = new StringBuilder();
+	private State state = State.TEXT;
+
+	StreamingEvaluation(Map<String, ?> context, Appendable out) {
+		this.context = context;
+		this.out = out;
+		int maxNameLength = 0;
+		for (String key : context.keySet()) {
+			if (key != null) {
+				maxNameLength = Math.max(maxNameLength, key.length());
+			}
+		}
+		this.maxNameLength = maxNameLength;
+	}
+
+	/**
+	 * Evaluate the next chunk of the expression
+	 * @param chunk the chunk
+	 * @param start the index of the first char of the chunk
+	 * @param end the index after the last char of the chunk
+	 * @throws IOException if the result cannot be written
+	 */
+	void feed(CharSequence chunk, int start, int end) throws IOException {
+		int textStart = start;
+		for (int i = start; i < end; i++) {
+			char c = chunk.charAt(i);
+			switch (state) {
+				case TEXT:
+					if (c == DOLLAR) {
+						out.append(chunk, textStart, i);
+						state = State.DOLLAR;
+					}
+					break;
+				case DOLLAR:
+					if (c == OPEN) {
+						state = State.NAME;
+					} else {
+						out.append(DOLLAR);
+						//the char may itself start a variable
+						state = State.TEXT;
+						textStart = i;
+						i--;
+					}
+					break;
+				case NAME:
+					if (c == CLOSE) {
+						String variable = name.toString();
+						name.setLength(0);
+						if (context.containsKey(variable)) {
+							out.append(String.valueOf(context.get(variable)));
+						} else {
+							//no variable known, so skip it.
+							out.append(ExpressionVariable.STRING_VAR.getPrefix()).append(variable).append(CLOSE);
+						}
+						state = State.TEXT;
+						textStart = i + 1;
+					} else if (name.length() == maxNameLength) {
+						out.append(ExpressionVariable.STRING_VAR.getPrefix()).append(name);
+						name.setLength(0);
+						state = State.UNKNOWN_NAME;
+						textStart = i;
+						i--;
+					} else {
+						name.append(c);
+					}
+					break;
+				case UNKNOWN_NAME:
+					if (c == CLOSE) {
+						state = State.TEXT;
+					}
+					break;
+			}
+		}
+		if (state == State.TEXT || state == State.UNKNOWN_NAME) {
+			out.append(chunk, textStart, end);
+		}
+	}
+
+	/**
+	 * Write what is left once the whole expression has been read.  A ${ with no closing } is not a variable, so is written as it is
+	 * @throws IOException if the result cannot be written
+	 */
+	void finish() throws IOException {
+		if (state == State.DOLLAR) {
+			out.append(DOLLAR);
+		} else if (state == State.NAME) {
+			out.append(ExpressionVariable.STRING_VAR.getPrefix()).append(name);
+		}
+		name.setLength(0);
+		state = State.TEXT;
+	}
+}
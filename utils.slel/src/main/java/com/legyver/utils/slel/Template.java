@@ -0,0 +1,232 @@
+package com.legyver.utils.slel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An expression parsed once into literal and variable segments, so it can be evaluated many times without parsing it again.
+ * Rendering is a single pass over the segments into a StringBuilder sized for the result.
+ * The template is immutable and may be shared between threads.
+ * @since 3.8
+ */
+public final class Template {
+	/**
+	 * The guess at the length of the value of each variable, used to size the result
+	 */
+	private static final int VARIABLE_LENGTH_ESTIMATE = 16;
+
+	private final String expression;
+	/**
+	 * The segments in order: the text of a literal, or the name of a variable
+	 */
+	private final String[] segments;
+	/**
+	 * The syntax of each variable segment, null for literals
+	 */
+	private final ExpressionVariable[] variables;
+	private final int variableCount;
+	private final int literalLength;
+
+	private Template(String expression, String[] segments, ExpressionVariable[] variables, int variableCount, int literalLength) {
+		this.expression = expression;
+		this.segments = segments;
+		this.variables = variables;
+		this.variableCount = variableCount;
+		this.literalLength = literalLength;
+	}
+
+	/**
+	 * Parse an expression into a template.
+	 * A ${ with no closing } after it is not a variable, so it and the rest of the expression are literal.
+	 * @param expression the expression
+	 * @return the template
+	 */
+	public static Template compile(String expression) {
+		return compile(expression, VariableScanner.DEFAULT);
+	}
+
+	/**
+	 * Parse an expression into a template, finding its variables with a scanner, ex: to recognise #{name} or @name@ as well as ${name}.
+	 * A prefix that the scanner does not find a variable for is literal.
+	 * @param expression the expression
+	 * @param scanner the scanner of the variables of the expression
+	 * @return the template
+	 */
+	public static Template compile(String expression, VariableScanner scanner) {
+		SegmentBuilder builder = new SegmentBuilder();
+		int position = 0;
+		VariableScanner.Cursor cursor = scanner.cursor(expression);
+		while (cursor.find()) {
+			builder.literal(expression, position, cursor.start());
+			builder.variable(cursor.name(), cursor.syntax());
+			position = cursor.end();
+		}
+		builder.literal(expression, position, expression.length());
+		return builder.build(expression);
+	}
+
+	/**
+	 * Partially evaluate the template: replace the variables known in a static context with their values, merging them with the
+	 * literals around them, so rendering the new template only looks up the variables that were not known.
+	 * Variables not in the static context stay variables, to be rendered, or left as they are, like any other.
+	 * @param staticContext the values that do not change between renderings
+	 * @return the partially evaluated template.  Its expression is the expression this template was compiled from
+	 */
+	public Template bind(Map<String, ?> staticContext) {
+		SegmentBuilder builder = new SegmentBuilder();
+		for (int i = 0; i < segments.length; i++) {
+			if (variables[i] == null) {
+				builder.literal(segments[i]);
+			} else if (staticContext.containsKey(segments[i])) {
+				builder.literal(String.valueOf(staticContext.get(segments[i])));
+			} else {
+				builder.variable(segments[i], variables[i]);
+			}
+		}
+		return builder.build(expression);
+	}
+
+	/**
+	 * Bind the template to the shape of the rows it will be rendered with: the names of the values of a row, in order, so that
+	 * rows can be given as arrays of values, or any other row type, and each variable is rendered from its position in the row.
+	 * Variables not in the shape are never known, so they are left as they are, ex: ${unknown}.
+	 * @param names the names of the values of a row, in order.  If a name appears more than once, its first position is used
+	 * @return the shaped template
+	 */
+	public ShapedTemplate shape(List<String> names) {
+		Map<String, Integer> positions = new HashMap<>();
+		for (int i = 0; i < names.size(); i++) {
+			positions.putIfAbsent(names.get(i), i);
+		}
+		List<String> literals = new ArrayList<>();
+		List<Integer> slots = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		for (int i = 0; i < segments.length; i++) {
+			Integer position = variables[i] != null ? positions.get(segments[i]) : null;
+			if (position == null) {
+				if (variables[i] != null) {
+					//no variable known, so skip it.
+					literal.append(variables[i].getPrefix()).append(segments[i]).append(variables[i].getSuffix());
+				} else {
+					literal.append(segments[i]);
+				}
+			} else {
+				literals.add(literal.toString());
+				slots.add(position);
+				literal.setLength(0);
+			}
+		}
+		literals.add(literal.toString());
+		int[] slotArray = new int[slots.size()];
+		for (int i = 0; i < slotArray.length; i++) {
+			slotArray[i] = slots.get(i);
+		}
+		return new ShapedTemplate(literals.toArray(new String[0]), slotArray, names.size());
+	}
+
+	/**
+	 * Bind the template to the shape of the rows it will be rendered with.  See {@link #shape(List)}
+	 * @param names the names of the values of a row, in order
+	 * @return the shaped template
+	 */
+	public ShapedTemplate shape(String... names) {
+		return shape(Arrays.asList(names));
+	}
+
+	/**
+	 * Render the template with the values of its variables.
+	 * A variable not in the context is left as it is, ex: ${unknown}.  A variable in the context with a null value is rendered as "null".
+	 * @param context a Map of values that contains variables
+	 * @return the rendered template
+	 */
+	public String render(Map<String, ?> context) {
+		if (segments.length == 1 && variables[0] == null) {
+			return segments[0];
+		}
+		StringBuilder sb = new StringBuilder(literalLength + VARIABLE_LENGTH_ESTIMATE * variableCount);
+		render(context, sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Render the template with the values of its variables, appending the result to a StringBuilder
+	 * @param context a Map of values that contains variables
+	 * @param sb the StringBuilder to append to
+	 */
+	public void render(Map<String, ?> context, StringBuilder sb) {
+		for (int i = 0; i < segments.length; i++) {
+			String segment = segments[i];
+			if (variables[i] == null) {
+				sb.append(segment);
+			} else if (context.containsKey(segment)) {
+				sb.append(context.get(segment));
+			} else {
+				//no variable known, so skip it.
+				sb.append(variables[i].getPrefix()).append(segment).append(variables[i].getSuffix());
+			}
+		}
+	}
+
+	/**
+	 * The expression the template was compiled from
+	 * @return the expression
+	 */
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * The number of variables in the template
+	 * @return the variable count
+	 */
+	public int getVariableCount() {
+		return variableCount;
+	}
+
+	/**
+	 * Collects the segments of a template, merging adjacent literals
+	 */
+	private static class SegmentBuilder {
+		private final List<String> segments = new ArrayList<>();
+		private final List<ExpressionVariable> variables = new ArrayList<>();
+		private final StringBuilder literal = new StringBuilder();
+		private int literalLength;
+
+		private void literal(String text) {
+			literal.append(text);
+		}
+
+		private void literal(String text, int start, int end) {
+			literal.append(text, start, end);
+		}
+
+		private void variable(String name, ExpressionVariable syntax) {
+			endLiteral();
+			segments.add(name);
+			variables.add(syntax);
+		}
+
+		private void endLiteral() {
+			if (literal.length() > 0) {
+				segments.add(literal.toString());
+				variables.add(null);
+				literalLength += literal.length();
+				literal.setLength(0);
+			}
+		}
+
+		private Template build(String expression) {
+			endLiteral();
+			int variableCount = 0;
+			for (ExpressionVariable variable : variables) {
+				if (variable != null) {
+					variableCount++;
+				}
+			}
+			return new Template(expression, segments.toArray(new String[0]), variables.toArray(new ExpressionVariable[0]), variableCount, literalLength);
+		}
+	}
+}
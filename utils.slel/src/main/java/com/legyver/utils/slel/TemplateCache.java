@@ -0,0 +1,193 @@
+package com.legyver.utils.slel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compiled {@link Template}s by expression, discarding the least recently used templates once it holds a maximum number of templates.
+ *
+ * Looking up a template takes no lock, so interpreters on many threads can share a cache.  An expression is only kept once it has
+ * been seen twice, so expressions evaluated once do not push out those evaluated repeatedly, and expressions longer than the
+ * maximum expression length are never kept.
+ * @since 3.8
+ */
+public class TemplateCache {
+	/**
+	 * Default number of templates kept
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1_000;
+	/**
+	 * Default length of the longest expression kept
+	 */
+	public static final int DEFAULT_MAX_EXPRESSION_LENGTH = 4_096;
+
+	private final Map<String, Entry> templates = new ConcurrentHashMap<>();
+	private final int maxEntries;
+	private final int maxExpressionLength;
+	private final VariableScanner scanner;
+	/**
+	 * The hashes of expressions seen once, by a slot picked from the hash.  Two expressions sharing a slot only mean one of them
+	 * must be seen again before it is kept
+	 */
+	private final AtomicIntegerArray seen;
+	/**
+	 * Advanced by two for each template kept, so templates used since then rank above it
+	 */
+	private final AtomicLong clock = new AtomicLong();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Construct a TemplateCache
+	 * @param maxEntries the maximum number of templates to keep
+	 */
+	public TemplateCache(int maxEntries) {
+		this(maxEntries, VariableScanner.DEFAULT);
+	}
+
+	/**
+	 * Construct a TemplateCache that compiles templates with a scanner, ex: to recognise #{name} or @name@ as well as ${name}
+	 * @param maxEntries the maximum number of templates to keep
+	 * @param scanner the scanner of the variables of the expressions
+	 */
+	public TemplateCache(int maxEntries, VariableScanner scanner) {
+		this(maxEntries, DEFAULT_MAX_EXPRESSION_LENGTH, scanner);
+	}
+
+	/**
+	 * Construct a TemplateCache that compiles templates with a scanner, keeping only expressions up to a length
+	 * @param maxEntries the maximum number of templates to keep
+	 * @param maxExpressionLength the length of the longest expression to keep; longer ones are compiled every time
+	 * @param scanner the scanner of the variables of the expressions
+	 */
+	public TemplateCache(int maxEntries, int maxExpressionLength, VariableScanner scanner) {
+		this.maxEntries = maxEntries;
+		this.maxExpressionLength = maxExpressionLength;
+		this.scanner = scanner;
+		this.seen = new AtomicIntegerArray(Integer.highestOneBit(Math.max(16, Math.min(1 << 16, maxEntries)) * 2));
+	}
+
+	/**
+	 * Construct a TemplateCache that keeps up to {@link #DEFAULT_MAX_ENTRIES} templates
+	 */
+	public TemplateCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Get the compiled template of an expression, compiling it if it is not already held
+	 * @param expression the expression
+	 * @return the template
+	 */
+	public Template get(String expression) {
+		Entry entry = templates.get(expression);
+		if (entry != null) {
+			hits.increment();
+			long now = clock.get();
+			//only written when it changes, so threads reading the same template do not contend for it
+			if (entry.used != now) {
+				entry.used = now;
+			}
+			return entry.template;
+		}
+		misses.increment();
+		//two threads compiling the same expression at once make equal templates
+		Template template = Template.compile(expression, scanner);
+		if (expression.length() <= maxExpressionLength && seenBefore(expression)) {
+			templates.put(expression, new Entry(template, clock.getAndAdd(2) + 1));
+			if (templates.size() > maxEntries) {
+				evict();
+			}
+		}
+		return template;
+	}
+
+	/**
+	 * Record an expression as seen
+	 * @return true if it had been seen already
+	 */
+	private boolean seenBefore(String expression) {
+		int hash = expression.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & (seen.length() - 1);
+		return seen.getAndSet(slot, hash) == hash;
+	}
+
+	/**
+	 * Remove the least recently used templates, a sixteenth of the cache at a time so the cost of sorting is shared by the
+	 * templates added until the next eviction
+	 */
+	private synchronized void evict() {
+		int excess = templates.size() - maxEntries;
+		if (excess <= 0) {
+			return;
+		}
+		//when each was used is copied first, as it changes while the templates are sorted
+		List<Used> entries = new ArrayList<>(templates.size());
+		templates.forEach((expression, entry) -> entries.add(new Used(expression, entry, entry.used)));
+		entries.sort(Comparator.comparingLong(used -> used.used));
+		int remove = Math.min(entries.size(), excess + maxEntries / 16);
+		for (int i = 0; i < remove; i++) {
+			templates.remove(entries.get(i).expression, entries.get(i).entry);
+		}
+	}
+
+	/**
+	 * The scanner the templates are compiled with
+	 * @return the scanner
+	 */
+	public VariableScanner getScanner() {
+		return scanner;
+	}
+
+	/**
+	 * The number of templates currently held
+	 * @return the number of templates
+	 */
+	public int size() {
+		return templates.size();
+	}
+
+	/**
+	 * The number of expressions whose template was already held
+	 * @return the hit count
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * The number of expressions that had to be compiled
+	 * @return the miss count
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	private static class Entry {
+		private final Template template;
+		private volatile long used;
+
+		private Entry(Template template, long used) {
+			this.template = template;
+			this.used = used;
+		}
+	}
+
+	private static class Used {
+		private final String expression;
+		private final Entry entry;
+		private final long used;
+
+		private Used(String expression, Entry entry, long used) {
+			this.expression = expression;
+			this.entry = entry;
+			this.used = used;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package com.legyver.utils.slel;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A hand-written scanner that finds the variables of several syntaxes, ex: ${name}, #{name} and @name@, in a single pass over a text.
+ * Variables are reported as spans of the text through a {@link Cursor}, so no objects are made while scanning unless the names are asked for.
+ *
+ * A variable is the prefix of one of its syntaxes, a name of zero or more name chars, and the suffix of the same syntax.
+ * The name ends at the first suffix after the prefix.  Where the prefixes of several syntaxes match at the same position, the syntax
+ * given first is tried first.  Scanning is linear in the length of the text, even when prefixes are never closed.
+ * The scanner is immutable and may be shared between threads; its cursors may not.
+ * @since 3.8
+ */
+public final class VariableScanner {
+	/**
+	 * Any char may be part of a name, as in {@link Template#compile(String)}
+	 */
+	public static final IntPredicate ANY_NAME_CHAR = c -> true;
+	/**
+	 * The lowercase letters, dot and dash, as in {@link Patterns#SLEL_VARIABLE}
+	 */
+	public static final IntPredicate SLEL_NAME_CHAR = c -> (c >= 'a' && c <= 'z') || c == '.' || c == '-';
+	/**
+	 * Finds ${name} variables the way {@link Template#compile(String)} does: the name is everything up to the first }
+	 */
+	public static final VariableScanner DEFAULT = new VariableScanner(ANY_NAME_CHAR, ExpressionVariable.STRING_VAR);
+	/**
+	 * Finds the same variables as {@link Patterns#SLEL_VARIABLE}
+	 */
+	public static final VariableScanner SLEL = new VariableScanner(SLEL_NAME_CHAR, ExpressionVariable.STRING_VAR);
+
+	/**
+	 * Chars below this are looked up in a table to decide if they may start a prefix
+	 */
+	private static final int TABLE_SIZE = 128;
+
+	private final IntPredicate nameChar;
+	private final ExpressionVariable[] syntaxes;
+	private final String[] prefixes;
+	private final String[] suffixes;
+	private final boolean[] prefixStarts = new boolean[TABLE_SIZE];
+	/**
+	 * True if a prefix starts with a char outside the table, so those chars must be checked against every prefix
+	 */
+	private final boolean prefixStartsOutsideTable;
+
+	/**
+	 * Construct a scanner for variables whose names may hold any char
+	 * @param syntaxes the syntaxes of the variables to find, in order of precedence
+	 */
+	public VariableScanner(ExpressionVariable... syntaxes) {
+		this(ANY_NAME_CHAR, syntaxes);
+	}
+
+	/**
+	 * Construct a scanner
+	 * @param nameChar the chars a name may hold.  A prefix followed by any other char before the suffix is not a variable
+	 * @param syntaxes the syntaxes of the variables to find, in order of precedence
+	 */
+	public VariableScanner(IntPredicate nameChar, ExpressionVariable... syntaxes) {
+		if (syntaxes.length == 0) {
+			throw new IllegalArgumentException("At least one syntax is required");
+		}
+		this.nameChar = nameChar;
+		this.syntaxes = syntaxes.clone();
+		this.prefixes = new String[syntaxes.length];
+		this.suffixes = new String[syntaxes.length];
+		boolean prefixStartsOutsideTable = false;
+		for (int i = 0; i < syntaxes.length; i++) {
+			prefixes[i] = syntaxes[i].getPrefix();
+			suffixes[i] = syntaxes[i].getSuffix();
+			char first = prefixes[i].charAt(0);
+			if (first < TABLE_SIZE) {
+				prefixStarts[first] = true;
+			} else {
+				prefixStartsOutsideTable = true;
+			}
+		}
+		this.prefixStartsOutsideTable = prefixStartsOutsideTable;
+	}
+
+	/**
+	 * Make a cursor over the variables of a text
+	 * @param text the text to scan
+	 * @return the cursor, positioned before the first variable
+	 */
+	public Cursor cursor(CharSequence text) {
+		return new Cursor().reset(text);
+	}
+
+	/**
+	 * Make a cursor with no text, to be given texts with {@link Cursor#reset(CharSequence)}, so that scanning many texts makes no objects
+	 * @return the cursor
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * True if the text holds at least one variable
+	 * @param text the text to scan
+	 * @return true if a variable is found
+	 */
+	public boolean containsVariable(CharSequence text) {
+		return cursor(text).find();
+	}
+
+	private static boolean regionMatches(CharSequence text, int offset, int end, String part) {
+		if (offset + part.length() > end) {
+			return false;
+		}
+		for (int i = 0; i < part.length(); i++) {
+			if (text.charAt(offset + i) != part.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Steps through the variables of a text, like {@link java.util.regex.Matcher#find()}.
+	 * The accessors describe the variable found by the last call to {@link #find()} that returned true.
+	 */
+	public final class Cursor {
+		/**
+		 * Per syntax, the position a failed name scan stopped at.  A prefix of the syntax whose name would start at or before that
+		 * position fails the same way, so is not scanned again
+		 */
+		private final int[] failedAt = new int[syntaxes.length];
+		private CharSequence text;
+		private int end;
+		private int position;
+		private int start = -1;
+		private int nameStart;
+		private int nameEnd;
+		private int variableEnd;
+		private int syntax;
+
+		private Cursor() {
+		}
+
+		/**
+		 * Scan another text from its beginning
+		 * @param text the text to scan
+		 * @return this cursor
+		 */
+		public Cursor reset(CharSequence text) {
+			this.text = text;
+			this.end = text.length();
+			this.position = 0;
+			this.start = -1;
+			for (int i = 0; i < failedAt.length; i++) {
+				failedAt[i] = -1;
+			}
+			return this;
+		}
+
+		/**
+		 * Find the next variable
+		 * @return true if a variable was found, false if there are no more
+		 */
+		public boolean find() {
+			for (int i = position; i < end; i++) {
+				char c = text.charAt(i);
+				if (c < TABLE_SIZE ? !prefixStarts[c] : !prefixStartsOutsideTable) {
+					continue;
+				}
+				for (int s = 0; s < prefixes.length; s++) {
+					String prefix = prefixes[s];
+					if (i + prefix.length() <= failedAt[s] || !regionMatches(text, i, end, prefix)) {
+						continue;
+					}
+					String suffix = suffixes[s];
+					int j = i + prefix.length();
+					while (j < end) {
+						if (regionMatches(text, j, end, suffix)) {
+							start = i;
+							nameStart = i + prefix.length();
+							nameEnd = j;
+							variableEnd = j + suffix.length();
+							syntax = s;
+							position = variableEnd;
+							return true;
+						}
+						if (!nameChar.test(text.charAt(j))) {
+							break;
+						}
+						j++;
+					}
+					failedAt[s] = j;
+				}
+			}
+			position = end;
+			start = -1;
+			return false;
+		}
+
+		/**
+		 * The index of the first char of the variable, its prefix
+		 * @return the start of the variable
+		 */
+		public int start() {
+			checkFound();
+			return start;
+		}
+
+		/**
+		 * The index after the last char of the variable, its suffix
+		 * @return the end of the variable
+		 */
+		public int end() {
+			checkFound();
+			return variableEnd;
+		}
+
+		/**
+		 * The index of the first char of the name of the variable
+		 * @return the start of the name
+		 */
+		public int nameStart() {
+			checkFound();
+			return nameStart;
+		}
+
+		/**
+		 * The index after the last char of the name of the variable
+		 * @return the end of the name
+		 */
+		public int nameEnd() {
+			checkFound();
+			return nameEnd;
+		}
+
+		/**
+		 * The syntax of the variable
+		 * @return the syntax
+		 */
+		public ExpressionVariable syntax() {
+			checkFound();
+			return syntaxes[syntax];
+		}
+
+		/**
+		 * The name of the variable.  Unlike the other accessors, this makes a String
+		 * @return the name
+		 */
+		public String name() {
+			checkFound();
+			return text.subSequence(nameStart, nameEnd).toString();
+		}
+
+		private void checkFound() {
+			if (start < 0) {
+				throw new IllegalStateException("No variable found");
+			}
+		}
+	}
+}
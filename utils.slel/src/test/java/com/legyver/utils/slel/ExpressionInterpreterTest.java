@@ -29,4 +29,40 @@ public class ExpressionInterpreterTest {
 		assertThat(result).isEqualTo("Hello World");
 	}
 
+	@Test
+	public void unknownVariableIsLeftAsIs() {
+		Map<String, String> context = new HashMap<>();
+		context.put("var1", "Hello");
+		ExpressionInterpreter expressionInterpreter = new ExpressionInterpreter(context);
+		String result = expressionInterpreter.evaluate("${var1} ${var2} ${var1");
+
+		assertThat(result).isEqualTo("Hello ${var2} ${var1");
+	}
+
+	@Test
+	public void compiledOnceRepeatedExpressionIsCached() {
+		TemplateCache templateCache = new TemplateCache();
+		Map<String, String> context = new HashMap<>();
+		context.put("var1", "Hello");
+		for (int i = 0; i < 4; i++) {
+			assertThat(new ExpressionInterpreter(context, templateCache).evaluate("${var1}!")).isEqualTo("Hello!");
+		}
+
+		//kept once seen a second time
+		assertThat(templateCache.getMisses()).isEqualTo(2);
+		assertThat(templateCache.getHits()).isEqualTo(2);
+	}
+
+	@Test
+	public void notCachedUnlessCacheGiven() {
+		Map<String, String> context = new HashMap<>();
+		context.put("var1", "Hello");
+		for (int i = 0; i < 3; i++) {
+			assertThat(new ExpressionInterpreter(context).evaluate("${var1} shared?")).isEqualTo("Hello shared?");
+		}
+
+		assertThat(ExpressionInterpreter.getSharedCache().getMisses()).isEqualTo(0);
+		assertThat(new ExpressionInterpreter(context, new VariableScanner(ExpressionVariable.AT_VAR)).evaluate("@var1@ ${var1}"))
+				.isEqualTo("Hello ${var1}");
+	}
 }
@@ -0,0 +1,74 @@
+package com.legyver.utils.slel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShapedTemplateTest {
+	private static final String EXPRESSION = "${id},${name} <${email}> ${unknown}${";
+
+	@Test
+	public void renderRowsByPosition() {
+		ShapedTemplate template = Template.compile(EXPRESSION).shape("id", "name", "email");
+
+		assertThat(template.render(new Object[] {1, "Ann", "ann@example.com"})).isEqualTo("1,Ann <ann@example.com> ${unknown}${");
+		assertThat(template.render(new Object[] {2, null, ""})).isEqualTo("2,null <> ${unknown}${");
+		assertThat(template.getRowLength()).isEqualTo(3);
+	}
+
+	@Test
+	public void sameResultAsRenderingWithMap() {
+		String[] shape = {"email", "id", "name", "id"};
+		Object[] row = {"bob@example.com", 7, "Bob", 8};
+		Map<String, Object> context = new HashMap<>();
+		for (int i = shape.length - 1; i >= 0; i--) {
+			context.put(shape[i], row[i]);
+		}
+
+		assertThat(Template.compile(EXPRESSION).shape(shape).render(row)).isEqualTo(Template.compile(EXPRESSION).render(context));
+	}
+
+	@Test
+	public void renderRowsOfAnyType() {
+		ShapedTemplate template = Template.compile("${first} ${last}").bind(new HashMap<>()).shape("last", "first");
+		List<Person> people = new ArrayList<>();
+		people.add(new Person("Ann", "Lee"));
+		people.add(new Person("Bob", "Ray"));
+
+		assertThat(template.renderAll(people, (person, slot) -> slot == 0 ? person.last : person.first))
+				.containsExactly("Ann Lee", "Bob Ray");
+	}
+
+	@Test
+	public void renderAllKeepsOrderOfRows() {
+		ShapedTemplate template = Template.compile("row ${id}: ${value}").shape("id", "value");
+		int rowCount = 100_000;
+		List<Object[]> rows = IntStream.range(0, rowCount)
+				.mapToObj(i -> new Object[] {i, "value " + i})
+				.collect(Collectors.toList());
+
+		List<String> rendered = template.renderAll(rows);
+
+		assertThat(rendered).hasSize(rowCount);
+		for (int i = 0; i < rowCount; i++) {
+			assertThat(rendered.get(i)).isEqualTo("row " + i + ": value " + i);
+		}
+	}
+
+	private static class Person {
+		private final String first;
+		private final String last;
+
+		private Person(String first, String last) {
+			this.first = first;
+			this.last = last;
+		}
+	}
+}
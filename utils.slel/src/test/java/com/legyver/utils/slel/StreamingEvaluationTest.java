@@ -0,0 +1,143 @@
+package com.legyver.utils.slel;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StreamingEvaluationTest {
+
+	private static Map<String, Object> context() {
+		Map<String, Object> context = new HashMap<>();
+		context.put("a", "x");
+		context.put("bb", 2);
+		context.put("", "empty");
+		context.put("n", null);
+		return context;
+	}
+
+	/**
+	 * Evaluate in chunks of the specified size, so variables are split across chunks
+	 */
+	private static String stream(String expression, Map<String, ?> context, int chunkSize) throws IOException {
+		StringBuilder out = new StringBuilder();
+		StreamingEvaluation evaluation = new StreamingEvaluation(context, out);
+		for (int start = 0; start < expression.length(); start += chunkSize) {
+			evaluation.feed(expression, start, Math.min(start + chunkSize, expression.length()));
+		}
+		evaluation.finish();
+		return out.toString();
+	}
+
+	@Test
+	public void sameResultsAsEvaluatingTheWholeExpression() throws Exception {
+		Map<String, Object> context = context();
+		String[] pieces = {"${", "}", "$", "{", "a", "bb", "b", "n", " ", "${a}", "${unknown}", "$$"};
+		Random random = new Random(11);
+		for (int i = 0; i < 10_000; i++) {
+			StringBuilder expression = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int j = 0; j < length; j++) {
+				expression.append(pieces[random.nextInt(pieces.length)]);
+			}
+			String e = expression.toString();
+			String expected = Template.compile(e).render(context);
+			for (int chunkSize = 1; chunkSize <= 4; chunkSize++) {
+				assertThat(stream(e, context, chunkSize)).as(e + " in chunks of " + chunkSize).isEqualTo(expected);
+			}
+		}
+	}
+
+	@Test
+	public void nameLongerThanAnyKeyIsCopiedToItsClosingBrace() throws Exception {
+		Map<String, Object> context = context();
+		String expression = "${a" + "$" + "{a}" + "${a}${not.a.key.at.all}${unclosed";
+
+		assertThat(stream(expression, context, 3)).isEqualTo(Template.compile(expression).render(context));
+		assertThat(stream(expression, context, 3)).isEqualTo("${a${a}x${not.a.key.at.all}${unclosed");
+	}
+
+	@Test
+	public void streamReaderToWriter() throws Exception {
+		Map<String, Object> context = context();
+		StringWriter out = new StringWriter();
+		new ExpressionInterpreter(context).evaluate(new StringReader("${a} and ${bb}"), out);
+		assertThat(out.toString()).isEqualTo("x and 2");
+
+		StringBuilder sb = new StringBuilder();
+		new ExpressionInterpreter(context).evaluate("${a}${", sb);
+		assertThat(sb.toString()).isEqualTo("x${");
+	}
+
+	@Test
+	public void streamOnlyWithTheDefaultScanner() throws Exception {
+		Map<String, Object> context = context();
+		ExpressionInterpreter atVariables = new ExpressionInterpreter(context, new VariableScanner(ExpressionVariable.AT_VAR));
+		assertThat(atVariables.evaluate("@a@ ${a}")).isEqualTo("x ${a}");
+
+		assertThatThrownBy(() -> atVariables.evaluate("@a@ ${a}", new StringBuilder())).isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> atVariables.evaluate(new StringReader("@a@ ${a}"), new StringWriter())).isInstanceOf(IllegalStateException.class);
+		ExpressionInterpreter cached = new ExpressionInterpreter(context, new TemplateCache(10, VariableScanner.SLEL));
+		assertThatThrownBy(() -> cached.evaluate("${a}", new StringBuilder())).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	public void streamWithoutHoldingTemplateOrResult() throws Exception {
+		Map<String, Object> context = context();
+		long lines = 2_000_000;
+		//the template is generated as it is read, and the result only counted, so neither is ever held in memory
+		Reader template = new Reader() {
+			private final char[] line = "line ${a} of ${bb}\n".toCharArray();
+			private long remaining = lines * line.length;
+
+			@Override
+			public int read(char[] cbuf, int off, int len) {
+				if (remaining == 0) {
+					return -1;
+				}
+				int count = (int) Math.min(len, remaining);
+				for (int i = 0; i < count; i++) {
+					cbuf[off + i] = line[(int) ((lines * line.length - remaining + i) % line.length)];
+				}
+				remaining -= count;
+				return count;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		long[] written = new long[1];
+		Writer counter = new Writer() {
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+				written[0] += len;
+			}
+
+			@Override
+			public void write(String str, int off, int len) {
+				written[0] += len;
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		new ExpressionInterpreter(context).evaluate(template, counter);
+
+		assertThat(written[0]).isEqualTo(lines * "line x of 2\n".length());
+	}
+}
@@ -0,0 +1,214 @@
+package com.legyver.utils.slel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TemplateTest {
+
+	/**
+	 * The recursive evaluation ExpressionInterpreter used before templates, that templates must give the same results as
+	 */
+	private static String reference(String expression, Map<String, ?> context) {
+		int indexStartEx = expression.indexOf("${");
+		if (indexStartEx < 0) {
+			return expression;
+		}
+		String left = expression.substring(0, indexStartEx);
+		String right = expression.substring(indexStartEx + 2);
+		int indexEndEx = right.indexOf("}");
+		if (indexEndEx < 0) {
+			return expression;
+		}
+		String variable = right.substring(0, indexEndEx);
+		right = right.substring(indexEndEx + 1);
+		if (!context.containsKey(variable)) {
+			left = left + "${" + variable + "}";
+		} else {
+			left = left + context.get(variable);
+		}
+		return left + reference(right, context);
+	}
+
+	@Test
+	public void sameResultsAsRecursiveEvaluation() {
+		Map<String, Object> context = new HashMap<>();
+		context.put("a", "x");
+		context.put("b", 2);
+		context.put("", "empty");
+		context.put("n", null);
+		String[] pieces = {"${", "}", "a", "b", "n", "c", " ", "$", "{", "${a}", "${unknown}"};
+		Random random = new Random(7);
+		for (int i = 0; i < 10_000; i++) {
+			StringBuilder expression = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int j = 0; j < length; j++) {
+				expression.append(pieces[random.nextInt(pieces.length)]);
+			}
+			String e = expression.toString();
+			assertThat(Template.compile(e).render(context)).as(e).isEqualTo(reference(e, context));
+		}
+	}
+
+	@Test
+	public void unknownAndUnbalancedVariablesAreLiteral() {
+		Map<String, String> context = new HashMap<>();
+		context.put("known", "value");
+		Template template = Template.compile("${known} ${unknown} ${known");
+
+		assertThat(template.render(context)).isEqualTo("value ${unknown} ${known");
+		assertThat(template.getVariableCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void manyVariablesDoNotOverflowTheStack() {
+		Map<String, String> context = new HashMap<>();
+		context.put("v", "x");
+		StringBuilder expression = new StringBuilder();
+		int count = 200_000;
+		for (int i = 0; i < count; i++) {
+			expression.append("${v}-");
+		}
+
+		String result = Template.compile(expression.toString()).render(context);
+		assertThat(result.length()).isEqualTo(count * 2);
+	}
+
+	@Test
+	public void bindFoldsStaticVariables() {
+		Map<String, Object> staticContext = new HashMap<>();
+		staticContext.put("host", "example.com");
+		staticContext.put("port", 8080);
+		staticContext.put("literal", "${user}");
+		Template bound = Template.compile("https://${host}:${port}/${user}/${page}?${literal}${unknown}").bind(staticContext);
+
+		//the static variables and the literals around them are merged into one literal
+		assertThat(bound.getVariableCount()).isEqualTo(3);
+		Map<String, Object> request = new HashMap<>();
+		request.put("user", "me");
+		request.put("page", "home");
+		request.put("host", "ignored");
+		assertThat(bound.render(request)).isEqualTo("https://example.com:8080/me/home?${user}${unknown}");
+	}
+
+	@Test
+	public void bindGivesSameResultAsRenderingWithBothContexts() {
+		Map<String, Object> staticContext = new HashMap<>();
+		staticContext.put("a", "x");
+		staticContext.put("n", null);
+		Map<String, Object> dynamicContext = new HashMap<>();
+		dynamicContext.put("b", 2);
+		Map<String, Object> both = new HashMap<>(dynamicContext);
+		both.putAll(staticContext);
+		String[] pieces = {"${", "}", "a", "b", "n", "c", " ", "${a}", "${b}", "${unknown}"};
+		Random random = new Random(3);
+		for (int i = 0; i < 10_000; i++) {
+			StringBuilder expression = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int j = 0; j < length; j++) {
+				expression.append(pieces[random.nextInt(pieces.length)]);
+			}
+			String e = expression.toString();
+			assertThat(Template.compile(e).bind(staticContext).render(dynamicContext)).as(e).isEqualTo(Template.compile(e).render(both));
+		}
+	}
+
+	@Test
+	public void compileWithScannerOfSeveralSyntaxes() {
+		VariableScanner scanner = new VariableScanner(ExpressionVariable.STRING_VAR, ExpressionVariable.HASH_VAR, ExpressionVariable.AT_VAR);
+		Map<String, String> context = new HashMap<>();
+		context.put("a", "1");
+		context.put("b", "2");
+		context.put("c", "3");
+		Template template = Template.compile("${a}#{b}@c@ ${x} #{y} @z@", scanner);
+
+		assertThat(template.getVariableCount()).isEqualTo(6);
+		//unknown variables are left in their own syntax
+		assertThat(template.render(context)).isEqualTo("123 ${x} #{y} @z@");
+		assertThat(template.bind(context).shape("x").render(new Object[] {"X"})).isEqualTo("123 X #{y} @z@");
+	}
+
+	@Test
+	public void interpreterUsesScannerOfItsCache() {
+		TemplateCache cache = new TemplateCache(10, new VariableScanner(ExpressionVariable.AT_VAR));
+		Map<String, String> context = new HashMap<>();
+		context.put("name", "World");
+
+		assertThat(new ExpressionInterpreter(context, cache).evaluate("Hello @name@ ${name}")).isEqualTo("Hello World ${name}");
+	}
+
+	@Test
+	public void cacheCountsHitsAndEvictsLeastRecentlyUsed() {
+		TemplateCache cache = new TemplateCache(2);
+		//each is only kept once it is seen again
+		cache.get("${a}");
+		Template a = cache.get("${a}");
+		cache.get("${b}");
+		cache.get("${b}");
+		assertThat(cache.get("${a}")).isSameAs(a);
+		cache.get("${c}");
+		cache.get("${c}");
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.getHits()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(6);
+		//b was least recently used
+		cache.get("${b}");
+		assertThat(cache.getMisses()).isEqualTo(7);
+		assertThat(cache.get("${a}")).isNotSameAs(a);
+	}
+
+	@Test
+	public void cacheSkipsOneShotAndOversizedExpressions() {
+		TemplateCache cache = new TemplateCache(100, 8, VariableScanner.DEFAULT);
+		for (int i = 0; i < 50; i++) {
+			cache.get("${a} " + i);
+		}
+		assertThat(cache.size()).isEqualTo(0);
+
+		cache.get("${a} is too long");
+		cache.get("${a} is too long");
+		assertThat(cache.size()).isEqualTo(0);
+		cache.get("${a}");
+		cache.get("${a}");
+		assertThat(cache.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void cacheSharedAcrossThreads() throws Exception {
+		TemplateCache cache = new TemplateCache(64);
+		Map<String, String> context = new HashMap<>();
+		context.put("a", "A");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Callable<Boolean>> tasks = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				tasks.add(() -> {
+					for (int i = 0; i < 10_000; i++) {
+						if (!cache.get("${a}" + (i % 100)).render(context).equals("A" + (i % 100))) {
+							return false;
+						}
+					}
+					return true;
+				});
+			}
+			for (Future<Boolean> result : executor.invokeAll(tasks)) {
+				assertThat(result.get()).isTrue();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(cache.size()).isLessThanOrEqualTo(64);
+		assertThat(cache.getHits() + cache.getMisses()).isEqualTo(80_000);
+	}
+}
@@ -0,0 +1,135 @@
+package com.legyver.utils.slel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VariableScannerTest {
+
+	private static List<String> scan(VariableScanner scanner, String text) {
+		List<String> spans = new ArrayList<>();
+		VariableScanner.Cursor cursor = scanner.cursor(text);
+		while (cursor.find()) {
+			spans.add(cursor.start() + ":" + cursor.name() + ":" + cursor.end());
+		}
+		return spans;
+	}
+
+	private static List<String> scanRegex(Pattern pattern, String text) {
+		List<String> spans = new ArrayList<>();
+		Matcher m = pattern.matcher(text);
+		while (m.find()) {
+			spans.add(m.start() + ":" + m.group(1) + ":" + m.end());
+		}
+		return spans;
+	}
+
+	@Test
+	public void findSeveralSyntaxesInOnePass() {
+		VariableScanner scanner = new VariableScanner(VariableScanner.SLEL_NAME_CHAR,
+				ExpressionVariable.STRING_VAR, ExpressionVariable.HASH_VAR, ExpressionVariable.AT_VAR);
+		VariableScanner.Cursor cursor = scanner.cursor("${a.b} and #{c-d} to @e@, not me@example.com");
+
+		assertThat(cursor.find()).isTrue();
+		assertThat(cursor.syntax()).isEqualTo(ExpressionVariable.STRING_VAR);
+		assertThat(cursor.start()).isEqualTo(0);
+		assertThat(cursor.nameStart()).isEqualTo(2);
+		assertThat(cursor.nameEnd()).isEqualTo(5);
+		assertThat(cursor.end()).isEqualTo(6);
+		assertThat(cursor.find()).isTrue();
+		assertThat(cursor.syntax()).isEqualTo(ExpressionVariable.HASH_VAR);
+		assertThat(cursor.name()).isEqualTo("c-d");
+		assertThat(cursor.find()).isTrue();
+		assertThat(cursor.syntax()).isEqualTo(ExpressionVariable.AT_VAR);
+		assertThat(cursor.name()).isEqualTo("e");
+		assertThat(cursor.find()).isFalse();
+		assertThatThrownBy(cursor::start).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	public void sameVariablesAsSlelPattern() {
+		Pattern pattern = Pattern.compile(Patterns.SLEL_VARIABLE);
+		String[] pieces = {"${", "}", "a", "b.c", "-", "X", " ", "$", "{", "${a}", "${"};
+		Random random = new Random(11);
+		for (int i = 0; i < 10_000; i++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int j = 0; j < length; j++) {
+				text.append(pieces[random.nextInt(pieces.length)]);
+			}
+			String t = text.toString();
+			assertThat(scan(VariableScanner.SLEL, t)).as(t).isEqualTo(scanRegex(pattern, t));
+		}
+	}
+
+	@Test
+	public void nameEndsAtFirstSuffix() {
+		assertThat(scan(VariableScanner.DEFAULT, "${a${b} ${c")).containsExactly("0:a${b:7");
+		assertThat(scan(VariableScanner.SLEL, "${a${b} ${c")).containsExactly("3:b:7");
+	}
+
+	@Test
+	public void cursorIsReusedAcrossTexts() {
+		VariableScanner.Cursor cursor = VariableScanner.SLEL.cursor();
+		for (String text : new String[] {"${a} ${b}", "none", "${c}"}) {
+			cursor.reset(text);
+			int count = 0;
+			while (cursor.find()) {
+				count++;
+			}
+			assertThat(count).isEqualTo(text.equals("none") ? 0 : text.length() / 4);
+		}
+		assertThat(VariableScanner.SLEL.containsVariable("x ${y}")).isTrue();
+		assertThat(VariableScanner.SLEL.containsVariable("x ${Y}")).isFalse();
+	}
+
+	@Test
+	public void unclosedPrefixesScanInLinearTime() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200_000; i++) {
+			text.append("${a");
+		}
+		//each name character looked at counts once, so scanning again from every prefix would look at each many times
+		long[] looks = new long[1];
+		VariableScanner scanner = new VariableScanner(c -> ++looks[0] > 0, ExpressionVariable.STRING_VAR);
+		assertThat(scanner.containsVariable(text)).isFalse();
+		assertThat(looks[0]).isLessThanOrEqualTo(text.length());
+	}
+
+	@Test
+	public void sameVariablesAsRegexOnLargeInput() {
+		Pattern pattern = Pattern.compile(Patterns.SLEL_VARIABLE);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; text.length() < 1_000_000; i++) {
+			text.append("property.").append(i).append(" = some text with $5 and {braces} then ${build.date.day} ${major.version}\n");
+		}
+		String input = text.toString();
+
+		assertThat(count(VariableScanner.SLEL, input)).isEqualTo(countRegex(pattern, input)).isPositive();
+	}
+
+	static int countRegex(Pattern pattern, String text) {
+		int count = 0;
+		Matcher m = pattern.matcher(text);
+		while (m.find()) {
+			count += m.end(1) - m.start(1) > 0 ? 1 : 0;
+		}
+		return count;
+	}
+
+	static int count(VariableScanner scanner, String text) {
+		int count = 0;
+		VariableScanner.Cursor cursor = scanner.cursor(text);
+		while (cursor.find()) {
+			count += cursor.nameEnd() - cursor.nameStart() > 0 ? 1 : 0;
+		}
+		return count;
+	}
+}
@@ -34,6 +34,19 @@ public class WrapAdapter<T> {
 	 * @throws CoreException if the TypedCommand throws and exception
 	 */
 	public void execute(TypedCommand<T> typedCommand) throws CoreException {
+		execute(context, value, typedCommand);
+	}
+
+	/**
+	 * Execute a typed command with an un-typed value, without constructing a WrapAdapter.
+	 * Ex: WrapAdapter.execute(ctx, value, testCommand);
+	 * @param context Any context you wish to pass to the command
+	 * @param value The un-typed value you want to run the command against
+	 * @param typedCommand the command to execute
+	 * @param <T> the type of the context
+	 * @throws CoreException if the TypedCommand throws and exception
+	 */
+	public static <T> void execute(T context, Object value, TypedCommand<T> typedCommand) throws CoreException {
 		if (value instanceof String) {
 			typedCommand.executeString(context, (String) value);
 		} else if (value instanceof Integer) {
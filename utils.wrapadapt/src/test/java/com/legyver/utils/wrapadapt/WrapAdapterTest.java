@@ -20,6 +20,20 @@ public class WrapAdapterTest {
 		assertTrue(testCommand.visited);
 	}
 
+	@Test
+	public void testWithoutConstructing() throws Exception {
+		TestCommand testCommand = new TestCommand() {
+			@Override
+			public void executeInteger(Object ctx, Integer value) {
+				assertEquals("ctx", ctx);
+				assertEquals(Integer.valueOf(1), value);
+				visited = true;
+			}
+		};
+		WrapAdapter.execute("ctx", 1, testCommand);
+		assertTrue(testCommand.visited);
+	}
+
 	@Test
 	public void testNull() throws Exception {
 		runTest(null, new TestCommand() {